@@ -22,6 +22,9 @@ import de.fraunhofer.iosb.ilt.sta.model.Observation;
 import java.util.List;
 
 /**
+ * Iterators returned by an Importer that hold resources, like open streams or
+ * threads, should implement AutoCloseable. They are closed when the import
+ * ends, also when it ends early.
  *
  * @author scf
  */
@@ -39,4 +42,26 @@ public interface Importer extends Iterable<List<Observation>> {
 
 	public default void setProgressTracker(ProgressTracker tracker) {
 	}
+
+	/**
+	 * Called after all Observations the importer returned so far have been
+	 * sent to the server without errors. Importers that store their progress
+	 * should only do so from here. Never called in noAct mode.
+	 */
+	public default void observationsSent() {
+	}
+
+	/**
+	 * Checked after each list of Observations. If true, the Observations
+	 * returned so far are validated and sent right away, instead of waiting
+	 * until enough Observations are collected. Importers that can wait for new
+	 * input for a long time should return true at the end of each input, so
+	 * that its Observations are sent, and its progress is stored, before the
+	 * importer starts waiting.
+	 *
+	 * @return true if the Observations returned so far should be sent now.
+	 */
+	public default boolean isFlushRequested() {
+		return false;
+	}
 }
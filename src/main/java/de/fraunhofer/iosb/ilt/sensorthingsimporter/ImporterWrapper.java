@@ -45,6 +45,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.io.FileUtils;
@@ -86,6 +87,11 @@ public class ImporterWrapper implements Configurable<Object, Object> {
 	private long inserted;
 	private long nextMessage;
 
+	/**
+	 * The validated Observations that have not been confirmed as sent yet.
+	 */
+	private final List<Observation> unconfirmed = new ArrayList<>();
+
 	// Don't cache too many observations.
 	private final long maxSend = 100000;
 	private long nextSend = maxSend;
@@ -160,30 +166,52 @@ public class ImporterWrapper implements Configurable<Object, Object> {
 		// Map of Obs per Ds/MDs
 		Map<Object, List<Observation>> obsPerDs = new HashMap<>();
 
-		for (List<Observation> observations : importer) {
-			for (Observation observation : observations) {
-				Object key = observation.getDatastream();
-				if (key == null) {
-					key = observation.getMultiDatastream();
+		Iterator<List<Observation>> it = importer.iterator();
+		try {
+			while (it.hasNext()) {
+				for (Observation observation : it.next()) {
+					Object key = observation.getDatastream();
+					if (key == null) {
+						key = observation.getMultiDatastream();
+					}
+					List<Observation> obsList = obsPerDs.computeIfAbsent(key, t -> new ArrayList<>());
+					obsList.add(observation);
+					logStatus.setGeneratedCount(++generated);
+					nextSend--;
+				}
+				if (nextSend <= 0 || importer.isFlushRequested()) {
+					validateAndSendObservations(obsPerDs, start);
+					sendObservations();
+					confirmImported();
+					nextSend = maxSend;
 				}
-				List<Observation> obsList = obsPerDs.computeIfAbsent(key, t -> new ArrayList<>());
-				obsList.add(observation);
-				logStatus.setGeneratedCount(++generated);
-				nextSend--;
-			}
-			if (nextSend <= 0) {
-				validateAndSendObservations(obsPerDs, start);
-				nextSend = maxSend;
 			}
+		} finally {
+			close(it);
 		}
 
 		validateAndSendObservations(obsPerDs, start);
-		inserted = uploader.sendDataArray();
+		sendObservations();
+		confirmImported();
 		logStatus.setInsertedCount(inserted);
 		logStatus.setUpdatedCount(Long.valueOf(uploader.getUpdated()));
 		logStatus.setSpeed(getSpeed(start, inserted));
 	}
 
+	/**
+	 * Importer iterators that hold resources implement AutoCloseable. Close
+	 * them, also when the import was aborted.
+	 */
+	private static void close(Iterator<List<Observation>> it) {
+		if (it instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) it).close();
+			} catch (Exception ex) {
+				LOGGER.warn("Failed to close the importer: {}", ex.getMessage());
+			}
+		}
+	}
+
 	private double getSpeed(Calendar since, long inserted) {
 		Calendar now = Calendar.getInstance();
 		double seconds = 1e-3 * (now.getTimeInMillis() - since.getTimeInMillis());
@@ -196,11 +224,14 @@ public class ImporterWrapper implements Configurable<Object, Object> {
 				if (validator.isValid(observation)) {
 					validated++;
 					uploader.addObservation(observation);
+					if (!noAct) {
+						unconfirmed.add(observation);
+					}
 					logStatus.setValidatedCount(validated);
 				}
 				nextMessage--;
 				if (nextMessage <= 0) {
-					inserted = uploader.sendDataArray();
+					sendObservations();
 					nextMessage = messageIntervalStart;
 					logStatus.setInsertedCount(inserted);
 					logStatus.setUpdatedCount(Long.valueOf(uploader.getUpdated()));
@@ -212,6 +243,35 @@ public class ImporterWrapper implements Configurable<Object, Object> {
 		obsPerDs.clear();
 	}
 
+	/**
+	 * Sends the buffered Observations, and tells the validator which
+	 * Observations are known to have arrived on the server.
+	 */
+	private void sendObservations() throws ServiceFailureException {
+		long failedBefore = uploader.getFailed();
+		inserted = uploader.sendDataArray();
+		if (uploader.getFailed() == failedBefore && !unconfirmed.isEmpty()) {
+			validator.observationsSent(unconfirmed);
+		}
+		unconfirmed.clear();
+	}
+
+	/**
+	 * Tells the importer that everything it returned so far has been sent, so
+	 * it can store its progress. Once the server refused Observations, the
+	 * progress is no longer stored, so the next run tries again.
+	 */
+	private void confirmImported() {
+		if (noAct) {
+			return;
+		}
+		if (uploader.getFailed() > 0) {
+			LOGGER.warn("The server refused {} Observations, not storing the import progress.", uploader.getFailed());
+			return;
+		}
+		importer.observationsSent();
+	}
+
 	private void maybeSleep() {
 		if (doSleep) {
 			try {
@@ -248,6 +308,7 @@ public class ImporterWrapper implements Configurable<Object, Object> {
 			importer.setNoAct(noAct);
 			importer.setProgressTracker(tracker);
 			uploader.setNoAct(noAct);
+			validator.setNoAct(noAct);
 			doImport();
 		} catch (JsonSyntaxException exc) {
 			LOGGER.error("Failed to parse {}", config);
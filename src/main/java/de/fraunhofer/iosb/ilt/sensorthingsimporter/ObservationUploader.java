@@ -88,6 +88,7 @@ public class ObservationUploader implements AnnotatedConfigurable<SensorThingsSe
 
 	private int inserted = 0;
 	private int updated = 0;
+	private long failed = 0;
 
 	@Override
 	public void configure(JsonElement config, SensorThingsService context, Object edtCtx, ConfigEditor<?> configEditor) throws ConfigurationException {
@@ -116,6 +117,13 @@ public class ObservationUploader implements AnnotatedConfigurable<SensorThingsSe
 		return updated;
 	}
 
+	/**
+	 * @return The number of Observations the server refused to insert.
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
 	public void addObservation(Observation obs) throws ServiceFailureException {
 		if (obs.getId() != null && !noAct) {
 			service.update(obs);
@@ -167,6 +175,7 @@ public class ObservationUploader implements AnnotatedConfigurable<SensorThingsSe
 			if (error > 0) {
 				Optional<String> first = locations.stream().filter(location -> location.startsWith("error")).findFirst();
 				LOGGER.warn("Failed to insert {} Observations. First error: {}", error, first);
+				failed += error;
 			}
 			long nonError = locations.size() - error;
 			inserted += nonError;
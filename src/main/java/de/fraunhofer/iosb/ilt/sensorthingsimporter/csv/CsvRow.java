@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import java.util.List;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * A row of a CSV file. Implementations may decode the values lazily, so
+ * converters should only request the columns they need.
+ *
+ * @author hylke
+ */
+public interface CsvRow {
+
+	/**
+	 * Get the value of the column with the given index.
+	 *
+	 * @param index The index of the column.
+	 * @return The value of the column.
+	 * @throws ArrayIndexOutOfBoundsException if the row has no such column.
+	 */
+	public String get(int index);
+
+	/**
+	 * Get the value of the column with the given header name.
+	 *
+	 * @param name The name of the column.
+	 * @return The value of the column.
+	 * @throws IllegalArgumentException if there is no column with the given
+	 * name.
+	 * @throws IllegalStateException if the file has no header.
+	 */
+	public String get(String name);
+
+	/**
+	 * @return The number of columns in this row.
+	 */
+	public int size();
+
+	/**
+	 * @param name The name of the column.
+	 * @return true if the header has a column with the given name, and the
+	 * row has a value for it.
+	 */
+	public boolean isMapped(String name);
+
+	/**
+	 * @return The column names from the header of the file, or null if the
+	 * file has no header.
+	 */
+	public List<String> getHeaderNames();
+
+	/**
+	 * @return The number of this row in the file, starting at 1.
+	 */
+	public long getRecordNumber();
+
+	/**
+	 * Convert this row into a commons-csv CSVRecord, for converters that have
+	 * not been ported to CsvRow. This can be expensive.
+	 *
+	 * @return The row as CSVRecord.
+	 */
+	public CSVRecord toCsvRecord();
+
+	public static CsvRow wrap(CSVRecord record) {
+		return new CsvRowCommons(record);
+	}
+}
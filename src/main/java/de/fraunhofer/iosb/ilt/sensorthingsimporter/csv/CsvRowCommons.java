@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import java.util.List;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * A CsvRow backed by a commons-csv CSVRecord.
+ *
+ * @author hylke
+ */
+public class CsvRowCommons implements CsvRow {
+
+	private final CSVRecord record;
+
+	public CsvRowCommons(CSVRecord record) {
+		this.record = record;
+	}
+
+	@Override
+	public String get(int index) {
+		return record.get(index);
+	}
+
+	@Override
+	public String get(String name) {
+		return record.get(name);
+	}
+
+	@Override
+	public int size() {
+		return record.size();
+	}
+
+	@Override
+	public boolean isMapped(String name) {
+		return record.isMapped(name) && record.isSet(name);
+	}
+
+	@Override
+	public List<String> getHeaderNames() {
+		if (record.getParser() == null || record.getParser().getHeaderMap() == null) {
+			return null;
+		}
+		return record.getParser().getHeaderNames();
+	}
+
+	@Override
+	public long getRecordNumber() {
+		return record.getRecordNumber();
+	}
+
+	@Override
+	public CSVRecord toCsvRecord() {
+		return record;
+	}
+
+	@Override
+	public String toString() {
+		return record.toString();
+	}
+
+}
@@ -23,9 +23,10 @@ import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
 import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.CompiledTemplate;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.FrostUtils;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.JsonUtils;
-import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.Translator;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.SharedEntityCache;
 import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
 import de.fraunhofer.iosb.ilt.sta.model.Datastream;
 import de.fraunhofer.iosb.ilt.sta.model.ObservedProperty;
@@ -37,7 +38,6 @@ import de.fraunhofer.iosb.ilt.sta.query.Query;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
 import java.util.HashMap;
 import java.util.Map;
-import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -102,19 +102,47 @@ public class DataStreamGeneratorNames implements DatastreamGenerator, AnnotatedC
 	private final Map<String, Thing> cacheThings = new HashMap<>();
 	private final Map<String, Sensor> cacheSensors = new HashMap<>();
 	private final Map<String, ObservedProperty> cacheObsProps = new HashMap<>();
+	private SharedEntityCache.EntityRegion<Thing> sharedThings;
+	private SharedEntityCache.EntityRegion<Sensor> sharedSensors;
+	private SharedEntityCache.EntityRegion<ObservedProperty> sharedObsProps;
 
 	private SensorThingsService service;
 	private FrostUtils frostUtils;
 
+	private CompiledTemplate compiledFilterThing;
+	private CompiledTemplate compiledFilterSensor;
+	private CompiledTemplate compiledFilterObsProp;
+	private CompiledTemplate compiledName;
+	private CompiledTemplate compiledDescription;
+	private CompiledTemplate compiledProperties;
+	private CompiledTemplate compiledUomName;
+	private CompiledTemplate compiledUomSymbol;
+	private CompiledTemplate compiledUomDef;
+	private CompiledTemplate compiledObsType;
+
 	@Override
 	public void configure(JsonElement config, SensorThingsService context, Object edtCtx, ConfigEditor<?> configEditor) throws ConfigurationException {
 		service = context;
 		frostUtils = new FrostUtils(context);
 		AnnotatedConfigurable.super.configure(config, context, edtCtx, configEditor);
+		compiledFilterThing = CompiledTemplate.compile(filterThing, true, false, true);
+		compiledFilterSensor = CompiledTemplate.compile(filterSensor, true, false, true);
+		compiledFilterObsProp = CompiledTemplate.compile(filterObsProp, true, false, true);
+		compiledName = CompiledTemplate.compile(templateName, false, false, true);
+		compiledDescription = CompiledTemplate.compile(templateDescription, false, false, true);
+		compiledObsType = CompiledTemplate.compile(templateObsType, false, false, true);
+		compiledProperties = CompiledTemplate.compile(templateProperties, false, true, false);
+		compiledUomName = CompiledTemplate.compile(templateUomName, false, false, true);
+		compiledUomSymbol = CompiledTemplate.compile(templateUomSymbol, false, false, true);
+		compiledUomDef = CompiledTemplate.compile(templateUomDef, false, false, true);
+		SharedEntityCache sharedCache = SharedEntityCache.getInstance();
+		sharedThings = sharedCache.entityRegion(service, "DataStreamGeneratorNames/Things", Thing.class);
+		sharedSensors = sharedCache.entityRegion(service, "DataStreamGeneratorNames/Sensors", Sensor.class);
+		sharedObsProps = sharedCache.entityRegion(service, "DataStreamGeneratorNames/ObservedProperties", ObservedProperty.class);
 	}
 
 	@Override
-	public Datastream createDatastreamFor(CSVRecord record) throws ImportException {
+	public Datastream createDatastreamFor(CsvRow record) throws ImportException {
 		Thing thing = getThingFor(record);
 		Sensor sensor = getSensorFor(record);
 		ObservedProperty obsProp = getObsPropFor(record);
@@ -122,15 +150,15 @@ public class DataStreamGeneratorNames implements DatastreamGenerator, AnnotatedC
 			return null;
 		}
 		Datastream ds = new Datastream();
-		ds.setName(Translator.fillTemplate(templateName, record, false, false, true));
-		ds.setDescription(Translator.fillTemplate(templateDescription, record, false, false, true));
-		ds.setObservationType(Translator.fillTemplate(templateObsType, record, false, false, true));
-		String propertiesString = Translator.fillTemplate(templateProperties, record, false, true, false);
+		ds.setName(compiledName.fill(record));
+		ds.setDescription(compiledDescription.fill(record));
+		ds.setObservationType(compiledObsType.fill(record));
+		String propertiesString = compiledProperties.fill(record);
 		ds.setProperties(JsonUtils.jsonToMap(propertiesString));
 		UnitOfMeasurement uom = new UnitOfMeasurement(
-				Translator.fillTemplate(templateUomName, record, false, false, true),
-				Translator.fillTemplate(templateUomSymbol, record, false, false, true),
-				Translator.fillTemplate(templateUomDef, record, false, false, true)
+				compiledUomName.fill(record),
+				compiledUomSymbol.fill(record),
+				compiledUomDef.fill(record)
 		);
 		ds.setUnitOfMeasurement(uom);
 		ds.setThing(thing);
@@ -144,10 +172,9 @@ public class DataStreamGeneratorNames implements DatastreamGenerator, AnnotatedC
 		return ds;
 	}
 
-	public Thing getThingFor(CSVRecord record) throws ImportException {
+	public Thing getThingFor(CsvRow record) throws ImportException {
 		try {
-			String filter = Translator.fillTemplate(filterThing, record, true, false, true);
-			Thing t = getThingFor(filter);
+			Thing t = getThingFor(compiledFilterThing.fill(record));
 			return t;
 		} catch (ServiceFailureException ex) {
 			LOGGER.error("Failed to fetch datastream.", ex);
@@ -155,10 +182,9 @@ public class DataStreamGeneratorNames implements DatastreamGenerator, AnnotatedC
 		}
 	}
 
-	public Sensor getSensorFor(CSVRecord record) throws ImportException {
+	public Sensor getSensorFor(CsvRow record) throws ImportException {
 		try {
-			String filter = Translator.fillTemplate(filterSensor, record, true, false, true);
-			Sensor s = getSensorFor(filter);
+			Sensor s = getSensorFor(compiledFilterSensor.fill(record));
 			return s;
 		} catch (ServiceFailureException ex) {
 			LOGGER.error("Failed to fetch datastream.", ex);
@@ -166,10 +192,9 @@ public class DataStreamGeneratorNames implements DatastreamGenerator, AnnotatedC
 		}
 	}
 
-	public ObservedProperty getObsPropFor(CSVRecord record) throws ImportException {
+	public ObservedProperty getObsPropFor(CsvRow record) throws ImportException {
 		try {
-			String filter = Translator.fillTemplate(filterObsProp, record, true, false, true);
-			ObservedProperty o = getObsPropFor(filter);
+			ObservedProperty o = getObsPropFor(compiledFilterObsProp.fill(record));
 			return o;
 		} catch (ServiceFailureException ex) {
 			LOGGER.error("Failed to fetch datastream.", ex);
@@ -183,9 +208,14 @@ public class DataStreamGeneratorNames implements DatastreamGenerator, AnnotatedC
 			return t;
 		}
 		if (cacheThings.containsKey(filter)) {
-			// We previously had found nothing. Don't search again.
+			// We previously had found nothing in this run. Don't search again.
 			return null;
 		}
+		t = sharedThings.get(filter);
+		if (t != null) {
+			cacheThings.put(filter, t);
+			return t;
+		}
 		Query<Thing> query = service.things().query().filter(filter);
 		EntityList<Thing> streams = query.list();
 		if (streams.size() > 1) {
@@ -199,6 +229,7 @@ public class DataStreamGeneratorNames implements DatastreamGenerator, AnnotatedC
 			LOGGER.error("Found no Thing for filter: {}.", filter);
 		}
 		cacheThings.put(filter, t);
+		sharedThings.put(filter, t);
 		return t;
 	}
 
@@ -208,9 +239,14 @@ public class DataStreamGeneratorNames implements DatastreamGenerator, AnnotatedC
 			return s;
 		}
 		if (cacheSensors.containsKey(filter)) {
-			// We previously had found nothing. Don't search again.
+			// We previously had found nothing in this run. Don't search again.
 			return null;
 		}
+		s = sharedSensors.get(filter);
+		if (s != null) {
+			cacheSensors.put(filter, s);
+			return s;
+		}
 		Query<Sensor> query = service.sensors().query().filter(filter);
 		EntityList<Sensor> streams = query.list();
 		if (streams.size() > 1) {
@@ -224,6 +260,7 @@ public class DataStreamGeneratorNames implements DatastreamGenerator, AnnotatedC
 			LOGGER.error("Found no Sensor for filter: {}.", filter);
 		}
 		cacheSensors.put(filter, s);
+		sharedSensors.put(filter, s);
 		return s;
 	}
 
@@ -233,9 +270,14 @@ public class DataStreamGeneratorNames implements DatastreamGenerator, AnnotatedC
 			return o;
 		}
 		if (cacheObsProps.containsKey(filter)) {
-			// We previously had found nothing. Don't search again.
+			// We previously had found nothing in this run. Don't search again.
 			return null;
 		}
+		o = sharedObsProps.get(filter);
+		if (o != null) {
+			cacheObsProps.put(filter, o);
+			return o;
+		}
 		Query<ObservedProperty> query = service.observedProperties().query().filter(filter);
 		EntityList<ObservedProperty> streams = query.list();
 		if (streams.size() > 1) {
@@ -249,6 +291,7 @@ public class DataStreamGeneratorNames implements DatastreamGenerator, AnnotatedC
 			LOGGER.error("Found no ObservedProperties for filter: {}.", filter);
 		}
 		cacheObsProps.put(filter, o);
+		sharedObsProps.put(filter, o);
 		return o;
 	}
 
@@ -26,5 +26,28 @@ import org.apache.commons.csv.CSVRecord;
  */
 public interface DatastreamGenerator {
 
-	public Datastream createDatastreamFor(CSVRecord record) throws ImportException;
+	/**
+	 * Create the Datastream for the given record. Implementations must
+	 * override either this method or {@link #createDatastreamFor(CSVRecord)},
+	 * since the default implementations call each other.
+	 *
+	 * @param record The record to create the Datastream for.
+	 * @return The new Datastream.
+	 * @throws ImportException if there is a permanent failure.
+	 */
+	public default Datastream createDatastreamFor(CsvRow record) throws ImportException {
+		return createDatastreamFor(record == null ? null : record.toCsvRecord());
+	}
+
+	/**
+	 * Create the Datastream for the given record. Only kept for generators
+	 * that are not ported to CsvRow.
+	 *
+	 * @param record The record to create the Datastream for.
+	 * @return The new Datastream.
+	 * @throws ImportException if there is a permanent failure.
+	 */
+	public default Datastream createDatastreamFor(CSVRecord record) throws ImportException {
+		return createDatastreamFor(record == null ? null : CsvRow.wrap(record));
+	}
 }
@@ -29,13 +29,44 @@ import org.apache.commons.csv.CSVRecord;
 public interface DatastreamMapper {
 
 	/**
-	 * Get the Datastream to be used for the given record.
+	 * Get the Datastream to be used for the given record. Implementations
+	 * must override either this method or {@link #getDatastreamFor(CSVRecord)},
+	 * since the default implementations call each other.
 	 *
 	 * @param record The record to get the Datastream for.
 	 * @return The Datastream to use for the given record.
 	 * @throws ImportException if there is a permanent failure.
 	 */
-	public Datastream getDatastreamFor(CSVRecord record) throws ImportException;
+	public default Datastream getDatastreamFor(CsvRow record) throws ImportException {
+		return getDatastreamFor(record == null ? null : record.toCsvRecord());
+	}
 
-	public MultiDatastream getMultiDatastreamFor(CSVRecord record) throws ImportException;
+	/**
+	 * Get the Datastream to be used for the given record. Only kept for
+	 * mappers (and scripts) that are not ported to CsvRow.
+	 *
+	 * @param record The record to get the Datastream for.
+	 * @return The Datastream to use for the given record.
+	 * @throws ImportException if there is a permanent failure.
+	 */
+	public default Datastream getDatastreamFor(CSVRecord record) throws ImportException {
+		return getDatastreamFor(record == null ? null : CsvRow.wrap(record));
+	}
+
+	/**
+	 * Get the MultiDatastream to be used for the given record.
+	 * Implementations must override either this method or
+	 * {@link #getMultiDatastreamFor(CSVRecord)}.
+	 *
+	 * @param record The record to get the MultiDatastream for.
+	 * @return The MultiDatastream to use for the given record.
+	 * @throws ImportException if there is a permanent failure.
+	 */
+	public default MultiDatastream getMultiDatastreamFor(CsvRow record) throws ImportException {
+		return getMultiDatastreamFor(record == null ? null : record.toCsvRecord());
+	}
+
+	public default MultiDatastream getMultiDatastreamFor(CSVRecord record) throws ImportException {
+		return getMultiDatastreamFor(record == null ? null : CsvRow.wrap(record));
+	}
 }
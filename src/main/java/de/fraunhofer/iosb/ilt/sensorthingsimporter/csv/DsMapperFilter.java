@@ -25,7 +25,8 @@ import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorSubclass;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
-import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.Translator;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.CompiledTemplate;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.SharedEntityCache;
 import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
 import de.fraunhofer.iosb.ilt.sta.model.Datastream;
 import de.fraunhofer.iosb.ilt.sta.model.MultiDatastream;
@@ -34,7 +35,6 @@ import de.fraunhofer.iosb.ilt.sta.query.Query;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
 import java.util.HashMap;
 import java.util.Map;
-import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +50,8 @@ public class DsMapperFilter implements DatastreamMapper, AnnotatedConfigurable<S
 	private static final Logger LOGGER = LoggerFactory.getLogger(DsMapperFilter.class);
 	private final Map<String, Datastream> datastreamCache = new HashMap<>();
 	private final Map<String, MultiDatastream> multiDatastreamCache = new HashMap<>();
+	private SharedEntityCache.EntityRegion<Datastream> sharedDatastreams;
+	private SharedEntityCache.EntityRegion<MultiDatastream> sharedMultiDatastreams;
 
 	@ConfigurableField(editor = EditorString.class,
 			label = "Filter", description = "A filter that will be added to the query for the datastream.\nUse placeholders {colNr} to add the content of columns to the query.")
@@ -62,6 +64,7 @@ public class DsMapperFilter implements DatastreamMapper, AnnotatedConfigurable<S
 	private DatastreamGenerator dsGenerator;
 
 	private SensorThingsService service;
+	private CompiledTemplate filter;
 
 	public DsMapperFilter() {
 	}
@@ -70,13 +73,15 @@ public class DsMapperFilter implements DatastreamMapper, AnnotatedConfigurable<S
 	public void configure(JsonElement config, SensorThingsService context, Object edtCtx, ConfigEditor<?> configEditor) throws ConfigurationException {
 		service = context;
 		AnnotatedConfigurable.super.configure(config, context, edtCtx, configEditor);
+		filter = CompiledTemplate.compile(filterTemplate, true, false, true);
+		sharedDatastreams = SharedEntityCache.getInstance().entityRegion(service, "DsMapperFilter/Datastreams", Datastream.class);
+		sharedMultiDatastreams = SharedEntityCache.getInstance().entityRegion(service, "DsMapperFilter/MultiDatastreams", MultiDatastream.class);
 	}
 
 	@Override
-	public Datastream getDatastreamFor(CSVRecord record) throws ImportException {
+	public Datastream getDatastreamFor(CsvRow record) throws ImportException {
 		try {
-			String filter = Translator.fillTemplate(filterTemplate, record, true, false, true);
-			Datastream ds = getDatastreamFor(filter, record);
+			Datastream ds = getDatastreamFor(filter.fill(record), record);
 			return ds;
 		} catch (ServiceFailureException ex) {
 			LOGGER.error("Failed to fetch datastream.", ex);
@@ -85,10 +90,9 @@ public class DsMapperFilter implements DatastreamMapper, AnnotatedConfigurable<S
 	}
 
 	@Override
-	public MultiDatastream getMultiDatastreamFor(CSVRecord record) {
+	public MultiDatastream getMultiDatastreamFor(CsvRow record) {
 		try {
-			String filter = Translator.fillTemplate(filterTemplate, record, true, false, true);
-			MultiDatastream ds = getMultiDatastreamFor(filter, record);
+			MultiDatastream ds = getMultiDatastreamFor(filter.fill(record), record);
 			return ds;
 		} catch (ServiceFailureException ex) {
 			LOGGER.error("Failed to fetch datastream.", ex);
@@ -96,15 +100,31 @@ public class DsMapperFilter implements DatastreamMapper, AnnotatedConfigurable<S
 		}
 	}
 
-	private Datastream getDatastreamFor(String filter, CSVRecord record) throws ServiceFailureException, ImportException {
-		Datastream ds = datastreamCache.get(filter);
+	private Datastream getDatastreamFor(String filter, CsvRow record) throws ServiceFailureException, ImportException {
+		synchronized (datastreamCache) {
+			Datastream ds = datastreamCache.get(filter);
+			if (ds != null || datastreamCache.containsKey(filter)) {
+				return ds;
+			}
+		}
+		return findDatastreamFor(filter, record);
+	}
+
+	/**
+	 * Synchronised, so that parallel conversions do not create the same
+	 * Datastream twice.
+	 */
+	private synchronized Datastream findDatastreamFor(String filter, CsvRow record) throws ServiceFailureException, ImportException {
+		synchronized (datastreamCache) {
+			if (datastreamCache.containsKey(filter)) {
+				return datastreamCache.get(filter);
+			}
+		}
+		Datastream ds = sharedDatastreams.get(filter);
 		if (ds != null) {
+			putDatastream(filter, ds);
 			return ds;
 		}
-		if (datastreamCache.containsKey(filter)) {
-			// We previously had found nothing. Don't search again.
-			return null;
-		}
 		Query<Datastream> query = service.datastreams().query().filter(filter);
 		EntityList<Datastream> streams = query.list();
 		if (streams.size() > 1) {
@@ -124,13 +144,30 @@ public class DsMapperFilter implements DatastreamMapper, AnnotatedConfigurable<S
 		if (ds == null) {
 			LOGGER.error("Found no datastreams for filter: {}.", filter);
 		}
-		datastreamCache.put(filter, ds);
+		// We only remember finding nothing for this run, other runs may have more luck.
+		putDatastream(filter, ds);
+		sharedDatastreams.put(filter, ds);
 		return ds;
 	}
 
-	private MultiDatastream getMultiDatastreamFor(String filter, CSVRecord record) throws ServiceFailureException {
-		MultiDatastream mds = multiDatastreamCache.get(filter);
+	private void putDatastream(String filter, Datastream ds) {
+		synchronized (datastreamCache) {
+			datastreamCache.put(filter, ds);
+		}
+	}
+
+	private MultiDatastream getMultiDatastreamFor(String filter, CsvRow record) throws ServiceFailureException {
+		synchronized (multiDatastreamCache) {
+			MultiDatastream mds = multiDatastreamCache.get(filter);
+			if (mds != null) {
+				return mds;
+			}
+		}
+		MultiDatastream mds = sharedMultiDatastreams.get(filter);
 		if (mds != null) {
+			synchronized (multiDatastreamCache) {
+				multiDatastreamCache.put(filter, mds);
+			}
 			return mds;
 		}
 		Query<MultiDatastream> query = service.multiDatastreams().query().filter(filter);
@@ -141,7 +178,10 @@ public class DsMapperFilter implements DatastreamMapper, AnnotatedConfigurable<S
 		}
 		mds = streams.iterator().next();
 		LOGGER.info("Found multiDatastreams {} for query {}.", mds.getId(), filter);
-		multiDatastreamCache.put(filter, mds);
+		synchronized (multiDatastreamCache) {
+			multiDatastreamCache.put(filter, mds);
+		}
+		sharedMultiDatastreams.put(filter, mds);
 		return mds;
 	}
 
@@ -25,7 +25,6 @@ import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
 import de.fraunhofer.iosb.ilt.sta.model.Datastream;
 import de.fraunhofer.iosb.ilt.sta.model.MultiDatastream;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
-import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -85,7 +84,7 @@ public class DsMapperFixed implements DatastreamMapper, Configurable<Object, Obj
 	}
 
 	@Override
-	public Datastream getDatastreamFor(CSVRecord record) {
+	public synchronized Datastream getDatastreamFor(CsvRow record) {
 		if (ds == null) {
 			init(false);
 		}
@@ -93,7 +92,7 @@ public class DsMapperFixed implements DatastreamMapper, Configurable<Object, Obj
 	}
 
 	@Override
-	public MultiDatastream getMultiDatastreamFor(CSVRecord record) {
+	public synchronized MultiDatastream getMultiDatastreamFor(CsvRow record) {
 		if (mds == null) {
 			init(true);
 		}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.JsonFileStore;
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Remembers which archive entries or files have been imported completely, so
+ * that a later run can skip them. An archive entry is identified by the url of
+ * the archive and the name of the entry, a file by its path. The marker holds
+ * the size and modification time, so that changed entries are imported again.
+ *
+ * @author hylke
+ */
+public class EntryCheckpoints {
+
+	private static final TypeReference<Map<String, String>> TYPE_MAP_STRING_STRING = new TypeReference<Map<String, String>>() {
+		// Empty on purpose.
+	};
+
+	private final JsonFileStore<String> done;
+
+	/**
+	 * Create checkpoints stored in the given file.
+	 *
+	 * @param file The file to store the checkpoints in, or null to not store
+	 * checkpoints.
+	 */
+	public EntryCheckpoints(File file) {
+		done = new JsonFileStore<>(file, "checkpoints", TYPE_MAP_STRING_STRING);
+	}
+
+	public boolean isEnabled() {
+		return done.isEnabled();
+	}
+
+	public boolean isDone(String key, String marker) {
+		return marker.equals(done.get(key));
+	}
+
+	/**
+	 * Mark the given entry as done, and save the checkpoints.
+	 *
+	 * @param key The key of the entry.
+	 * @param marker The marker of the entry.
+	 */
+	public void markDone(String key, String marker) {
+		done.put(key, marker);
+	}
+
+}
@@ -21,6 +21,7 @@ import com.google.gson.JsonElement;
 import de.fraunhofer.iosb.ilt.configurable.AnnotatedConfigurable;
 import de.fraunhofer.iosb.ilt.configurable.ConfigEditor;
 import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
+import de.fraunhofer.iosb.ilt.configurable.Utils;
 import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorBoolean;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorInt;
@@ -29,17 +30,35 @@ import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorSubclass;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.Importer;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.CompressionUtils;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.UrlUtils;
 import de.fraunhofer.iosb.ilt.sta.model.Observation;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
@@ -57,6 +76,16 @@ public class ImporterCsv implements Importer, AnnotatedConfigurable<SensorThings
 	 * The logger for this class.
 	 */
 	private static final Logger LOGGER = LoggerFactory.getLogger(ImporterCsv.class);
+
+	/**
+	 * The size of the chunks that files are split into when converting in
+	 * parallel.
+	 */
+	private static final long PARALLEL_CHUNK_SIZE = 16L * 1024 * 1024;
+	/**
+	 * The number of rows handed to the converters in one go.
+	 */
+	private static final int BLOCK_SIZE = 1024;
 	private SensorThingsService service;
 	private boolean verbose;
 
@@ -69,7 +98,7 @@ public class ImporterCsv implements Importer, AnnotatedConfigurable<SensorThings
 	private List<RecordConverter> recordConvertors;
 
 	@ConfigurableField(editor = EditorInt.class, optional = true,
-			label = "Row Limit", description = "The maximum number of rows to insert as observations (0=no limit).")
+			label = "Row Limit", description = "The maximum number of rows to insert as observations (0=no limit). Can not be used with a Tail Offsets File.")
 	@EditorInt.EdOptsInt(dflt = 0, max = Integer.MAX_VALUE, min = 0, step = 1)
 	private Integer rowLimit;
 
@@ -103,7 +132,48 @@ public class ImporterCsv implements Importer, AnnotatedConfigurable<SensorThings
 	@EditorBoolean.EdOptsBool()
 	private boolean hasHeader;
 
+	@ConfigurableField(editor = EditorBoolean.class, optional = true,
+			label = "Memory Map Files", description = "Read local (file:) urls by mapping them into memory, instead of loading them completely.")
+	@EditorBoolean.EdOptsBool(dflt = true)
+	private boolean memoryMapped = true;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Parallel Threads", description = "The number of threads used to convert memory mapped files in parallel (0=one row at a time). Only allowed if all converters are thread-safe.")
+	@EditorInt.EdOptsInt(dflt = 0, max = 1024, min = 0, step = 1)
+	private Integer parallelThreads;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Archive Threads", description = "The number of entries of zip or tar archives that are converted in parallel. More than 1 is only allowed if all converters are thread-safe.")
+	@EditorInt.EdOptsInt(dflt = 1, max = 1024, min = 1, step = 1)
+	private Integer archiveThreads;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Archive Memory Limit", description = "The maximum size in kB of an archive entry that is buffered in memory. Larger entries are buffered in a temporary file.")
+	@EditorInt.EdOptsInt(dflt = 4096, max = Integer.MAX_VALUE / 1024, min = 0, step = 1)
+	private Integer archiveMemoryLimit;
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "Checkpoint File", description = "File to store the archive entries in that are imported completely. These entries are skipped in later runs, unless they change. Leave empty to disable.")
+	@EditorString.EdOptsString(dflt = "")
+	private String checkpointFile;
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "Tail Offsets File", description = "File to store the read position of each (uncompressed) input in. Only the lines appended since the last run are read. Inputs that were truncated or replaced are read from the start. Leave empty to always read the inputs completely.")
+	@EditorString.EdOptsString(dflt = "")
+	private String tailOffsetsFile;
+
 	private CSVFormat format;
+	private EntryCheckpoints checkpoints;
+	private TailOffsets tailOffsets;
+	private boolean noAct = false;
+	/**
+	 * Progress to store once the Observations read so far have been sent.
+	 */
+	private final List<Runnable> pendingCommits = new ArrayList<>();
+	/**
+	 * Set when an input of a continuous url generator is read completely.
+	 */
+	private boolean flushRequested;
 
 	public ImporterCsv() {
 	}
@@ -115,7 +185,32 @@ public class ImporterCsv implements Importer, AnnotatedConfigurable<SensorThings
 
 	@Override
 	public void setNoAct(boolean noAct) {
-		// Nothing to set.
+		this.noAct = noAct;
+	}
+
+	@Override
+	public void observationsSent() {
+		for (Runnable commit : pendingCommits) {
+			commit.run();
+		}
+		pendingCommits.clear();
+	}
+
+	@Override
+	public boolean isFlushRequested() {
+		return flushRequested;
+	}
+
+	/**
+	 * Store the given progress once the Observations returned up to now have
+	 * been sent. Progress is never stored in noAct mode.
+	 *
+	 * @param commit The action that stores the progress.
+	 */
+	private void commitAfterSend(Runnable commit) {
+		if (!noAct) {
+			pendingCommits.add(commit);
+		}
 	}
 
 	@Override
@@ -131,6 +226,21 @@ public class ImporterCsv implements Importer, AnnotatedConfigurable<SensorThings
 		for (RecordConverter rcCsv : recordConverters) {
 			rcCsv.setVerbose(verbose);
 			rcCsv.init(service);
+			RecordConverter.checkImplemented(rcCsv);
+		}
+		boolean parallel = parallelThreads != null && parallelThreads > 0
+				|| archiveThreads != null && archiveThreads > 1;
+		if (parallel) {
+			for (RecordConverter rcCsv : recordConverters) {
+				if (!rcCsv.isThreadSafe()) {
+					throw new ConfigurationException("Converter " + rcCsv.getClass().getName() + " is not thread-safe, set Parallel Threads to 0 and Archive Threads to 1.");
+				}
+			}
+		}
+
+		if (rowLimit != null && rowLimit > 0 && !Utils.isNullOrEmpty(tailOffsetsFile)) {
+			// The tail offset is stored after the last byte read, rows after the limit would never be imported.
+			throw new ConfigurationException("Row Limit can not be used together with a Tail Offsets File.");
 		}
 
 		format = CSVFormat.DEFAULT
@@ -141,6 +251,10 @@ public class ImporterCsv implements Importer, AnnotatedConfigurable<SensorThings
 		if (hasHeader) {
 			format = format.withFirstRecordAsHeader();
 		}
+		pendingCommits.clear();
+		flushRequested = false;
+		checkpoints = new EntryCheckpoints(Utils.isNullOrEmpty(checkpointFile) ? null : new File(checkpointFile));
+		tailOffsets = Utils.isNullOrEmpty(tailOffsetsFile) ? null : new TailOffsets(new File(tailOffsetsFile));
 	}
 
 	@Override
@@ -154,96 +268,611 @@ public class ImporterCsv implements Importer, AnnotatedConfigurable<SensorThings
 		}
 	}
 
-	private class ObsListIter implements Iterator<List<Observation>> {
+	private class ObsListIter implements Iterator<List<Observation>>, Closeable {
 
 		private final Iterator<URL> urlIterator;
-		private Iterator<CSVRecord> records;
+		private Iterator<CsvRow> records;
 		private final boolean limitRows;
 		private final long rowLimit;
 		private final long rowSkipBase;
 		private long rowSkip;
-		private int rowCount = 0;
-		private int totalCount = 0;
+		private long rowCount = 0;
+		private long totalCount = 0;
+		private ChunkedFile chunkedFile;
+		private ArchiveFile archiveFile;
+		private Closeable currentInput;
+		private URL currentUrl;
+		private TailInputStream currentTail;
+		private String currentTailKey;
 
 		public ObsListIter(Iterator<URL> urlIterator, long rowSkip, long rowLimit) throws ImportException {
 			this.rowSkipBase = rowSkip;
 			this.rowSkip = rowSkip;
 			this.urlIterator = urlIterator;
-			this.records = nextUrl().iterator();
 			this.rowLimit = rowLimit;
 			limitRows = rowLimit > 0;
+			nextUrl();
+		}
+
+		private boolean hasRowsLeft() {
+			return records != null && records.hasNext()
+					|| chunkedFile != null && chunkedFile.hasNext()
+					|| archiveFile != null && archiveFile.hasNext();
 		}
 
 		@Override
 		public boolean hasNext() {
-			return records != null && records.hasNext() || urlIterator.hasNext();
+			return hasRowsLeft() || urlIterator.hasNext();
 		}
 
 		@Override
 		public List<Observation> next() {
-			if (!records.hasNext()) {
+			flushRequested = false;
+			if (!hasRowsLeft()) {
 				try {
-					records = nextUrl().iterator();
+					nextUrl();
 				} catch (ImportException ex) {
 					throw new IllegalStateException(ex);
 				}
 			}
-			while (records != null && records.hasNext()) {
-				CSVRecord record = records.next();
+			if (chunkedFile != null && chunkedFile.hasNext()) {
+				return chunkedFile.next();
+			}
+			if (archiveFile != null && archiveFile.hasNext()) {
+				return archiveFile.next();
+			}
+			List<CsvRow> block = new ArrayList<>(BLOCK_SIZE);
+			while (block.size() < BLOCK_SIZE && records != null && records.hasNext()) {
+				CsvRow record = records.next();
 				totalCount++;
 				if (rowSkip > 0) {
 					rowSkip--;
 					continue;
 				}
 				if (limitRows && rowCount > rowLimit) {
-					return Collections.emptyList();
-				}
-				List<Observation> result = new ArrayList<>();
-				for (RecordConverter rcCsv : recordConverters) {
-					List<Observation> obs;
-					try {
-						obs = rcCsv.convert(record);
-						result.addAll(obs);
-					} catch (ImportException ex) {
-						LOGGER.debug("Failed to import.", ex);
-					}
+					break;
 				}
+				block.add(RecordContext.of(record));
 				rowCount++;
-				return result;
 			}
-			LOGGER.info("Parsed {} rows of {}.", rowCount, totalCount);
-			return Collections.emptyList();
+			List<Observation> result = block.isEmpty() ? Collections.emptyList() : convertBlock(block, new ArrayList<>());
+			if (records == null || !records.hasNext()) {
+				LOGGER.info("Parsed {} rows of {}.", rowCount, totalCount);
+				commitTail();
+				commitUrl();
+				closeInput();
+			}
+			return result;
 		}
 
-		private CSVParser nextUrl() throws ImportException {
+		private void nextUrl() throws ImportException {
 			rowSkip = rowSkipBase;
+			records = null;
+			chunkedFile = null;
+			archiveFile = null;
+			closeInput();
 			while (urlIterator.hasNext()) {
 				URL inUrl = urlIterator.next();
 				try {
-					CSVParser parser;
-					if (inUrl != null) {
-						final String protocol = inUrl.getProtocol();
-						if (protocol.startsWith("ftp")) {
-							URLConnection connection = inUrl.openConnection();
-							try (InputStream stream = connection.getInputStream()) {
-								String data = IOUtils.toString(stream, "UTF-8");
-								parser = CSVParser.parse(data, format);
-							}
-						} else {
-							String data = UrlUtils.fetchFromUrl(inUrl.toString(), charset);
-							parser = CSVParser.parse(data, format);
-						}
-					} else {
+					if (inUrl == null) {
 						LOGGER.error("No valid input url or file.");
 						throw new ImportException("No valid input url or file.");
 					}
-					return parser;
-				} catch (ImportException | IOException exc) {
+					String name = inUrl.getPath();
+					currentUrl = inUrl;
+					if (tailOffsets != null && !CompressionUtils.isPackedName(name)) {
+						currentTailKey = inUrl.toString();
+						currentTail = TailInputStream.open(inUrl, tailOffsets.get(currentTailKey), hasHeader);
+						currentInput = currentTail;
+						if (currentTail.getStart() > 0) {
+							rowSkip = 0;
+						}
+						CSVParser parser = CSVParser.parse(currentTail, Charset.forName(charset), format);
+						records = new RowIterator(parser.iterator());
+						return;
+					}
+					if ("file".equals(inUrl.getProtocol()) && canMap()) {
+						File file = new File(inUrl.toURI());
+						if (!CompressionUtils.isPacked(file)) {
+							LOGGER.debug("Memory mapping {}", file);
+							MappedCsvReader reader = new MappedCsvReader(file, Charset.forName(charset), format.getDelimiter(), hasHeader);
+							if (parallelThreads != null && parallelThreads > 0) {
+								chunkedFile = new ChunkedFile(this, reader, parallelThreads);
+							} else {
+								currentInput = reader;
+								records = reader.iterator();
+							}
+							return;
+						}
+					}
+					BufferedInputStream input = CompressionUtils.decompress(name, UrlUtils.openStream(inUrl));
+					currentInput = input;
+					String archiveType = CompressionUtils.detectArchive(CompressionUtils.stripCompression(name), input);
+					if (archiveType != null) {
+						LOGGER.debug("Reading {} archive {}", archiveType, inUrl);
+						archiveFile = new ArchiveFile(this, inUrl.toString(), CompressionUtils.openArchive(archiveType, input));
+						return;
+					}
+					CSVParser parser = CSVParser.parse(input, Charset.forName(charset), format);
+					records = new RowIterator(parser.iterator());
+					return;
+				} catch (ImportException | IOException | URISyntaxException | IllegalArgumentException exc) {
 					LOGGER.error("Failed to handle URL: {}; {}", inUrl, exc.getMessage());
+					closeInput();
 				}
 			}
 			LOGGER.error("NextUrl requested, but no URLs left over.");
-			return null;
+		}
+
+		/**
+		 * Store the position after the tailed input, once it is read
+		 * completely and its Observations are sent.
+		 */
+		private void commitTail() {
+			if (currentTail != null) {
+				LOGGER.debug("Read {} new bytes from {}", currentTail.getReleased(), currentTailKey);
+				final String key = currentTailKey;
+				final TailOffsets.Position position = currentTail.getPosition();
+				commitAfterSend(() -> tailOffsets.put(key, position));
+			}
+		}
+
+		/**
+		 * Tell the url generator that the current url is imported, once its
+		 * Observations are sent.
+		 */
+		private void commitUrl() {
+			if (currentUrl != null) {
+				final URL url = currentUrl;
+				commitAfterSend(() -> inputUrl.done(url));
+				currentUrl = null;
+			}
+			flushRequested = inputUrl.isContinuous();
+		}
+
+		private void closeInput() {
+			currentTail = null;
+			currentUrl = null;
+			if (currentInput != null) {
+				IOUtils.closeQuietly(currentInput);
+				currentInput = null;
+			}
+		}
+
+		/**
+		 * Stop reading the current input, and close the url iterator if it
+		 * holds resources.
+		 */
+		@Override
+		public void close() {
+			if (chunkedFile != null) {
+				chunkedFile.close();
+				chunkedFile = null;
+			}
+			if (archiveFile != null) {
+				archiveFile.close();
+				archiveFile = null;
+			}
+			closeInput();
+			if (urlIterator instanceof Closeable) {
+				IOUtils.closeQuietly((Closeable) urlIterator);
+			}
+		}
+
+		private boolean canMap() {
+			if (!memoryMapped) {
+				return false;
+			}
+			try {
+				return MappedCsvReader.supports(Charset.forName(charset), format.getDelimiter());
+			} catch (IllegalArgumentException ex) {
+				LOGGER.warn("Unknown charset {}: {}", charset, ex.getMessage());
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Convert a block of rows with all converters. Each converter converts the
+	 * whole block before the next converter starts.
+	 *
+	 * @param block The rows to convert, wrapped in a RecordContext.
+	 * @param result The list to add the Observations to.
+	 * @return the given result list.
+	 */
+	private List<Observation> convertBlock(List<CsvRow> block, List<Observation> result) {
+		ObservationSink sink = new ListSink(result);
+		for (RecordConverter rcCsv : recordConverters) {
+			rcCsv.convert(block, sink);
+		}
+		return result;
+	}
+
+	/**
+	 * Converts a memory mapped file in chunks, on a pool of threads. The
+	 * results are returned in file order, one list per chunk. Only a limited
+	 * number of chunks is converted ahead of the consumer.
+	 */
+	private class ChunkedFile implements Iterator<List<Observation>> {
+
+		private final ObsListIter parent;
+		private final MappedCsvReader reader;
+		private final Iterator<MappedCsvReader.Chunk> chunks;
+		private final ForkJoinPool pool;
+		private final Deque<ForkJoinTask<ChunkResult>> running = new ArrayDeque<>();
+		private final int maxRunning;
+		private final long fileSkip;
+		/**
+		 * The number of rows that will have been converted when all submitted
+		 * chunks are done.
+		 */
+		private long plannedCount;
+
+		public ChunkedFile(ObsListIter parent, MappedCsvReader reader, int threads) throws IOException {
+			this.parent = parent;
+			this.reader = reader;
+			this.chunks = reader.split(PARALLEL_CHUNK_SIZE).iterator();
+			this.pool = new ForkJoinPool(threads);
+			this.maxRunning = 2 * threads;
+			this.fileSkip = parent.rowSkip;
+			this.plannedCount = parent.rowCount;
+			submitChunks();
+		}
+
+		private void submitChunks() {
+			while (running.size() < maxRunning && chunks.hasNext()) {
+				final MappedCsvReader.Chunk chunk = chunks.next();
+				final long skip = Math.max(0, Math.min(chunk.getRowCount(), fileSkip - chunk.getRowsBefore()));
+				long toConvert = chunk.getRowCount() - skip;
+				if (parent.limitRows) {
+					// Sequentially, rows are converted as long as rowCount <= rowLimit.
+					toConvert = Math.max(0, Math.min(toConvert, parent.rowLimit + 1 - plannedCount));
+				}
+				plannedCount += toConvert;
+				final long maxConvert = toConvert;
+				running.add(pool.submit(() -> convertChunk(chunk, skip, maxConvert)));
+			}
+		}
+
+		private ChunkResult convertChunk(MappedCsvReader.Chunk chunk, long skip, long maxConvert) {
+			List<Observation> result = new ArrayList<>();
+			List<CsvRow> block = new ArrayList<>(BLOCK_SIZE);
+			long skipped = 0;
+			long converted = 0;
+			Iterator<CsvRow> rows = chunk.iterator();
+			while (converted < maxConvert && rows.hasNext()) {
+				CsvRow record = rows.next();
+				if (skipped < skip) {
+					skipped++;
+					continue;
+				}
+				block.add(RecordContext.of(record));
+				converted++;
+				if (block.size() == BLOCK_SIZE) {
+					convertBlock(block, result);
+					block.clear();
+				}
+			}
+			if (!block.isEmpty()) {
+				convertBlock(block, result);
+			}
+			return new ChunkResult(chunk.getRowCount(), skip, converted, result);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !running.isEmpty();
+		}
+
+		@Override
+		public List<Observation> next() {
+			ForkJoinTask<ChunkResult> task = running.poll();
+			if (task == null) {
+				throw new NoSuchElementException();
+			}
+			ChunkResult result;
+			try {
+				result = task.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				close();
+				throw new IllegalStateException("Interrupted while converting chunks.", ex);
+			} catch (ExecutionException ex) {
+				close();
+				throw new IllegalStateException("Failed to convert chunk.", ex.getCause());
+			}
+			parent.totalCount += result.rows;
+			parent.rowSkip = Math.max(0, parent.rowSkip - result.skipped);
+			parent.rowCount += result.converted;
+			submitChunks();
+			if (running.isEmpty()) {
+				parent.commitUrl();
+				close();
+				LOGGER.info("Parsed {} rows of {}.", parent.rowCount, parent.totalCount);
+			}
+			return result.observations;
+		}
+
+		private void close() {
+			for (ForkJoinTask<ChunkResult> task : running) {
+				task.cancel(true);
+			}
+			running.clear();
+			pool.shutdown();
+			try {
+				reader.close();
+			} catch (IOException ex) {
+				LOGGER.debug("Failed to close reader.", ex);
+			}
+		}
+	}
+
+	/**
+	 * Converts the entries of a zip or tar archive, each as a separate csv
+	 * file, on a pool of threads. The entries are read from the archive stream
+	 * in order, and their results are returned in the same order. An entry is
+	 * checkpointed once the Observations of that entry have been sent.
+	 */
+	private class ArchiveFile implements Iterator<List<Observation>> {
+
+		private final ObsListIter parent;
+		private final String source;
+		private final ArchiveInputStream archive;
+		private final ForkJoinPool pool;
+		private final Deque<ForkJoinTask<EntryResult>> running = new ArrayDeque<>();
+		private final int maxRunning;
+		private final int memoryLimit;
+		private final List<EntryData> spilled = new ArrayList<>();
+		private boolean entriesLeft = true;
+
+		public ArchiveFile(ObsListIter parent, String source, ArchiveInputStream archive) {
+			this.parent = parent;
+			this.source = source;
+			this.archive = archive;
+			final int threads = archiveThreads == null ? 1 : Math.max(1, archiveThreads);
+			this.pool = new ForkJoinPool(threads);
+			this.maxRunning = 2 * threads;
+			this.memoryLimit = archiveMemoryLimit == null ? 4096 * 1024 : archiveMemoryLimit * 1024;
+			submitEntries();
+		}
+
+		private void submitEntries() {
+			try {
+				while (entriesLeft && running.size() < maxRunning) {
+					ArchiveEntry entry = archive.getNextEntry();
+					if (entry == null) {
+						entriesLeft = false;
+						break;
+					}
+					if (entry.isDirectory() || !archive.canReadEntryData(entry)) {
+						continue;
+					}
+					final String name = entry.getName();
+					final String key = source + '!' + name;
+					final String marker = entry.getSize() + "|" + entry.getLastModifiedDate().getTime();
+					if (checkpoints.isDone(key, marker)) {
+						LOGGER.debug("Skipping entry {}, imported before.", key);
+						continue;
+					}
+					final EntryData data = EntryData.read(archive, memoryLimit);
+					if (data.isSpilled()) {
+						spilled.add(data);
+					}
+					running.add(pool.submit(() -> convertEntry(name, key, marker, data)));
+				}
+			} catch (IOException ex) {
+				LOGGER.error("Failed to read archive {}: {}", source, ex.getMessage());
+				entriesLeft = false;
+			}
+		}
+
+		private EntryResult convertEntry(String name, String key, String marker, EntryData data) {
+			List<Observation> result = new ArrayList<>();
+			List<CsvRow> block = new ArrayList<>(BLOCK_SIZE);
+			long rows = 0;
+			long converted = 0;
+			try (BufferedInputStream input = CompressionUtils.decompress(name, data.open())) {
+				CSVParser parser = CSVParser.parse(input, Charset.forName(charset), format);
+				for (CSVRecord record : parser) {
+					rows++;
+					if (rows <= parent.rowSkipBase) {
+						continue;
+					}
+					if (parent.limitRows && converted > parent.rowLimit) {
+						break;
+					}
+					block.add(RecordContext.of(CsvRow.wrap(record)));
+					converted++;
+					if (block.size() == BLOCK_SIZE) {
+						convertBlock(block, result);
+						block.clear();
+					}
+				}
+				if (!block.isEmpty()) {
+					convertBlock(block, result);
+				}
+			} catch (IOException | IllegalStateException ex) {
+				LOGGER.error("Failed to read entry {}: {}", key, ex.getMessage());
+				return new EntryResult(null, null, rows, converted, result);
+			} finally {
+				data.release();
+			}
+			LOGGER.debug("Parsed {} rows of entry {}.", converted, name);
+			return new EntryResult(key, marker, rows, converted, result);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !running.isEmpty();
+		}
+
+		@Override
+		public List<Observation> next() {
+			ForkJoinTask<EntryResult> task = running.poll();
+			if (task == null) {
+				throw new NoSuchElementException();
+			}
+			EntryResult result;
+			try {
+				result = task.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				close();
+				throw new IllegalStateException("Interrupted while converting archive entries.", ex);
+			} catch (ExecutionException ex) {
+				close();
+				throw new IllegalStateException("Failed to convert archive entry.", ex.getCause());
+			}
+			parent.totalCount += result.rows;
+			parent.rowCount += result.converted;
+			if (result.key != null) {
+				commitAfterSend(() -> checkpoints.markDone(result.key, result.marker));
+			}
+			submitEntries();
+			if (running.isEmpty()) {
+				parent.commitUrl();
+				close();
+				LOGGER.info("Parsed {} rows of {}.", parent.rowCount, parent.totalCount);
+			}
+			return result.observations;
+		}
+
+		private void close() {
+			for (ForkJoinTask<EntryResult> task : running) {
+				task.cancel(true);
+			}
+			running.clear();
+			pool.shutdown();
+			for (EntryData data : spilled) {
+				data.release();
+			}
+			spilled.clear();
+			entriesLeft = false;
+			parent.closeInput();
+		}
+	}
+
+	/**
+	 * The data of one archive entry. Entries up to the memory limit are kept
+	 * in memory, larger entries are written to a temporary file.
+	 */
+	private static class EntryData {
+
+		private byte[] data;
+		private File file;
+
+		public static EntryData read(InputStream input, int memoryLimit) throws IOException {
+			EntryData result = new EntryData();
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			long copied = IOUtils.copyLarge(input, buffer, 0, memoryLimit + 1L);
+			if (copied <= memoryLimit) {
+				result.data = buffer.toByteArray();
+				return result;
+			}
+			result.file = File.createTempFile("archive-entry-", ".tmp");
+			try (OutputStream out = new FileOutputStream(result.file)) {
+				buffer.writeTo(out);
+				IOUtils.copyLarge(input, out);
+			} catch (IOException ex) {
+				result.release();
+				throw ex;
+			}
+			return result;
+		}
+
+		public boolean isSpilled() {
+			return file != null;
+		}
+
+		public synchronized InputStream open() throws IOException {
+			if (file != null) {
+				return new FileInputStream(file);
+			}
+			if (data == null) {
+				throw new IOException("Entry data already released.");
+			}
+			return new ByteArrayInputStream(data);
+		}
+
+		public synchronized void release() {
+			data = null;
+			if (file != null && !file.delete()) {
+				file.deleteOnExit();
+			}
+			file = null;
+		}
+	}
+
+	private static class EntryResult {
+
+		private final String key;
+		private final String marker;
+		private final long rows;
+		private final long converted;
+		private final List<Observation> observations;
+
+		public EntryResult(String key, String marker, long rows, long converted, List<Observation> observations) {
+			this.key = key;
+			this.marker = marker;
+			this.rows = rows;
+			this.converted = converted;
+			this.observations = observations;
+		}
+	}
+
+	/**
+	 * Collects the Observations of a block in a list.
+	 */
+	private static class ListSink implements ObservationSink {
+
+		private final List<Observation> target;
+
+		public ListSink(List<Observation> target) {
+			this.target = target;
+		}
+
+		@Override
+		public void accept(Observation observation) {
+			target.add(observation);
+		}
+
+		@Override
+		public void failed(CsvRow record, ImportException ex) {
+			LOGGER.debug("Failed to import.", ex);
+		}
+	}
+
+	private static class ChunkResult {
+
+		private final long rows;
+		private final long skipped;
+		private final long converted;
+		private final List<Observation> observations;
+
+		public ChunkResult(long rows, long skipped, long converted, List<Observation> observations) {
+			this.rows = rows;
+			this.skipped = skipped;
+			this.converted = converted;
+			this.observations = observations;
+		}
+	}
+
+	private static class RowIterator implements Iterator<CsvRow> {
+
+		private final Iterator<CSVRecord> records;
+
+		public RowIterator(Iterator<CSVRecord> records) {
+			this.records = records;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return records.hasNext();
+		}
+
+		@Override
+		public CsvRow next() {
+			return CsvRow.wrap(records.next());
 		}
 	}
 
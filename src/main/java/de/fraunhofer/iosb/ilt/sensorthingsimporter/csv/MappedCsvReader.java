@@ -0,0 +1,645 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a local CSV file by mapping it into memory. The delimiters and quotes
+ * are found by scanning the bytes, and the rows only hold the offsets of their
+ * fields. A field is only decoded into a String when it is requested. Files
+ * larger than the mapping window are mapped piece by piece.
+ *
+ * The parsing follows CSVFormat.DEFAULT: double quotes, doubled quotes as
+ * escape and CR, LF or CRLF line endings. Empty lines are skipped. Only
+ * charsets where the delimiter, quote and line endings are single ASCII bytes
+ * are supported, see {@link #supports(Charset, char)}.
+ *
+ * @author hylke
+ */
+public class MappedCsvReader implements Iterable<CsvRow>, Closeable {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(MappedCsvReader.class);
+
+	public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+	private static final byte QUOTE = '"';
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	private final File file;
+	private final FileChannel channel;
+	private final boolean owner;
+	/**
+	 * The end of the range this reader reads, the file size for the main
+	 * reader.
+	 */
+	private final long end;
+	private final Charset charset;
+	private final byte delimiter;
+	private final CSVFormat format;
+	private final int defaultWindowSize;
+
+	private List<String> headerNames;
+	private Map<String, Integer> header;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	private int windowSize;
+	private long position;
+	private long recordNumber;
+
+	private int fieldCount;
+	private int[] fieldStarts = new int[16];
+	private int[] fieldEnds = new int[16];
+	private boolean[] fieldEscaped = new boolean[16];
+
+	public MappedCsvReader(File file, Charset charset, char delimiter, boolean hasHeader) throws IOException {
+		this(file, charset, delimiter, hasHeader, DEFAULT_WINDOW_SIZE);
+	}
+
+	public MappedCsvReader(File file, Charset charset, char delimiter, boolean hasHeader, int windowSize) throws IOException {
+		if (!supports(charset, delimiter)) {
+			throw new IllegalArgumentException("Charset " + charset + " with delimiter " + delimiter + " not supported.");
+		}
+		this.file = file;
+		this.charset = charset;
+		this.delimiter = (byte) delimiter;
+		this.defaultWindowSize = windowSize;
+		this.format = CSVFormat.DEFAULT.withDelimiter(delimiter);
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		owner = true;
+		end = channel.size();
+		LOGGER.debug("Mapping {} ({} bytes).", file, end);
+		if (end > 0) {
+			mapWindow(0, defaultWindowSize);
+			if (end >= 3 && StandardCharsets.UTF_8.equals(charset)
+					&& window.get(0) == (byte) 0xEF && window.get(1) == (byte) 0xBB && window.get(2) == (byte) 0xBF) {
+				position = 3;
+			}
+		}
+		if (hasHeader) {
+			readHeader();
+		}
+	}
+
+	/**
+	 * Create a reader for a part of the file of the given parent.
+	 */
+	private MappedCsvReader(MappedCsvReader parent, long start, long end, long firstRecordNumber) {
+		this.file = parent.file;
+		this.charset = parent.charset;
+		this.delimiter = parent.delimiter;
+		this.defaultWindowSize = parent.defaultWindowSize;
+		this.format = parent.format;
+		this.channel = parent.channel;
+		this.headerNames = parent.headerNames;
+		this.header = parent.header;
+		this.owner = false;
+		this.end = end;
+		this.position = start;
+		this.windowStart = start;
+		this.recordNumber = firstRecordNumber;
+	}
+
+	/**
+	 * Check if the given charset and delimiter can be parsed on the byte
+	 * level.
+	 *
+	 * @param charset The charset of the file.
+	 * @param delimiter The delimiter.
+	 * @return true if the combination is supported.
+	 */
+	public static boolean supports(Charset charset, char delimiter) {
+		if (delimiter >= 128 || delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+			return false;
+		}
+		return StandardCharsets.UTF_8.equals(charset)
+				|| charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1.0f;
+	}
+
+	private void readHeader() throws IOException {
+		MappedRow headerRow = readRecord();
+		if (headerRow == null) {
+			headerNames = Collections.emptyList();
+			header = Collections.emptyMap();
+			return;
+		}
+		List<String> names = new ArrayList<>(headerRow.size());
+		header = new HashMap<>();
+		for (int i = 0; i < headerRow.size(); i++) {
+			String name = headerRow.get(i);
+			names.add(name);
+			header.putIfAbsent(name, i);
+		}
+		headerNames = Collections.unmodifiableList(names);
+		recordNumber = 0;
+	}
+
+	private void mapWindow(long start, int size) throws IOException {
+		windowStart = start;
+		windowSize = size;
+		long length = Math.min(size, end - start);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+	}
+
+	/**
+	 * Read the next record.
+	 *
+	 * @return the next record, or null if the end of the file is reached.
+	 * @throws IOException If the file could not be mapped.
+	 */
+	private MappedRow readRecord() throws IOException {
+		while (position < end) {
+			if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+				mapWindow(position, defaultWindowSize);
+			}
+			int start = (int) (position - windowStart);
+			int recordEnd = scanRecord(start);
+			if (recordEnd == -1) {
+				// The record does not fit in the rest of the window.
+				if (start == 0) {
+					if (windowSize == Integer.MAX_VALUE) {
+						throw new IOException("Record at " + position + " in " + file + " is too large.");
+					}
+					mapWindow(position, (int) Math.min(Integer.MAX_VALUE, 2L * windowSize));
+				} else {
+					mapWindow(position, defaultWindowSize);
+				}
+				continue;
+			}
+			if (recordEnd == -2) {
+				// Empty line.
+				continue;
+			}
+			recordNumber++;
+			return new MappedRow(window, start, recordEnd, recordNumber,
+					Arrays.copyOf(fieldStarts, fieldCount),
+					Arrays.copyOf(fieldEnds, fieldCount),
+					Arrays.copyOf(fieldEscaped, fieldCount));
+		}
+		return null;
+	}
+
+	/**
+	 * Scan one record, starting at the given offset in the window. Fills the
+	 * field arrays and moves the position to the start of the next record.
+	 *
+	 * @param start The offset of the start of the record in the window.
+	 * @return The offset of the end of the record, excluding the line ending,
+	 * -1 if the record runs past the end of the window, or -2 for an empty
+	 * line.
+	 */
+	private int scanRecord(final int start) {
+		final ByteBuffer buf = window;
+		final int limit = buf.limit();
+		final boolean more = windowStart + limit < end;
+		fieldCount = 0;
+		int p = start;
+		byte b = buf.get(p);
+		if (b == CR || b == LF) {
+			p++;
+			if (b == CR) {
+				if (p >= limit && more) {
+					return -1;
+				}
+				if (p < limit && buf.get(p) == LF) {
+					p++;
+				}
+			}
+			position = windowStart + p;
+			return -2;
+		}
+		while (true) {
+			if (p >= limit) {
+				if (more) {
+					return -1;
+				}
+				addField(p, p, false);
+				position = windowStart + p;
+				return p;
+			}
+			b = buf.get(p);
+			if (b == QUOTE) {
+				final int fieldStart = p + 1;
+				int fieldEnd = -1;
+				boolean escaped = false;
+				p++;
+				while (fieldEnd < 0) {
+					if (p >= limit) {
+						if (more) {
+							return -1;
+						}
+						// Unterminated quote, take what we have.
+						fieldEnd = p;
+						break;
+					}
+					if (buf.get(p) == QUOTE) {
+						if (p + 1 >= limit && more) {
+							return -1;
+						}
+						if (p + 1 < limit && buf.get(p + 1) == QUOTE) {
+							escaped = true;
+							p += 2;
+						} else {
+							fieldEnd = p;
+							p++;
+						}
+					} else {
+						p++;
+					}
+				}
+				// Anything between the closing quote and the delimiter is ignored.
+				while (p < limit && (b = buf.get(p)) != delimiter && b != CR && b != LF) {
+					p++;
+				}
+				if (p >= limit && more) {
+					return -1;
+				}
+				addField(fieldStart, fieldEnd, escaped);
+			} else {
+				final int fieldStart = p;
+				while (p < limit && (b = buf.get(p)) != delimiter && b != CR && b != LF) {
+					p++;
+				}
+				if (p >= limit && more) {
+					return -1;
+				}
+				addField(fieldStart, p, false);
+			}
+			if (p >= limit) {
+				position = windowStart + p;
+				return p;
+			}
+			b = buf.get(p);
+			if (b == delimiter) {
+				p++;
+				continue;
+			}
+			final int end = p;
+			p++;
+			if (b == CR) {
+				if (p >= limit && more) {
+					return -1;
+				}
+				if (p < limit && buf.get(p) == LF) {
+					p++;
+				}
+			}
+			position = windowStart + p;
+			return end;
+		}
+	}
+
+	private void addField(int start, int end, boolean escaped) {
+		if (fieldCount == fieldStarts.length) {
+			int newSize = fieldCount * 2;
+			fieldStarts = Arrays.copyOf(fieldStarts, newSize);
+			fieldEnds = Arrays.copyOf(fieldEnds, newSize);
+			fieldEscaped = Arrays.copyOf(fieldEscaped, newSize);
+		}
+		fieldStarts[fieldCount] = start;
+		fieldEnds[fieldCount] = end;
+		fieldEscaped[fieldCount] = escaped;
+		fieldCount++;
+	}
+
+	private String decode(ByteBuffer buf, int start, int end) {
+		final int length = end - start;
+		if (length <= 0) {
+			return "";
+		}
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buf.get(start + i);
+		}
+		return new String(bytes, charset);
+	}
+
+	/**
+	 * @return The names of the columns, or null if the file has no header.
+	 */
+	public List<String> getHeaderNames() {
+		return headerNames;
+	}
+
+	@Override
+	public Iterator<CsvRow> iterator() {
+		return new Iterator<CsvRow>() {
+			private MappedRow next;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null) {
+					try {
+						next = readRecord();
+					} catch (IOException ex) {
+						throw new IllegalStateException("Failed to read " + file, ex);
+					}
+					if (next == null && owner) {
+						closeQuietly();
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public CsvRow next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				MappedRow row = next;
+				next = null;
+				return row;
+			}
+		};
+	}
+
+	/**
+	 * Split the rest of the file into chunks of about the given size, at
+	 * record boundaries. The file is scanned once for quotes and line endings,
+	 * so quoted newlines do not cause a split. The chunks can be read in
+	 * parallel, but must not be used after this reader is closed.
+	 *
+	 * @param chunkSize The target size of the chunks, in bytes.
+	 * @return The chunks, in file order.
+	 * @throws IOException If the file could not be mapped.
+	 */
+	public List<Chunk> split(long chunkSize) throws IOException {
+		List<Chunk> chunks = new ArrayList<>();
+		long chunkStart = position;
+		long rowsBefore = recordNumber;
+		long rows = 0;
+		long target = chunkStart + chunkSize;
+		boolean inQuotes = false;
+		boolean justClosed = false;
+		boolean fieldStart = true;
+		boolean lineHasContent = false;
+		long pos = position;
+		while (pos < end) {
+			if (window == null || pos < windowStart || pos >= windowStart + window.limit()) {
+				mapWindow(pos, defaultWindowSize);
+			}
+			final ByteBuffer buf = window;
+			final int limit = buf.limit();
+			int p = (int) (pos - windowStart);
+			for (; p < limit; p++) {
+				byte b = buf.get(p);
+				if (inQuotes) {
+					if (b == QUOTE) {
+						inQuotes = false;
+						justClosed = true;
+					}
+					continue;
+				}
+				if (b == QUOTE) {
+					// A doubled quote closes and re-opens.
+					if (fieldStart || justClosed) {
+						inQuotes = true;
+					}
+					justClosed = false;
+					fieldStart = false;
+					lineHasContent = true;
+					continue;
+				}
+				justClosed = false;
+				if (b == CR || b == LF) {
+					if (lineHasContent) {
+						rows++;
+						lineHasContent = false;
+					}
+					fieldStart = true;
+					long next = windowStart + p + 1;
+					boolean lineEnd = b == LF || next >= end || (p + 1 < limit ? buf.get(p + 1) != LF : byteAt(next) != LF);
+					if (lineEnd && next >= target && next < end) {
+						chunks.add(new Chunk(chunkStart, next, rowsBefore, rows));
+						rowsBefore += rows;
+						rows = 0;
+						chunkStart = next;
+						target = chunkStart + chunkSize;
+					}
+				} else {
+					fieldStart = b == delimiter;
+					lineHasContent = true;
+				}
+			}
+			pos = windowStart + limit;
+		}
+		if (lineHasContent) {
+			rows++;
+		}
+		if (chunkStart < end) {
+			chunks.add(new Chunk(chunkStart, end, rowsBefore, rows));
+		}
+		LOGGER.debug("Split {} into {} chunks.", file, chunks.size());
+		return chunks;
+	}
+
+	private byte byteAt(long pos) throws IOException {
+		ByteBuffer one = ByteBuffer.allocate(1);
+		channel.read(one, pos);
+		return one.get(0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (owner) {
+			channel.close();
+		}
+	}
+
+	private void closeQuietly() {
+		try {
+			close();
+		} catch (IOException ex) {
+			LOGGER.debug("Failed to close {}", file, ex);
+		}
+	}
+
+	/**
+	 * A part of the file, starting and ending at record boundaries.
+	 */
+	public class Chunk implements Iterable<CsvRow> {
+
+		private final long start;
+		private final long end;
+		private final long rowsBefore;
+		private final long rowCount;
+
+		private Chunk(long start, long end, long rowsBefore, long rowCount) {
+			this.start = start;
+			this.end = end;
+			this.rowsBefore = rowsBefore;
+			this.rowCount = rowCount;
+		}
+
+		public long getStart() {
+			return start;
+		}
+
+		public long getEnd() {
+			return end;
+		}
+
+		/**
+		 * @return The number of rows in the file before this chunk.
+		 */
+		public long getRowsBefore() {
+			return rowsBefore;
+		}
+
+		/**
+		 * @return The number of rows in this chunk.
+		 */
+		public long getRowCount() {
+			return rowCount;
+		}
+
+		@Override
+		public Iterator<CsvRow> iterator() {
+			return new MappedCsvReader(MappedCsvReader.this, start, end, rowsBefore).iterator();
+		}
+	}
+
+	/**
+	 * A row that points into a mapped window. The window stays mapped as long
+	 * as rows referencing it exist, also after the reader moved on.
+	 */
+	private class MappedRow implements CsvRow {
+
+		private final ByteBuffer buffer;
+		private final int start;
+		private final int end;
+		private final long number;
+		private final int[] starts;
+		private final int[] ends;
+		private final boolean[] escaped;
+		private String[] values;
+
+		public MappedRow(ByteBuffer buffer, int start, int end, long number, int[] starts, int[] ends, boolean[] escaped) {
+			this.buffer = buffer;
+			this.start = start;
+			this.end = end;
+			this.number = number;
+			this.starts = starts;
+			this.ends = ends;
+			this.escaped = escaped;
+		}
+
+		@Override
+		public String get(int index) {
+			if (values == null) {
+				values = new String[starts.length];
+			}
+			String value = values[index];
+			if (value == null) {
+				value = decode(buffer, starts[index], ends[index]);
+				if (escaped[index]) {
+					value = value.replace("\"\"", "\"");
+				}
+				values[index] = value;
+			}
+			return value;
+		}
+
+		@Override
+		public String get(String name) {
+			if (header == null) {
+				throw new IllegalStateException("No header mapping was specified, the record values can't be accessed by name");
+			}
+			Integer index = header.get(name);
+			if (index == null) {
+				throw new IllegalArgumentException(String.format("Mapping for %s not found, expected one of %s", name, header.keySet()));
+			}
+			if (index >= starts.length) {
+				throw new IllegalArgumentException(String.format("Index for header '%s' is %d but row %d only has %d values!", name, index, number, starts.length));
+			}
+			return get(index);
+		}
+
+		@Override
+		public int size() {
+			return starts.length;
+		}
+
+		@Override
+		public boolean isMapped(String name) {
+			if (header == null) {
+				return false;
+			}
+			Integer index = header.get(name);
+			return index != null && index < starts.length;
+		}
+
+		@Override
+		public List<String> getHeaderNames() {
+			return headerNames;
+		}
+
+		@Override
+		public long getRecordNumber() {
+			return number;
+		}
+
+		@Override
+		public CSVRecord toCsvRecord() {
+			CSVFormat rowFormat = format;
+			if (headerNames != null) {
+				rowFormat = rowFormat.withHeader(headerNames.toArray(new String[headerNames.size()]));
+			}
+			try {
+				List<CSVRecord> records = CSVParser.parse(toString(), rowFormat).getRecords();
+				if (records.isEmpty()) {
+					throw new IllegalStateException("Row " + number + " could not be re-parsed.");
+				}
+				return records.get(0);
+			} catch (IOException ex) {
+				throw new IllegalStateException("Row " + number + " could not be re-parsed.", ex);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return decode(buffer, start, end);
+		}
+
+	}
+}
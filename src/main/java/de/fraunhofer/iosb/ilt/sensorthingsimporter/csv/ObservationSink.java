@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+
+/**
+ * Receives the Observations generated by a RecordConverter from a block of
+ * records.
+ *
+ * @author hylke
+ */
+public interface ObservationSink {
+
+	/**
+	 * Add an Observation generated from the block.
+	 *
+	 * @param observation The Observation to add.
+	 */
+	public void accept(Observation observation);
+
+	/**
+	 * Called when a single record of the block could not be converted. The
+	 * other records of the block are still converted.
+	 *
+	 * @param record The record that failed.
+	 * @param ex The reason.
+	 */
+	public void failed(CsvRow record, ImportException ex);
+
+}
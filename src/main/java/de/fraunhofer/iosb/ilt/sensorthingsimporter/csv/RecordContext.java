@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * A row, together with the values that converters derived from it. When
+ * several converters handle the same row, a time, result or filled template
+ * that one converter calculated can be re-used by the others, as long as they
+ * use the same key for it. Keys should contain everything the value depends
+ * on, like the column and the parser settings.
+ *
+ * A context is used by one thread at a time.
+ *
+ * @author hylke
+ */
+public class RecordContext implements CsvRow {
+
+	/**
+	 * Calculates a derived value.
+	 *
+	 * @param <T> The type of the value.
+	 */
+	@FunctionalInterface
+	public static interface Computation<T> {
+
+		public T compute() throws ImportException;
+	}
+
+	private final CsvRow row;
+	private Map<String, Object> values;
+	private CSVRecord csvRecord;
+
+	private RecordContext(CsvRow row) {
+		this.row = row;
+	}
+
+	/**
+	 * Get the context for the given row. If the row already is a context, it
+	 * is returned as is.
+	 *
+	 * @param row The row to get the context for.
+	 * @return The context for the row.
+	 */
+	public static RecordContext of(CsvRow row) {
+		if (row instanceof RecordContext) {
+			return (RecordContext) row;
+		}
+		return new RecordContext(row);
+	}
+
+	/**
+	 * Get the value for the given key, calculating it if no converter did so
+	 * before for this row. Null values are memoized too, failed calculations
+	 * are not.
+	 *
+	 * @param <T> The type of the value.
+	 * @param key The key of the value.
+	 * @param computation The calculation of the value.
+	 * @return The value.
+	 * @throws ImportException if the calculation fails.
+	 */
+	public <T> T get(String key, Computation<T> computation) throws ImportException {
+		if (values == null) {
+			values = new HashMap<>();
+		} else if (values.containsKey(key)) {
+			return (T) values.get(key);
+		}
+		T value = computation.compute();
+		values.put(key, value);
+		return value;
+	}
+
+	public CsvRow getRow() {
+		return row;
+	}
+
+	@Override
+	public String get(int index) {
+		return row.get(index);
+	}
+
+	@Override
+	public String get(String name) {
+		return row.get(name);
+	}
+
+	@Override
+	public int size() {
+		return row.size();
+	}
+
+	@Override
+	public boolean isMapped(String name) {
+		return row.isMapped(name);
+	}
+
+	@Override
+	public List<String> getHeaderNames() {
+		return row.getHeaderNames();
+	}
+
+	@Override
+	public long getRecordNumber() {
+		return row.getRecordNumber();
+	}
+
+	@Override
+	public CSVRecord toCsvRecord() {
+		if (csvRecord == null) {
+			csvRecord = row.toCsvRecord();
+		}
+		return csvRecord;
+	}
+
+	@Override
+	public String toString() {
+		return row.toString();
+	}
+
+}
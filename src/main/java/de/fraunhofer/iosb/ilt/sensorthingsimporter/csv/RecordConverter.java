@@ -34,5 +34,82 @@ public interface RecordConverter {
 	public default void setVerbose(boolean verbose) {
 	}
 
-	public List<Observation> convert(CSVRecord record) throws ImportException;
+	/**
+	 * Converters that can convert rows from several threads at the same time
+	 * must return true. Parallel conversion is only allowed when all
+	 * converters are thread-safe.
+	 *
+	 * @return true if this converter is thread-safe.
+	 */
+	public default boolean isThreadSafe() {
+		return false;
+	}
+
+	/**
+	 * Convert the given row into Observations. Implementations must override
+	 * either this method or {@link #convert(CSVRecord)}, since the default
+	 * implementations call each other. Use {@link #checkImplemented} to
+	 * verify this.
+	 *
+	 * @param record The row to convert.
+	 * @return The Observations generated from the row.
+	 * @throws ImportException if there is a permanent failure.
+	 */
+	public default List<Observation> convert(CsvRow record) throws ImportException {
+		return convert(record.toCsvRecord());
+	}
+
+	/**
+	 * Convert the given record into Observations. Only kept for converters
+	 * (scripts) that are not ported to CsvRow.
+	 *
+	 * @param record The record to convert.
+	 * @return The Observations generated from the record.
+	 * @throws ImportException if there is a permanent failure.
+	 */
+	public default List<Observation> convert(CSVRecord record) throws ImportException {
+		return convert(CsvRow.wrap(record));
+	}
+
+	/**
+	 * Check that the given converter overrides at least one of the single-row
+	 * convert methods.
+	 *
+	 * @param converter The converter to check.
+	 * @throws ImportException if the converter overrides neither method.
+	 */
+	public static void checkImplemented(RecordConverter converter) throws ImportException {
+		if (!overrides(converter, CsvRow.class) && !overrides(converter, CSVRecord.class)) {
+			throw new ImportException("Converter " + converter.getClass().getName() + " must implement convert(CsvRow) or convert(CSVRecord).");
+		}
+	}
+
+	static boolean overrides(RecordConverter converter, Class<?> parameterType) {
+		try {
+			return !converter.getClass().getMethod("convert", parameterType).isDefault();
+		} catch (NoSuchMethodException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Convert a block of rows into Observations, adding them to the given
+	 * sink. Implementations can override this to share lookups and parsed
+	 * values over the rows of the block. The default implementation converts
+	 * the rows one by one.
+	 *
+	 * @param records The rows to convert.
+	 * @param sink The sink to add the generated Observations to.
+	 */
+	public default void convert(List<? extends CsvRow> records, ObservationSink sink) {
+		for (CsvRow record : records) {
+			try {
+				for (Observation observation : convert(record)) {
+					sink.accept(observation);
+				}
+			} catch (ImportException ex) {
+				sink.failed(record, ex);
+			}
+		}
+	}
 }
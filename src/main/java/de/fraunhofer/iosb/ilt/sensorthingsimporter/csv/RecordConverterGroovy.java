@@ -17,48 +17,133 @@
 package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
 
 import de.fraunhofer.iosb.ilt.configurable.AnnotatedConfigurable;
+import de.fraunhofer.iosb.ilt.configurable.Utils;
 import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorBoolean;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
 import de.fraunhofer.iosb.ilt.sta.model.Observation;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
 import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyCodeSource;
+import groovy.lang.GroovySystem;
+import groovy.transform.CompileStatic;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
 import java.util.List;
-import org.apache.commons.csv.CSVRecord;
+import java.util.Map;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.tools.GroovyClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
+ * Converts records using a Groovy script that implements RecordConverter.
+ * Compiled scripts can be stored in a cache directory, keyed by the hash of
+ * the script and of the interfaces it is compiled against, so that later runs
+ * do not have to compile the script again.
+ *
+ * Each converter loads its own script class, unless Share Script Class is
+ * set. Shared classes are kept in memory for the most recently used scripts,
+ * and their static fields are shared by all jobs and runs that use the same
+ * script.
  *
  * @author hylke
  */
 public class RecordConverterGroovy implements RecordConverter, AnnotatedConfigurable<SensorThingsService, Object> {
 
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(RecordConverterGroovy.class);
+
+	private static final String SCRIPT_NAME = "RecordConverterClass";
+	private static final String MAIN_CLASS_FILE = "main-class.txt";
+
+	/**
+	 * The maximum number of shared script classes kept in memory.
+	 */
+	private static final int MAX_SHARED_CLASSES = 16;
+
+	/**
+	 * The shared script classes, by script hash, least recently used first.
+	 * Static state of a script class is shared between all jobs and runs
+	 * using it. Evicted classes are unloaded once their converters are gone.
+	 */
+	private static final Map<String, Class<RecordConverter>> CLASS_CACHE = new LinkedHashMap<String, Class<RecordConverter>>(MAX_SHARED_CLASSES, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Class<RecordConverter>> eldest) {
+			return size() > MAX_SHARED_CLASSES;
+		}
+	};
+
+	/**
+	 * The classes scripts are compiled against. When these change, compiled
+	 * scripts in the cache dir may no longer be valid.
+	 */
+	private static final Class<?>[] API_CLASSES = {RecordConverter.class, CsvRow.class, ObservationSink.class};
+	private static final String API_HASH = apiHash();
+
 	@ConfigurableField(editor = EditorString.class,
 			label = "Script", description = "The script that implements RecordConverter")
 	@EditorString.EdOptsString(lines = 20,
 			dflt = ""
 			+ "Class Script implements RecordConverter {\n"
-			+ "  public List<Observation> convert(CSVRecord record) throws ImportException {\n"
+			+ "  public List<Observation> convert(CsvRow record) throws ImportException {\n"
 			+ "    // Your code here\n"
 			+ "  }\n"
 			+ "}")
 	private String script;
 
-	private final GroovyClassLoader gcl;
+	@ConfigurableField(editor = EditorBoolean.class, optional = true,
+			label = "Compile Static", description = "Type check and compile the script statically. Faster, but all types must be declared.")
+	@EditorBoolean.EdOptsBool()
+	private boolean compileStatic;
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "Class Cache Dir", description = "Directory to store compiled scripts in, so they can be re-used by later runs. Leave empty to disable.")
+	@EditorString.EdOptsString(dflt = "")
+	private String classCacheDir;
+
+	@ConfigurableField(editor = EditorBoolean.class, optional = true,
+			label = "Share Script Class", description = "Re-use the loaded script class for all jobs in this JVM that use the same script. Saves loading time, but static fields of the script are shared between these jobs.")
+	@EditorBoolean.EdOptsBool()
+	private boolean shareClass;
+
 	private Class<RecordConverter> scriptClass;
 	private RecordConverter scriptInstance;
+	private boolean verbose;
 
 	public RecordConverterGroovy() {
-		gcl = new GroovyClassLoader(getClass().getClassLoader());
 	}
 
 	@Override
 	public void init(SensorThingsService service) throws ImportException {
 		try {
-			GroovyCodeSource groovyCodeSource = new GroovyCodeSource(script, "RecordConverterClass", "/importer");
-			scriptClass = gcl.parseClass(groovyCodeSource);
+			scriptClass = getScriptClass();
 			scriptInstance = scriptClass.getDeclaredConstructor().newInstance();
+			RecordConverter.checkImplemented(scriptInstance);
+			scriptInstance.setVerbose(verbose);
 			scriptInstance.init(service);
 		} catch (NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
 			throw new ImportException("Failed to create script instance", ex);
@@ -66,8 +151,198 @@ public class RecordConverterGroovy implements RecordConverter, AnnotatedConfigur
 	}
 
 	@Override
-	public List<Observation> convert(CSVRecord record) throws ImportException {
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+		if (scriptInstance != null) {
+			scriptInstance.setVerbose(verbose);
+		}
+	}
+
+	/**
+	 * Scripts are only used in parallel if they declare themselves
+	 * thread-safe.
+	 */
+	@Override
+	public boolean isThreadSafe() {
+		return scriptInstance != null && scriptInstance.isThreadSafe();
+	}
+
+	@Override
+	public List<Observation> convert(CsvRow record) throws ImportException {
 		return scriptInstance.convert(record);
 	}
 
+	@Override
+	public void convert(List<? extends CsvRow> records, ObservationSink sink) {
+		scriptInstance.convert(records, sink);
+	}
+
+	private String scriptHash() {
+		String mode = compileStatic ? "static" : "dynamic";
+		return DigestUtils.sha256Hex(GroovySystem.getVersion() + '|' + API_HASH + '|' + mode + '|' + script);
+	}
+
+	private static String apiHash() {
+		MessageDigest digest = DigestUtils.getSha256Digest();
+		for (Class<?> clazz : API_CLASSES) {
+			String resource = '/' + clazz.getName().replace('.', '/') + ".class";
+			try (InputStream input = clazz.getResourceAsStream(resource)) {
+				if (input != null) {
+					DigestUtils.updateDigest(digest, input);
+					continue;
+				}
+			} catch (IOException ex) {
+				LOGGER.warn("Failed to read {}: {}", resource, ex.getMessage());
+			}
+			// Not hashing the class is safe, but disables re-use between runs.
+			digest.update(Long.toString(System.nanoTime()).getBytes(StandardCharsets.UTF_8));
+		}
+		return Hex.encodeHexString(digest.digest());
+	}
+
+	private CompilerConfiguration createConfiguration() {
+		CompilerConfiguration config = new CompilerConfiguration();
+		if (compileStatic) {
+			config.addCompilationCustomizers(new ASTTransformationCustomizer(CompileStatic.class));
+		}
+		return config;
+	}
+
+	private Class<RecordConverter> getScriptClass() throws ImportException {
+		final String hash = scriptHash();
+		if (!shareClass) {
+			return loadScriptClass(hash);
+		}
+		synchronized (CLASS_CACHE) {
+			Class<RecordConverter> cached = CLASS_CACHE.get(hash);
+			if (cached != null) {
+				LOGGER.debug("Using shared script class: {}", hash);
+				return cached;
+			}
+		}
+		Class<RecordConverter> loaded = loadScriptClass(hash);
+		synchronized (CLASS_CACHE) {
+			Class<RecordConverter> existing = CLASS_CACHE.putIfAbsent(hash, loaded);
+			return existing == null ? loaded : existing;
+		}
+	}
+
+	private Class<RecordConverter> loadScriptClass(String hash) throws ImportException {
+		if (Utils.isNullOrEmpty(classCacheDir)) {
+			return compileInMemory();
+		}
+		return loadFromDisk(new File(classCacheDir, hash));
+	}
+
+	private Class<RecordConverter> compileInMemory() throws ImportException {
+		try {
+			GroovyClassLoader gcl = new GroovyClassLoader(getClass().getClassLoader(), createConfiguration());
+			GroovyCodeSource groovyCodeSource = new GroovyCodeSource(script, SCRIPT_NAME, "/importer");
+			Class<?> mainClass = gcl.parseClass(groovyCodeSource);
+			if (!RecordConverter.class.isAssignableFrom(mainClass)) {
+				for (Class<?> clazz : gcl.getLoadedClasses()) {
+					if (RecordConverter.class.isAssignableFrom(clazz)) {
+						mainClass = clazz;
+						break;
+					}
+				}
+			}
+			return checkClass(mainClass);
+		} catch (CompilationFailedException ex) {
+			throw new ImportException("Failed to compile script", ex);
+		}
+	}
+
+	private Class<RecordConverter> loadFromDisk(File dir) throws ImportException {
+		File mainFile = new File(dir, MAIN_CLASS_FILE);
+		if (!mainFile.isFile()) {
+			compileToDisk(dir);
+		} else {
+			LOGGER.debug("Using compiled script from {}", dir);
+		}
+		try {
+			String mainClass = FileUtils.readFileToString(mainFile, StandardCharsets.UTF_8).trim();
+			return checkClass(createLoader(dir).loadClass(mainClass));
+		} catch (IOException | ClassNotFoundException ex) {
+			throw new ImportException("Failed to load compiled script from " + dir, ex);
+		}
+	}
+
+	private URLClassLoader createLoader(File dir) throws MalformedURLException {
+		return new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader());
+	}
+
+	/**
+	 * Compiles the script into a temporary directory next to the target
+	 * directory, and moves it into place when complete, so that concurrent
+	 * jobs never see a half-written cache entry.
+	 */
+	private void compileToDisk(File dir) throws ImportException {
+		LOGGER.info("Compiling script into {}", dir);
+		File parent = dir.getAbsoluteFile().getParentFile();
+		Path tempDir = null;
+		try {
+			parent.mkdirs();
+			tempDir = Files.createTempDirectory(parent.toPath(), dir.getName() + ".tmp");
+			GroovyClassLoader gcl = new GroovyClassLoader(getClass().getClassLoader());
+			CompilationUnit unit = new CompilationUnit(createConfiguration(), null, gcl);
+			unit.addSource(SCRIPT_NAME + ".groovy", script);
+			unit.compile(Phases.CLASS_GENERATION);
+			for (GroovyClass groovyClass : unit.getClasses()) {
+				File classFile = tempDir.resolve(groovyClass.getName().replace('.', File.separatorChar) + ".class").toFile();
+				FileUtils.writeByteArrayToFile(classFile, groovyClass.getBytes());
+			}
+			String mainClass = findMainClass(unit.getClasses(), tempDir.toFile());
+			FileUtils.writeStringToFile(tempDir.resolve(MAIN_CLASS_FILE).toFile(), mainClass, StandardCharsets.UTF_8);
+			moveIntoPlace(tempDir, dir.toPath());
+			tempDir = null;
+		} catch (CompilationFailedException ex) {
+			throw new ImportException("Failed to compile script", ex);
+		} catch (IOException ex) {
+			throw new ImportException("Failed to write compiled script to " + dir, ex);
+		} finally {
+			if (tempDir != null) {
+				FileUtils.deleteQuietly(tempDir.toFile());
+			}
+		}
+	}
+
+	private static void moveIntoPlace(Path tempDir, Path target) throws IOException {
+		try {
+			Files.move(tempDir, target, StandardCopyOption.ATOMIC_MOVE);
+		} catch (FileAlreadyExistsException ex) {
+			LOGGER.debug("Script compiled concurrently into {}", target);
+			FileUtils.deleteQuietly(tempDir.toFile());
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(tempDir, target);
+		} catch (IOException ex) {
+			if (!Files.isDirectory(target)) {
+				throw ex;
+			}
+			// Another job won the race, with a non-empty target directory.
+			FileUtils.deleteQuietly(tempDir.toFile());
+		}
+	}
+
+	private String findMainClass(List<GroovyClass> classes, File dir) throws IOException, ImportException {
+		try (URLClassLoader loader = createLoader(dir)) {
+			for (GroovyClass groovyClass : classes) {
+				Class<?> clazz = loader.loadClass(groovyClass.getName());
+				if (RecordConverter.class.isAssignableFrom(clazz)) {
+					return groovyClass.getName();
+				}
+			}
+		} catch (ClassNotFoundException ex) {
+			throw new ImportException("Failed to load compiled script class", ex);
+		}
+		throw new ImportException("Script does not contain a class that implements RecordConverter.");
+	}
+
+	private static Class<RecordConverter> checkClass(Class<?> clazz) throws ImportException {
+		if (!RecordConverter.class.isAssignableFrom(clazz)) {
+			throw new ImportException("Script class " + clazz.getName() + " does not implement RecordConverter.");
+		}
+		return (Class<RecordConverter>) clazz;
+	}
+
 }
@@ -21,13 +21,16 @@ import de.fraunhofer.iosb.ilt.configurable.AnnotatedConfigurable;
 import de.fraunhofer.iosb.ilt.configurable.Utils;
 import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorClass;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorInt;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorList;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorSubclass;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.CompiledTemplate;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.JsonUtils;
-import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.Translator;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.UnitConverter;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.AutoTimeParser;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.NumberClassifier;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.Parser;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.ParserTime;
 import de.fraunhofer.iosb.ilt.sta.model.Datastream;
@@ -38,10 +41,8 @@ import java.math.BigDecimal;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
-import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.threeten.extra.Interval;
@@ -110,31 +111,94 @@ public class RecordConverterNames implements RecordConverter, AnnotatedConfigura
 			label = "parameters Template", description = "Template used to generate Observation/parameters, using {nr} placeholders.")
 	@EditorString.EdOptsString(lines = 4)
 	private String parametersTemplate;
+	private CompiledTemplate compiledParameters;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Type Learn Rows", description = "If this many results in a row are integers, a faster integer-only parser is used for the result column (0=off).")
+	@EditorInt.EdOptsInt(dflt = 100, max = Integer.MAX_VALUE, min = 0, step = 1)
+	private Integer typeLearnRows;
+	private NumberClassifier numberClassifier = new NumberClassifier();
+	private AutoTimeParser phenTimeParser;
+	private AutoTimeParser validTimeParser;
+	private AutoTimeParser resultTimeParser;
+	private String resultKey;
+	private String phenTimeKey;
+	private String validTimeKey;
+	private String resultTimeKey;
+	private String parametersKey;
 
 	public RecordConverterNames() {
 	}
 
+	@Override
+	public void init(SensorThingsService service) throws ImportException {
+		phenTimeParser = new AutoTimeParser(timeParser);
+		validTimeParser = new AutoTimeParser(timeParser);
+		resultTimeParser = new AutoTimeParser(null);
+		numberClassifier = new NumberClassifier(typeLearnRows == null ? 0 : typeLearnRows);
+		if (!Utils.isNullOrEmpty(parametersTemplate)) {
+			compiledParameters = CompiledTemplate.compile(parametersTemplate, false, true, false);
+			parametersKey = "template|" + compiledParameters.getKey();
+		}
+		resultKey = resultParser == null ? "Names|result|" + numberClassifier.getKey() + '|' + colResult : null;
+		phenTimeKey = "Names|time|" + phenTimeParser.getKey() + '|' + colPhenTime;
+		validTimeKey = "Names|time|" + validTimeParser.getKey() + '|' + colValidTime;
+		resultTimeKey = "Names|time|" + resultTimeParser.getKey() + '|' + colResultTime;
+	}
+
 	@Override
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
 	}
 
 	@Override
-	public List<Observation> convert(CSVRecord record) throws ImportException {
+	public boolean isThreadSafe() {
+		return true;
+	}
+
+	@Override
+	public List<Observation> convert(CsvRow record) throws ImportException {
+		Observation obs = convertRow(RecordContext.of(record), new BlockMemos());
+		if (obs == null) {
+			return Collections.emptyList();
+		}
+		return Arrays.asList(obs);
+	}
+
+	@Override
+	public void convert(List<? extends CsvRow> records, ObservationSink sink) {
+		final BlockMemos memos = new BlockMemos();
+		for (CsvRow record : records) {
+			try {
+				Observation obs = convertRow(RecordContext.of(record), memos);
+				if (obs != null) {
+					sink.accept(obs);
+				}
+			} catch (ImportException ex) {
+				sink.failed(record, ex);
+			}
+		}
+	}
+
+	private Observation convertRow(RecordContext record, BlockMemos memos) throws ImportException {
 		Object result;
 		Observation obs;
 		StringBuilder log;
 		String resultString = record.get(colResult);
-		result = parseResult(resultString);
+		if (resultKey == null) {
+			result = parseResult(resultString);
+		} else {
+			result = record.get(resultKey, () -> parseResult(resultString));
+		}
 		if (result == null) {
 			LOGGER.debug("No result found in column {}.", colResult);
-			return Collections.emptyList();
+			return null;
 		}
 
 		Datastream datastream = dsm.getDatastreamFor(record);
 		if (datastream == null) {
 			LOGGER.debug("No datastream found for column {}", record);
-			return Collections.emptyList();
+			return null;
 		}
 		if (!colUnit.isEmpty()) {
 			String unitFrom = record.get(colUnit);
@@ -142,32 +206,32 @@ public class RecordConverterNames implements RecordConverter, AnnotatedConfigura
 			result = convertResult(unitFrom, unitTo, result);
 			if (result == null) {
 				LOGGER.error("Failed to convert from {} to {}.", unitFrom, unitTo);
-				return Collections.emptyList();
+				return null;
 			}
 		}
 		obs = new Observation(result, datastream);
 		log = new StringBuilder("Result: _").append(result).append("_");
 
-		obs.setPhenomenonTime(listToTimeObject(colPhenTime, record));
+		obs.setPhenomenonTime(record.get(phenTimeKey, () -> memos.phenTime.get(timeKey(colPhenTime, record), () -> listToTimeObject(colPhenTime, record, phenTimeParser))));
 		log.append(", phenomenonTime: ").append(obs.getPhenomenonTime());
 
 		if (!colResultTime.isEmpty()) {
-			obs.setResultTime(parseZonedDateTime(record.get(colResultTime)));
+			obs.setResultTime(record.get(resultTimeKey, () -> memos.resultTime.get(record.get(colResultTime), () -> parseTime(resultTimeParser, record.get(colResultTime)))));
 			log.append(", resultTime: ").append(obs.getResultTime());
 		}
 		if (!colValidTime.isEmpty()) {
-			obs.setValidTime(listToTimeObject(colValidTime, record).getAsInterval());
+			obs.setValidTime(record.get(validTimeKey, () -> memos.validTime.get(timeKey(colValidTime, record), () -> listToTimeObject(colValidTime, record, validTimeParser).getAsInterval())));
 			log.append(", validTime: ").append(obs.getValidTime());
 		}
-		if (!Utils.isNullOrEmpty(parametersTemplate)) {
-			String filledTemplate = Translator.fillTemplate(parametersTemplate, record, false, true, false);
+		if (compiledParameters != null) {
+			String filledTemplate = record.get(parametersKey, () -> compiledParameters.fill(record));
 			obs.setParameters(JsonUtils.jsonToMap(filledTemplate));
 		}
 		if (verbose) {
 			LOGGER.debug(log.toString());
 		}
 		LOGGER.trace("Record: {}", record);
-		return Arrays.asList(obs);
+		return obs;
 	}
 
 	private Object convertResult(String unitFrom, String unitTo, Object result) {
@@ -187,82 +251,42 @@ public class RecordConverterNames implements RecordConverter, AnnotatedConfigura
 		return null;
 	}
 
-	private TimeObject listToTimeObject(List<String> colList, CSVRecord record) throws ImportException {
+	private TimeObject listToTimeObject(List<String> colList, CsvRow record, AutoTimeParser parser) throws ImportException {
 		if (colList.size() == 2) {
 			String start = record.get(colList.get(0));
 			String end = record.get(colList.get(1));
-			ZonedDateTime startTime = parseTime(start).withZoneSameInstant(ZONE_Z);
-			ZonedDateTime endTime = parseTime(end).withZoneSameInstant(ZONE_Z);
+			ZonedDateTime startTime = parseTime(parser, start).withZoneSameInstant(ZONE_Z);
+			ZonedDateTime endTime = parseTime(parser, end).withZoneSameInstant(ZONE_Z);
 			Interval interval = Interval.of(startTime.toInstant(), endTime.toInstant());
 			return new TimeObject(interval);
 		} else {
-			return new TimeObject(parseTime(record.get(colList.get(0))).withZoneSameInstant(ZONE_Z));
+			return new TimeObject(parseTime(parser, record.get(colList.get(0))).withZoneSameInstant(ZONE_Z));
 		}
 	}
 
-	private ZonedDateTime parseTime(String value) throws ImportException {
-		try {
-			if (timeParser != null) {
-				ZonedDateTime zdt = timeParser.parse(value);
-				return zdt;
-			}
-		} catch (Exception e) {
-			LOGGER.debug("Failed to parse time using configured timeParser.", e);
-			// Not a ZonedDateTime
-		}
-		try {
-			return ZonedDateTime.parse(value);
-		} catch (Exception e) {
-			// Not a timeObject
-		}
-		try {
-			return parseTimestamp(value);
-		} catch (ImportException e) {
-			// Not anything we know!
-			LOGGER.debug("Failed to parse {} to a time: {}", value, e.getMessage());
-			throw new ImportException("Time value " + value + " could not be parsed as a time.");
-		}
-	}
-
-	private ZonedDateTime parseZonedDateTime(String value) throws ImportException {
-		try {
-			return ZonedDateTime.parse(value);
-		} catch (Exception e) {
-			// Not a ZonedDateTime
+	private static String timeKey(List<String> colList, CsvRow record) {
+		if (colList.size() == 2) {
+			return record.get(colList.get(0)) + '/' + record.get(colList.get(1));
 		}
-		return parseTimestamp(value);
+		return record.get(colList.get(0));
 	}
 
-	private ZonedDateTime parseTimestamp(String value) throws ImportException {
-		try {
-			long longValue = Long.parseLong(value);
-			Calendar cal = Calendar.getInstance();
-			cal.setTimeInMillis(1000 * longValue);
-			return ZonedDateTime.ofInstant(cal.toInstant(), ZoneId.systemDefault());
-		} catch (NumberFormatException e) {
-			LOGGER.debug("Failed to parse {} to a time: {}", value, e.getMessage());
-			throw new ImportException("Could not parse time value " + value);
+	private static ZonedDateTime parseTime(AutoTimeParser parser, String value) throws ImportException {
+		ZonedDateTime time = parser.parse(value);
+		if (time == null) {
+			LOGGER.debug("Failed to parse {} to a time.", value);
+			throw new ImportException("Time value " + value + " could not be parsed as a time.");
 		}
+		return time;
 	}
 
 	private Object parseResult(String resultString) {
 		if (resultParser != null) {
 			return resultParser.parse(resultString);
 		}
-		try {
-			return Integer.parseInt(resultString);
-		} catch (NumberFormatException e) {
-			LOGGER.trace("Not an Integer.");
-		}
-		try {
-			return Long.parseLong(resultString);
-		} catch (NumberFormatException e) {
-			LOGGER.trace("Not a long.");
-		}
-		try {
-			return new BigDecimal(resultString);
-		} catch (NumberFormatException e) {
-			LOGGER.trace("Not a BigDecimal.");
+		Object number = numberClassifier.parse(resultString);
+		if (number != null) {
+			return number;
 		}
 		if (resultString.isEmpty()) {
 			return null;
@@ -280,4 +304,14 @@ public class RecordConverterNames implements RecordConverter, AnnotatedConfigura
 		return resultString;
 	}
 
+	/**
+	 * The times parsed in the current block.
+	 */
+	private static class BlockMemos {
+
+		private final RepeatMemo<TimeObject> phenTime = new RepeatMemo<>();
+		private final RepeatMemo<ZonedDateTime> resultTime = new RepeatMemo<>();
+		private final RepeatMemo<Interval> validTime = new RepeatMemo<>();
+	}
+
 }
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import de.fraunhofer.iosb.ilt.configurable.AnnotatedConfigurable;
+import de.fraunhofer.iosb.ilt.configurable.Utils;
+import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorClass;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorInt;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorList;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorSubclass;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.JsonUtils;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.AutoTimeParser;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.NumberClassifier;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.Parser;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.ParserTime;
+import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
+import de.fraunhofer.iosb.ilt.sta.model.Datastream;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import de.fraunhofer.iosb.ilt.sta.model.TimeObject;
+import de.fraunhofer.iosb.ilt.sta.model.ext.EntityList;
+import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.extra.Interval;
+
+/**
+ * Converts rows of "wide" files, with one or two time columns and a value
+ * column for each Datastream, into one Observation per value column. The
+ * Datastreams are resolved once per header, either from an explicit mapping
+ * or from a filter template with a {column} placeholder.
+ *
+ * @author hylke
+ */
+public class RecordConverterWide implements RecordConverter, AnnotatedConfigurable<SensorThingsService, Object> {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(RecordConverterWide.class);
+	private static final String PLACEHOLDER_COLUMN = "{column}";
+
+	@ConfigurableField(editor = EditorList.class,
+			label = "PhenomenonTime Col", description = "The column names (or numbers, if the file has no header) that hold the phenomenonTime.")
+	@EditorList.EdOptsList(editor = EditorString.class, minCount = 1, maxCount = 2)
+	@EditorString.EdOptsString()
+	private List<String> colPhenTime;
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "ResultTime Column", description = "The column name (or number) that holds the resultTime.")
+	@EditorString.EdOptsString()
+	private String colResultTime;
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "Column Mapping", description = "A JSON object that maps column names (or numbers) to Datastream ids, or to Datastream filters.")
+	@EditorString.EdOptsString(lines = 6, dflt = "{}")
+	private String columnMapping;
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "Filter Template", description = "Filter to find the Datastream for a header column not in the mapping. Use {column} for the column name.")
+	@EditorString.EdOptsString(lines = 2, dflt = "properties/column eq '{column}'")
+	private String filterTemplate;
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "Column Regex", description = "Only header columns that match this regular expression are used with the Filter Template.")
+	@EditorString.EdOptsString(dflt = ".*")
+	private String columnRegex;
+
+	@ConfigurableField(editor = EditorClass.class, optional = true,
+			label = "Time Parser", description = "The parser to use for parsing times.")
+	@EditorClass.EdOptsClass(clazz = ParserTime.class)
+	private ParserTime timeParser;
+
+	@ConfigurableField(editor = EditorSubclass.class, optional = true,
+			label = "Result Parser", description = "The parser to use for parsing results.")
+	@EditorSubclass.EdOptsSubclass(iface = Parser.class)
+	private Parser resultParser;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Type Learn Rows", description = "If this many results in a row are integers, a faster integer-only parser is used (0=off).")
+	@EditorInt.EdOptsInt(dflt = 100, max = Integer.MAX_VALUE, min = 0, step = 1)
+	private Integer typeLearnRows;
+
+	private SensorThingsService service;
+	private boolean verbose;
+	private NumberClassifier numberClassifier = new NumberClassifier();
+	private AutoTimeParser phenTimeParser;
+	private AutoTimeParser resultTimeParser;
+	private Map<String, Object> mapping;
+	private Pattern columnPattern;
+	private ColumnPlan plan;
+
+	@Override
+	public void init(SensorThingsService service) throws ImportException {
+		this.service = service;
+		phenTimeParser = new AutoTimeParser(timeParser);
+		resultTimeParser = new AutoTimeParser(null);
+		numberClassifier = new NumberClassifier(typeLearnRows == null ? 0 : typeLearnRows);
+		mapping = Utils.isNullOrEmpty(columnMapping) ? Collections.emptyMap() : JsonUtils.jsonToMap(columnMapping);
+		columnPattern = Pattern.compile(Utils.isNullOrEmpty(columnRegex) ? ".*" : columnRegex);
+		plan = null;
+	}
+
+	@Override
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	@Override
+	public boolean isThreadSafe() {
+		return true;
+	}
+
+	@Override
+	public List<Observation> convert(CsvRow record) throws ImportException {
+		final ColumnPlan currentPlan = getPlan(record);
+		final List<Observation> result = new ArrayList<>(currentPlan.valueIndexes.length);
+		convertRow(record, currentPlan, new RepeatMemo<>(), result::add);
+		return result;
+	}
+
+	@Override
+	public void convert(List<? extends CsvRow> records, ObservationSink sink) {
+		final RepeatMemo<TimeObject> phenTimes = new RepeatMemo<>();
+		for (CsvRow record : records) {
+			try {
+				convertRow(record, getPlan(record), phenTimes, sink::accept);
+			} catch (ImportException ex) {
+				sink.failed(record, ex);
+			}
+		}
+	}
+
+	private void convertRow(CsvRow record, ColumnPlan currentPlan, RepeatMemo<TimeObject> phenTimes, Consumer<Observation> target) throws ImportException {
+		final int[] timeIndexes = currentPlan.phenTimeIndexes;
+		final String timeKey = timeIndexes.length == 2
+				? record.get(timeIndexes[0]) + '/' + record.get(timeIndexes[1])
+				: record.get(timeIndexes[0]);
+		final TimeObject phenTime = phenTimes.get(timeKey, () -> parseTimeObject(currentPlan, record));
+		ZonedDateTime resultTime = null;
+		if (currentPlan.resultTimeIndex >= 0) {
+			resultTime = parseTime(resultTimeParser, record.get(currentPlan.resultTimeIndex));
+		}
+		final int count = currentPlan.valueIndexes.length;
+		final int size = record.size();
+		int added = 0;
+		for (int i = 0; i < count; i++) {
+			final int index = currentPlan.valueIndexes[i];
+			if (index >= size) {
+				continue;
+			}
+			String value = record.get(index);
+			if (value.isEmpty()) {
+				continue;
+			}
+			Object parsed = parseResult(value);
+			if (parsed == null) {
+				continue;
+			}
+			Observation obs = new Observation(parsed, currentPlan.datastreams[i]);
+			obs.setPhenomenonTime(phenTime);
+			if (resultTime != null) {
+				obs.setResultTime(resultTime);
+			}
+			target.accept(obs);
+			added++;
+		}
+		if (verbose) {
+			LOGGER.debug("Row {}: {} observations, phenomenonTime {}", record.getRecordNumber(), added, phenTime);
+		}
+	}
+
+	private Object parseResult(String value) {
+		if (resultParser != null) {
+			return resultParser.parse(value);
+		}
+		Object number = numberClassifier.parse(value);
+		if (number != null) {
+			return number;
+		}
+		if ("null".equalsIgnoreCase(value)) {
+			return null;
+		}
+		return value;
+	}
+
+	private TimeObject parseTimeObject(ColumnPlan currentPlan, CsvRow record) throws ImportException {
+		final int[] indexes = currentPlan.phenTimeIndexes;
+		ZonedDateTime start = parseTime(phenTimeParser, record.get(indexes[0]));
+		if (indexes.length == 2) {
+			ZonedDateTime end = parseTime(phenTimeParser, record.get(indexes[1]));
+			return new TimeObject(Interval.of(start.toInstant(), end.toInstant()));
+		}
+		return new TimeObject(start);
+	}
+
+	private static ZonedDateTime parseTime(AutoTimeParser parser, String value) throws ImportException {
+		ZonedDateTime time = parser.parse(value);
+		if (time == null) {
+			throw new ImportException("Time value " + value + " could not be parsed as a time.");
+		}
+		return time;
+	}
+
+	private ColumnPlan getPlan(CsvRow record) throws ImportException {
+		final List<String> header = record.getHeaderNames();
+		ColumnPlan current = plan;
+		if (current != null && (current.header == header || current.header != null && current.header.equals(header))) {
+			return current;
+		}
+		synchronized (this) {
+			current = plan;
+			if (current == null || !(current.header == header || current.header != null && current.header.equals(header))) {
+				current = createPlan(header, record.size());
+				plan = current;
+			}
+		}
+		return current;
+	}
+
+	private ColumnPlan createPlan(List<String> header, int rowSize) throws ImportException {
+		Map<String, Integer> indexes = new HashMap<>();
+		if (header != null) {
+			for (int i = header.size() - 1; i >= 0; i--) {
+				indexes.put(header.get(i), i);
+			}
+		}
+		int[] phenTimeIndexes = new int[colPhenTime.size()];
+		for (int i = 0; i < phenTimeIndexes.length; i++) {
+			phenTimeIndexes[i] = findColumn(indexes, colPhenTime.get(i));
+		}
+		int resultTimeIndex = Utils.isNullOrEmpty(colResultTime) ? -1 : findColumn(indexes, colResultTime);
+
+		List<Integer> valueIndexes = new ArrayList<>();
+		List<Datastream> datastreams = new ArrayList<>();
+		try {
+			for (Map.Entry<String, Object> entry : mapping.entrySet()) {
+				Datastream ds = findDatastream(entry.getValue());
+				if (ds == null) {
+					LOGGER.warn("No Datastream found for column {}: {}", entry.getKey(), entry.getValue());
+					continue;
+				}
+				valueIndexes.add(findColumn(indexes, entry.getKey()));
+				datastreams.add(ds);
+			}
+			if (header != null && !Utils.isNullOrEmpty(filterTemplate)) {
+				for (int i = 0; i < header.size(); i++) {
+					String column = header.get(i);
+					if (mapping.containsKey(column) || contains(phenTimeIndexes, i) || i == resultTimeIndex
+							|| !columnPattern.matcher(column).matches()) {
+						continue;
+					}
+					String filter = filterTemplate.replace(PLACEHOLDER_COLUMN, de.fraunhofer.iosb.ilt.sta.Utils.escapeForStringConstant(column));
+					Datastream ds = findDatastream(filter);
+					if (ds == null) {
+						LOGGER.debug("No Datastream found for column {}", column);
+						continue;
+					}
+					valueIndexes.add(i);
+					datastreams.add(ds);
+				}
+			}
+		} catch (ServiceFailureException ex) {
+			throw new ImportException("Failed to find Datastreams for columns.", ex);
+		}
+		LOGGER.info("Mapped {} of {} columns to Datastreams.", datastreams.size(), header == null ? rowSize : header.size());
+		int[] valueIndexArray = new int[valueIndexes.size()];
+		for (int i = 0; i < valueIndexArray.length; i++) {
+			valueIndexArray[i] = valueIndexes.get(i);
+		}
+		return new ColumnPlan(header, phenTimeIndexes, resultTimeIndex, valueIndexArray, datastreams.toArray(new Datastream[datastreams.size()]));
+	}
+
+	private static boolean contains(int[] array, int value) {
+		for (int item : array) {
+			if (item == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int findColumn(Map<String, Integer> indexes, String column) throws ImportException {
+		Integer index = indexes.get(column);
+		if (index != null) {
+			return index;
+		}
+		try {
+			return Integer.parseInt(column.trim());
+		} catch (NumberFormatException ex) {
+			throw new ImportException("Column " + column + " not found in header.");
+		}
+	}
+
+	private Datastream findDatastream(Object idOrFilter) throws ServiceFailureException {
+		if (idOrFilter instanceof Number) {
+			return service.datastreams().find(((Number) idOrFilter).longValue());
+		}
+		EntityList<Datastream> list = service.datastreams().query().filter(idOrFilter.toString()).top(2).list();
+		if (list.size() > 1) {
+			LOGGER.warn("Found more than one Datastream for filter {}, using the first.", idOrFilter);
+		}
+		if (list.isEmpty()) {
+			return null;
+		}
+		return list.iterator().next();
+	}
+
+	/**
+	 * The column indexes and Datastreams for one header.
+	 */
+	private static class ColumnPlan {
+
+		private final List<String> header;
+		private final int[] phenTimeIndexes;
+		private final int resultTimeIndex;
+		private final int[] valueIndexes;
+		private final Datastream[] datastreams;
+
+		public ColumnPlan(List<String> header, int[] phenTimeIndexes, int resultTimeIndex, int[] valueIndexes, Datastream[] datastreams) {
+			this.header = header;
+			this.phenTimeIndexes = phenTimeIndexes;
+			this.resultTimeIndex = resultTimeIndex;
+			this.valueIndexes = valueIndexes;
+			this.datastreams = datastreams;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import java.util.Objects;
+
+/**
+ * Remembers the value calculated for the last key. Consecutive rows in a
+ * block often have the same time or template value, so they only have to be
+ * parsed once per run. Not thread-safe, use one instance per block.
+ *
+ * @author hylke
+ * @param <T> The type of the value.
+ */
+public class RepeatMemo<T> {
+
+	private boolean filled;
+	private String lastKey;
+	private T lastValue;
+
+	/**
+	 * Get the value for the given key, calculating it if the key differs from
+	 * the last key. Failed calculations are not remembered.
+	 *
+	 * @param key The key of the value, usually the raw column value(s).
+	 * @param computation The calculation of the value.
+	 * @return The value.
+	 * @throws ImportException if the calculation fails.
+	 */
+	public T get(String key, RecordContext.Computation<T> computation) throws ImportException {
+		if (filled && Objects.equals(lastKey, key)) {
+			return lastValue;
+		}
+		T value = computation.compute();
+		lastKey = key;
+		lastValue = value;
+		filled = true;
+		return value;
+	}
+
+}
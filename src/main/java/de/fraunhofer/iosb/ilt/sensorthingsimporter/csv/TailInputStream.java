@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.UrlUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the complete lines that were appended to an input since the last
+ * position. Bytes after the last newline are held back, they are read in the
+ * next run, once the line is complete. The charset of the input must be
+ * compatible with ASCII, since lines are split on the newline byte.
+ *
+ * @author hylke
+ */
+public class TailInputStream extends InputStream {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(TailInputStream.class);
+
+	/**
+	 * The number of bytes before the offset that are compared to detect that
+	 * an input was replaced.
+	 */
+	private static final int TAIL_SIZE = 256;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final InputStream input;
+	private final long start;
+	private final byte[] prefix;
+	private int prefixPos;
+	private final boolean captureHeader;
+	private ByteArrayOutputStream headerBuffer;
+	private byte[] header;
+
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	/**
+	 * The next byte to return.
+	 */
+	private int pos;
+	/**
+	 * The end of the complete lines in the buffer.
+	 */
+	private int limit;
+	/**
+	 * The end of the data in the buffer.
+	 */
+	private int end;
+	private boolean eof;
+	private long released;
+	private final byte[] tail = new byte[TAIL_SIZE];
+	private int tailLength;
+
+	private TailInputStream(InputStream input, long start, byte[] tail, byte[] header, boolean captureHeader) {
+		this.input = input;
+		this.start = start;
+		this.captureHeader = captureHeader;
+		this.header = header;
+		this.prefix = captureHeader || header == null ? new byte[0] : header;
+		if (captureHeader) {
+			headerBuffer = new ByteArrayOutputStream();
+		}
+		if (tail != null) {
+			addTail(tail, 0, tail.length);
+		}
+	}
+
+	/**
+	 * Open the given url, after the given position. If the input is shorter
+	 * than the position, or the bytes before the position are not the same
+	 * as last time, the input was truncated or replaced, and is read from the
+	 * start.
+	 *
+	 * @param url The url to open.
+	 * @param last The position after the previous run, or null.
+	 * @param hasHeader Whether the input starts with a header line. If so, the
+	 * header is remembered, and repeated in front of the appended lines.
+	 * @return A stream with the complete lines after the position.
+	 * @throws IOException If the url can not be read.
+	 */
+	public static TailInputStream open(URL url, TailOffsets.Position last, boolean hasHeader) throws IOException {
+		if (last == null || last.getOffset() <= 0) {
+			return new TailInputStream(UrlUtils.openStream(url), 0, null, null, hasHeader);
+		}
+		final long offset = last.getOffset();
+		final byte[] expected = last.getTail() == null ? new byte[0] : last.getTail();
+		InputStream input = UrlUtils.openStream(url, offset - expected.length);
+		if (input == null) {
+			LOGGER.info("Input {} was truncated, reading from the start.", url);
+			return open(url, null, hasHeader);
+		}
+		byte[] found = new byte[expected.length];
+		int read = IOUtils.read(input, found);
+		if (read != expected.length || !Arrays.equals(expected, found)) {
+			LOGGER.info("Input {} was replaced, reading from the start.", url);
+			input.close();
+			return open(url, null, hasHeader);
+		}
+		byte[] header = hasHeader ? last.getHeader() : null;
+		if (hasHeader && header == null) {
+			LOGGER.warn("No header known for {}, reading from the start.", url);
+			input.close();
+			return open(url, null, hasHeader);
+		}
+		return new TailInputStream(input, offset, expected, header, false);
+	}
+
+	/**
+	 * The position after the lines read so far. Only valid after the stream
+	 * is read to the end.
+	 *
+	 * @return The position to continue from in the next run.
+	 */
+	public TailOffsets.Position getPosition() {
+		byte[] header = this.header;
+		if (captureHeader && header == null) {
+			header = headerBuffer.toByteArray();
+		}
+		return new TailOffsets.Position(start + released, Arrays.copyOf(tail, tailLength), header);
+	}
+
+	/**
+	 * @return The offset in the input the stream started at. 0 if the input
+	 * is read from the start.
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * @return The number of bytes after the start position that were read.
+	 */
+	public long getReleased() {
+		return released;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] one = new byte[1];
+		int count = read(one, 0, 1);
+		return count < 0 ? -1 : one[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] target, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (prefixPos < prefix.length) {
+			int count = Math.min(len, prefix.length - prefixPos);
+			System.arraycopy(prefix, prefixPos, target, off, count);
+			prefixPos += count;
+			return count;
+		}
+		if (pos == limit && !fill()) {
+			return -1;
+		}
+		int count = Math.min(len, limit - pos);
+		System.arraycopy(buffer, pos, target, off, count);
+		release(pos, count);
+		pos += count;
+		return count;
+	}
+
+	/**
+	 * Read from the input until the buffer holds at least one complete line.
+	 *
+	 * @return false if there are no more complete lines.
+	 */
+	private boolean fill() throws IOException {
+		int remaining = end - limit;
+		System.arraycopy(buffer, limit, buffer, 0, remaining);
+		pos = 0;
+		limit = 0;
+		end = remaining;
+		while (limit == 0 && !eof) {
+			if (end == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			int count = input.read(buffer, end, buffer.length - end);
+			if (count < 0) {
+				eof = true;
+				break;
+			}
+			for (int i = end + count - 1; i >= end; i--) {
+				if (buffer[i] == '\n') {
+					limit = i + 1;
+					break;
+				}
+			}
+			end += count;
+		}
+		return limit > 0;
+	}
+
+	private void release(int from, int count) {
+		if (captureHeader && header == null) {
+			for (int i = from; i < from + count; i++) {
+				headerBuffer.write(buffer[i]);
+				if (buffer[i] == '\n') {
+					header = headerBuffer.toByteArray();
+					headerBuffer = null;
+					break;
+				}
+			}
+		}
+		addTail(buffer, from, count);
+		released += count;
+	}
+
+	private void addTail(byte[] data, int from, int count) {
+		if (count >= TAIL_SIZE) {
+			System.arraycopy(data, from + count - TAIL_SIZE, tail, 0, TAIL_SIZE);
+			tailLength = TAIL_SIZE;
+			return;
+		}
+		int keep = Math.min(tailLength, TAIL_SIZE - count);
+		System.arraycopy(tail, tailLength - keep, tail, 0, keep);
+		System.arraycopy(data, from, tail, keep, count);
+		tailLength = keep + count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.JsonFileStore;
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Remembers how far each tailed input has been read. For each input url the
+ * byte offset after the last complete line is stored, together with the last
+ * bytes before that offset, to detect that the input was replaced, and the
+ * header line of the input.
+ *
+ * @author hylke
+ */
+public class TailOffsets {
+
+	private static final TypeReference<Map<String, Position>> TYPE_MAP_STRING_POSITION = new TypeReference<Map<String, Position>>() {
+		// Empty on purpose.
+	};
+
+	/**
+	 * The read position in one input.
+	 */
+	public static class Position {
+
+		private long offset;
+		private byte[] tail;
+		private byte[] header;
+
+		public Position() {
+		}
+
+		public Position(long offset, byte[] tail, byte[] header) {
+			this.offset = offset;
+			this.tail = tail;
+			this.header = header;
+		}
+
+		/**
+		 * @return The offset after the last complete line that was read.
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		public void setOffset(long offset) {
+			this.offset = offset;
+		}
+
+		/**
+		 * @return The last bytes before the offset.
+		 */
+		public byte[] getTail() {
+			return tail;
+		}
+
+		public void setTail(byte[] tail) {
+			this.tail = tail;
+		}
+
+		/**
+		 * @return The header line of the input, or null.
+		 */
+		public byte[] getHeader() {
+			return header;
+		}
+
+		public void setHeader(byte[] header) {
+			this.header = header;
+		}
+
+	}
+
+	private final JsonFileStore<Position> positions;
+
+	/**
+	 * Create offsets stored in the given file.
+	 *
+	 * @param file The file to store the offsets in.
+	 */
+	public TailOffsets(File file) {
+		positions = new JsonFileStore<>(file, "tail offsets", TYPE_MAP_STRING_POSITION);
+	}
+
+	public Position get(String key) {
+		return positions.get(key);
+	}
+
+	/**
+	 * Store the position for the given input, and save the offsets.
+	 *
+	 * @param key The key of the input.
+	 * @param position The new position.
+	 */
+	public void put(String key, Position position) {
+		positions.put(key, position);
+	}
+
+}
@@ -24,4 +24,26 @@ import java.net.URL;
  */
 public interface UrlGenerator extends Iterable<URL> {
 
+	/**
+	 * Called once the data of the given url, returned by an iterator of this
+	 * generator, has been imported and sent to the server. Generators that
+	 * remember which urls they have handed out should record them here, not
+	 * when the next url is requested.
+	 *
+	 * @param url The url that has been imported.
+	 */
+	public default void done(URL url) {
+	}
+
+	/**
+	 * Iterators of continuous generators can block for a long time, waiting
+	 * for the next url. The importer should send the data of each url before
+	 * asking for the next one.
+	 *
+	 * @return true if the iterators of this generator may block.
+	 */
+	public default boolean isContinuous() {
+		return false;
+	}
+
 }
@@ -22,12 +22,16 @@ import de.fraunhofer.iosb.ilt.configurable.editor.EditorBoolean;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorSubclass;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.UrlUtils;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +61,11 @@ public class UrlGeneratorBouncer implements UrlGenerator, AnnotatedConfigurable<
 		return new proxyIterator(inputUrl.iterator());
 	}
 
+	@Override
+	public boolean isContinuous() {
+		return inputUrl.isContinuous();
+	}
+
 	private class proxyIterator implements Iterator<URL> {
 
 		private final Iterator<URL> parentIterator;
@@ -98,7 +107,13 @@ public class UrlGeneratorBouncer implements UrlGenerator, AnnotatedConfigurable<
 		private void nextParent() throws ImportException {
 			if (parentIterator.hasNext()) {
 				URL nextParentUrl = parentIterator.next();
-				String fetchFromUrl = UrlUtils.fetchFromUrl(nextParentUrl.toString().trim());
+				String fetchFromUrl;
+				try (InputStream input = UrlUtils.openStream(nextParentUrl)) {
+					fetchFromUrl = IOUtils.toString(input, StandardCharsets.UTF_8);
+				} catch (IOException ex) {
+					LOGGER.error("Failed to fetch url {}: {}", nextParentUrl, ex.getMessage());
+					throw new ImportException("Failed to fetch url " + nextParentUrl, ex);
+				}
 				String[] split = StringUtils.split(fetchFromUrl, "\n\r ");
 				List<String> asList;
 				if (fetchFromUrl.isEmpty() || split.length == 0) {
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import de.fraunhofer.iosb.ilt.configurable.AnnotatedConfigurable;
+import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorInt;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
+import de.fraunhofer.iosb.ilt.sta.Utils;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches a directory for new files, and returns the urls of these files as
+ * they arrive. A file is returned once it is complete: when its size and
+ * modification time have not changed for the quiet period. Files that are
+ * written under a temporary name and renamed when complete can be handled by
+ * a file pattern that does not match the temporary name, and a quiet period
+ * of 0.
+ *
+ * Files that have been imported, and for which the importer reported that
+ * their Observations have been sent, are recorded in the manifest file, with
+ * their size and modification time. These files are not returned again after a
+ * restart, unless they change.
+ *
+ * @author hylke
+ */
+public class UrlGeneratorDirectoryWatch implements UrlGenerator, AnnotatedConfigurable<Object, Object> {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(UrlGeneratorDirectoryWatch.class);
+
+	private static final long MAX_POLL_MS = 1000;
+
+	@ConfigurableField(editor = EditorString.class,
+			label = "Directory", description = "The directory to watch.")
+	@EditorString.EdOptsString()
+	private String directory;
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "File Pattern", description = "Regular expression the file names must match. Use this to skip files that are still being written under a temporary name.")
+	@EditorString.EdOptsString(dflt = ".*")
+	private String filePattern;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Quiet Period", description = "The number of seconds the size and modification time of a file must be unchanged before it is considered complete.")
+	@EditorInt.EdOptsInt(dflt = 5, max = 86400, min = 0, step = 1)
+	private Integer quietPeriod;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Max Idle", description = "Stop after this many seconds without new files (0 = watch forever).")
+	@EditorInt.EdOptsInt(dflt = 0, max = Integer.MAX_VALUE, min = 0, step = 1)
+	private Integer maxIdle;
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "Manifest File", description = "File to record the processed files in, so they are not processed again after a restart. Leave empty to disable.")
+	@EditorString.EdOptsString(dflt = "")
+	private String manifestFile;
+
+	private WatchIterator watching;
+
+	@Override
+	public Iterator<URL> iterator() {
+		try {
+			watching = new WatchIterator();
+			return watching;
+		} catch (IOException ex) {
+			throw new IllegalStateException("Failed to watch directory " + directory, ex);
+		}
+	}
+
+	@Override
+	public void done(URL url) {
+		if (watching != null) {
+			watching.markDone(url);
+		}
+	}
+
+	@Override
+	public boolean isContinuous() {
+		return true;
+	}
+
+	private static String markerFor(BasicFileAttributes attributes) {
+		return attributes.size() + "/" + attributes.lastModifiedTime().toMillis();
+	}
+
+	/**
+	 * A file that has been seen, but is not known to be complete yet.
+	 */
+	private static class Candidate {
+
+		private String marker;
+		private long stableSince;
+
+		public Candidate(String marker, long now) {
+			this.marker = marker;
+			this.stableSince = now;
+		}
+	}
+
+	private class WatchIterator implements Iterator<URL>, Closeable {
+
+		private final Path dir;
+		private final Pattern pattern;
+		private final long quietMs;
+		private final long maxIdleMs;
+		private final EntryCheckpoints manifest;
+		private final WatchService watcher;
+		private final Map<Path, Candidate> candidates = new TreeMap<>();
+		private final Deque<Path> ready = new ArrayDeque<>();
+		/**
+		 * The files returned in this run, with their markers. Once a file is
+		 * stored in the manifest, the manifest takes over and the file is
+		 * removed from here.
+		 */
+		private final Map<Path, String> returned = new HashMap<>();
+		private long lastActivity;
+		private boolean closed;
+
+		public WatchIterator() throws IOException {
+			dir = new File(directory).toPath().toAbsolutePath();
+			pattern = Pattern.compile(Utils.isNullOrEmpty(filePattern) ? ".*" : filePattern);
+			quietMs = TimeUnit.SECONDS.toMillis(quietPeriod == null ? 5 : quietPeriod);
+			maxIdleMs = TimeUnit.SECONDS.toMillis(maxIdle == null ? 0 : maxIdle);
+			manifest = new EntryCheckpoints(Utils.isNullOrEmpty(manifestFile) ? null : new File(manifestFile));
+			watcher = FileSystems.getDefault().newWatchService();
+			dir.register(watcher,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY,
+					StandardWatchEventKinds.ENTRY_DELETE);
+			lastActivity = System.currentTimeMillis();
+			scanAll();
+		}
+
+		/**
+		 * Scan the whole directory. Done at the start, to pick up files that
+		 * arrived while not running, and when the watcher lost events.
+		 */
+		private void scanAll() throws IOException {
+			LOGGER.debug("Scanning {}", dir);
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+				for (Path path : stream) {
+					seen(path);
+				}
+			}
+		}
+
+		private void seen(Path path) {
+			if (!pattern.matcher(path.getFileName().toString()).matches()) {
+				return;
+			}
+			String marker = currentMarker(path);
+			if (marker == null || marker.equals(returned.get(path)) || manifest.isDone(path.toString(), marker)) {
+				return;
+			}
+			if (!candidates.containsKey(path) && !ready.contains(path)) {
+				candidates.put(path, new Candidate(marker, System.currentTimeMillis()));
+			}
+		}
+
+		private String currentMarker(Path path) {
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				if (!attributes.isRegularFile()) {
+					return null;
+				}
+				return markerFor(attributes);
+			} catch (IOException ex) {
+				// Deleted or renamed in the mean time.
+				return null;
+			}
+		}
+
+		private void checkCandidates() {
+			long now = System.currentTimeMillis();
+			List<Path> done = new ArrayList<>();
+			for (Map.Entry<Path, Candidate> entry : candidates.entrySet()) {
+				Path path = entry.getKey();
+				Candidate candidate = entry.getValue();
+				String marker = currentMarker(path);
+				if (marker == null) {
+					done.add(path);
+				} else if (!marker.equals(candidate.marker)) {
+					candidate.marker = marker;
+					candidate.stableSince = now;
+				} else if (now - candidate.stableSince >= quietMs) {
+					done.add(path);
+					ready.add(path);
+				}
+			}
+			for (Path path : done) {
+				candidates.remove(path);
+			}
+		}
+
+		private void pollEvents(long timeoutMs) throws InterruptedException, IOException {
+			WatchKey key = watcher.poll(timeoutMs, TimeUnit.MILLISECONDS);
+			if (key == null) {
+				return;
+			}
+			lastActivity = System.currentTimeMillis();
+			boolean overflow = false;
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					overflow = true;
+				} else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+					Path path = dir.resolve((Path) event.context());
+					candidates.remove(path);
+					returned.remove(path);
+				} else {
+					seen(dir.resolve((Path) event.context()));
+				}
+			}
+			if (!key.reset()) {
+				LOGGER.error("Directory {} is no longer accessible.", dir);
+				close();
+				return;
+			}
+			if (overflow) {
+				scanAll();
+			}
+		}
+
+		private void markDone(URL url) {
+			try {
+				Path path = Paths.get(url.toURI());
+				String marker = returned.get(path);
+				if (marker != null && manifest.isEnabled()) {
+					manifest.markDone(path.toString(), marker);
+					returned.remove(path);
+				}
+			} catch (URISyntaxException | IllegalArgumentException ex) {
+				LOGGER.debug("Not a file url: {}", url);
+			}
+		}
+
+		/**
+		 * Stop watching, and release the watch service.
+		 */
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				IOUtils.closeQuietly(watcher);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			try {
+				while (ready.isEmpty() && !closed) {
+					checkCandidates();
+					if (!ready.isEmpty()) {
+						break;
+					}
+					long now = System.currentTimeMillis();
+					if (candidates.isEmpty() && maxIdleMs > 0 && now - lastActivity >= maxIdleMs) {
+						LOGGER.info("No new files in {} for {}s, stopping.", dir, maxIdleMs / 1000);
+						close();
+						break;
+					}
+					long timeout = candidates.isEmpty() ? MAX_POLL_MS : Math.min(MAX_POLL_MS, Math.max(1, quietMs));
+					pollEvents(timeout);
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				LOGGER.warn("Interrupted while watching {}.", dir);
+				close();
+			} catch (IOException ex) {
+				LOGGER.error("Failed to scan directory {}: {}", dir, ex.getMessage());
+				close();
+			}
+			return !ready.isEmpty();
+		}
+
+		@Override
+		public URL next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Path path = ready.poll();
+			String marker = currentMarker(path);
+			if (marker == null) {
+				// Gone since it was found complete, try the next one.
+				return next();
+			}
+			returned.put(path, marker);
+			lastActivity = System.currentTimeMillis();
+			try {
+				LOGGER.info("New file: {}", path);
+				return path.toUri().toURL();
+			} catch (MalformedURLException ex) {
+				throw new IllegalStateException("Failed to create url for " + path, ex);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import de.fraunhofer.iosb.ilt.configurable.AnnotatedConfigurable;
+import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorInt;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorSubclass;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.UrlUtils;
+import de.fraunhofer.iosb.ilt.sta.Utils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads the urls of another UrlGenerator ahead of the consumer. Up to
+ * "Prefetch Count" sources are downloaded concurrently, with at most "Max Per
+ * Host" downloads from the same host. The sources are handed over in the order
+ * of the input generator, as "prefetch:" urls that read the downloaded data.
+ * Sources larger than the memory limit are buffered in a temporary file. The
+ * buffer of a source is released when the consumer requests the next url, or
+ * finds there are no more urls. Consumers that stop before the end should
+ * close the iterator, so the sources that were downloaded ahead are released.
+ *
+ * @author hylke
+ */
+public class UrlGeneratorPrefetch implements UrlGenerator, AnnotatedConfigurable<Object, Object> {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(UrlGeneratorPrefetch.class);
+
+	public static final String PROTOCOL = "prefetch";
+
+	@ConfigurableField(editor = EditorSubclass.class,
+			label = "Input Url", description = "The input url(s) to prefetch.")
+	@EditorSubclass.EdOptsSubclass(iface = UrlGenerator.class)
+	private UrlGenerator inputUrl;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Prefetch Count", description = "The number of sources to download ahead of the consumer.")
+	@EditorInt.EdOptsInt(dflt = 4, max = 256, min = 1, step = 1)
+	private Integer prefetchCount;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Max Per Host", description = "The maximum number of concurrent downloads from the same host.")
+	@EditorInt.EdOptsInt(dflt = 2, max = 256, min = 1, step = 1)
+	private Integer maxPerHost;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Memory Limit", description = "The maximum size in kB of a source that is kept in memory. Larger sources are buffered in a temporary file.")
+	@EditorInt.EdOptsInt(dflt = 4096, max = Integer.MAX_VALUE / 1024, min = 0, step = 1)
+	private Integer memoryLimit;
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "Temp Dir", description = "The directory for temporary files. Leave empty to use the system default.")
+	@EditorString.EdOptsString(dflt = "")
+	private String tempDir;
+
+	@Override
+	public Iterator<URL> iterator() {
+		return new PrefetchIterator(inputUrl.iterator());
+	}
+
+	@Override
+	public void done(URL url) {
+		if (!PROTOCOL.equals(url.getProtocol())) {
+			inputUrl.done(url);
+			return;
+		}
+		try {
+			inputUrl.done(new URL(url.getFile()));
+		} catch (MalformedURLException ex) {
+			LOGGER.warn("Failed to find the source of {}", url);
+		}
+	}
+
+	@Override
+	public boolean isContinuous() {
+		return inputUrl.isContinuous();
+	}
+
+	private int getPrefetchCount() {
+		return prefetchCount == null ? 4 : prefetchCount;
+	}
+
+	private int getMaxPerHost() {
+		return maxPerHost == null ? 2 : maxPerHost;
+	}
+
+	private int getMemoryLimit() {
+		return memoryLimit == null ? 4096 * 1024 : memoryLimit * 1024;
+	}
+
+	private class PrefetchIterator implements Iterator<URL>, Closeable {
+
+		private final Iterator<URL> source;
+		private final Deque<Future<Prefetched>> queue = new ArrayDeque<>();
+		private final Map<String, Semaphore> hostLimits = new ConcurrentHashMap<>();
+		private final int count;
+		private final ThreadPoolExecutor executor;
+		private Prefetched current;
+		private volatile boolean closed;
+
+		public PrefetchIterator(Iterator<URL> source) {
+			this.source = source;
+			this.count = getPrefetchCount();
+			final AtomicInteger threadNr = new AtomicInteger();
+			executor = new ThreadPoolExecutor(count, count, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r) -> {
+				Thread thread = new Thread(r, "Prefetch-" + threadNr.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.allowCoreThreadTimeOut(true);
+		}
+
+		private void fill() {
+			while (!closed && queue.size() < count && source.hasNext()) {
+				final URL url = source.next();
+				if (url == null) {
+					continue;
+				}
+				queue.add(executor.submit(() -> download(url)));
+			}
+			if (queue.isEmpty()) {
+				executor.shutdown();
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			fill();
+			if (queue.isEmpty()) {
+				releaseCurrent();
+				return false;
+			}
+			return true;
+		}
+
+		private void releaseCurrent() {
+			if (current != null) {
+				current.release();
+				current = null;
+			}
+		}
+
+		@Override
+		public URL next() {
+			releaseCurrent();
+			fill();
+			Future<Prefetched> future = queue.poll();
+			if (future == null) {
+				throw new NoSuchElementException();
+			}
+			try {
+				current = future.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for download.", ex);
+			} catch (ExecutionException ex) {
+				throw new IllegalStateException("Download failed.", ex.getCause());
+			}
+			fill();
+			return current.getUrl();
+		}
+
+		/**
+		 * Stops prefetching, and releases the current source and all sources
+		 * that were downloaded ahead.
+		 */
+		@Override
+		public void close() {
+			closed = true;
+			releaseCurrent();
+			Future<Prefetched> future;
+			while ((future = queue.poll()) != null) {
+				if (future.cancel(true)) {
+					// A download that is still running releases itself.
+					continue;
+				}
+				try {
+					future.get().release();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException ex) {
+					LOGGER.trace("Download failed.", ex);
+				}
+			}
+			executor.shutdownNow();
+		}
+
+		private Prefetched download(URL url) throws InterruptedException {
+			String host = url.getHost() == null ? "" : url.getHost();
+			Semaphore limit = hostLimits.computeIfAbsent(host, h -> new Semaphore(getMaxPerHost()));
+			limit.acquire();
+			Prefetched result = new Prefetched(url);
+			try (InputStream input = UrlUtils.openStream(url)) {
+				result.load(input, getMemoryLimit(), tempDir);
+			} catch (IOException | RuntimeException ex) {
+				LOGGER.error("Failed to prefetch {}: {}", url, ex.getMessage());
+				result.failed(ex);
+			} finally {
+				limit.release();
+			}
+			if (closed) {
+				result.release();
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * The downloaded data of one source.
+	 */
+	private static class Prefetched {
+
+		private final URL source;
+		private byte[] data;
+		private File file;
+		private Exception error;
+		private boolean released;
+
+		public Prefetched(URL source) {
+			this.source = source;
+		}
+
+		public void load(InputStream input, int memoryLimit, String tempDir) throws IOException {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			long copied = IOUtils.copyLarge(input, buffer, 0, memoryLimit + 1L);
+			if (copied <= memoryLimit) {
+				data = buffer.toByteArray();
+				return;
+			}
+			File dir = Utils.isNullOrEmpty(tempDir) ? null : new File(tempDir);
+			file = File.createTempFile("prefetch-", ".tmp", dir);
+			try (OutputStream out = new FileOutputStream(file)) {
+				buffer.writeTo(out);
+				IOUtils.copyLarge(input, out);
+			} catch (IOException ex) {
+				deleteFile();
+				throw ex;
+			}
+			LOGGER.debug("Buffered {} in {}", source, file);
+		}
+
+		public void failed(Exception error) {
+			this.error = error;
+		}
+
+		public synchronized InputStream open() throws IOException {
+			if (error != null) {
+				throw new IOException("Failed to fetch " + source, error);
+			}
+			if (released) {
+				throw new IOException("Prefetched data for " + source + " already released.");
+			}
+			if (file != null) {
+				return new FileInputStream(file);
+			}
+			return new ByteArrayInputStream(data);
+		}
+
+		public synchronized void release() {
+			released = true;
+			data = null;
+			deleteFile();
+		}
+
+		private void deleteFile() {
+			if (file != null && !file.delete()) {
+				file.deleteOnExit();
+			}
+			file = null;
+		}
+
+		/**
+		 * @return A url that reads the prefetched data. The path of the url
+		 * still ends with the path of the source, so file extensions can be
+		 * used to detect compression.
+		 */
+		public URL getUrl() {
+			try {
+				return new URL(PROTOCOL, "", -1, source.toExternalForm(), new Handler(this));
+			} catch (MalformedURLException ex) {
+				throw new IllegalStateException("Failed to wrap url " + source, ex);
+			}
+		}
+	}
+
+	private static class Handler extends URLStreamHandler {
+
+		private final Prefetched prefetched;
+
+		public Handler(Prefetched prefetched) {
+			this.prefetched = prefetched;
+		}
+
+		@Override
+		protected URLConnection openConnection(URL u) throws IOException {
+			return new URLConnection(u) {
+				@Override
+				public void connect() {
+					connected = true;
+				}
+
+				@Override
+				public InputStream getInputStream() throws IOException {
+					return prefetched.open();
+				}
+			};
+		}
+	}
+
+}
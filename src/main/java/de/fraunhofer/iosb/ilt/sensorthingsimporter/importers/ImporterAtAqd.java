@@ -22,6 +22,7 @@ import de.fraunhofer.iosb.ilt.configurable.ConfigEditor;
 import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
 import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorBoolean;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorInt;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorSubclass;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
@@ -37,14 +38,20 @@ import static de.fraunhofer.iosb.ilt.sensorthingsimporter.importers.eea.EeaConst
 import static de.fraunhofer.iosb.ilt.sensorthingsimporter.importers.eea.EeaConstants.TAG_NAMESPACE;
 import static de.fraunhofer.iosb.ilt.sensorthingsimporter.importers.eea.EeaConstants.TAG_OWNER;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.importers.eea.EeaObservedProperty;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.importers.eea.SosObservationResponse;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.timegen.TimeGen;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.EntityCache;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.EntitySync;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.FingerprintStore;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.FrostUtils;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.ProgressTracker;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.SharedEntityCache;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.UrlUtils;
 import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
 import de.fraunhofer.iosb.ilt.sta.Utils;
+import de.fraunhofer.iosb.ilt.sta.dao.BaseDao;
 import de.fraunhofer.iosb.ilt.sta.model.Datastream;
+import de.fraunhofer.iosb.ilt.sta.model.Entity;
 import de.fraunhofer.iosb.ilt.sta.model.FeatureOfInterest;
 import de.fraunhofer.iosb.ilt.sta.model.Location;
 import de.fraunhofer.iosb.ilt.sta.model.Observation;
@@ -52,9 +59,16 @@ import de.fraunhofer.iosb.ilt.sta.model.ObservedProperty;
 import de.fraunhofer.iosb.ilt.sta.model.Sensor;
 import de.fraunhofer.iosb.ilt.sta.model.Thing;
 import de.fraunhofer.iosb.ilt.sta.model.ext.UnitOfMeasurement;
+import de.fraunhofer.iosb.ilt.sta.query.Query;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.time.Instant;
 import java.time.ZonedDateTime;
@@ -70,19 +84,32 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
+import org.geojson.GeoJsonObject;
 import org.geojson.Point;
 import org.geotools.geometry.DirectPosition2D;
 import org.opengis.geometry.MismatchedDimensionException;
@@ -103,6 +130,18 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 
 	private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(ImporterAtAqd.class.getName());
 
+	private static final String SELECT_OBSERVED_PROPERTIES = "id,name,description,definition,properties";
+	private static final String SELECT_LOCATIONS = "id,name,description,properties,encodingType,location";
+	private static final String SELECT_THINGS = "id,name,description,properties";
+	private static final String EXPAND_THINGS = "Locations($select=id)";
+	private static final String SELECT_SENSORS = "id,name,description,encodingtype,metadata,properties";
+	private static final String SELECT_FOIS = "id,name,description,encodingtype,feature,properties";
+	/**
+	 * The phenomenonTime is not cached, it changes with each import. It is
+	 * fetched separately, see refreshPhenomenonTimes.
+	 */
+	private static final String SELECT_DATASTREAMS = "id,name,description,unitOfMeasurement,observationType,properties";
+
 	private static final Pattern SENSOR_ID_PATTERN = Pattern.compile("^(SPP\\.[0-9]+\\.[0-9A-Za-z]+\\.[0-9]+\\.([0-9]+))\\.([0-9]+)\\.([0-9]+)$");
 
 	@ConfigurableField(editor = EditorBoolean.class,
@@ -147,6 +186,42 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 	@EditorString.EdOptsString(dflt = "http://luft.umweltbundesamt.at")
 	private String entityOwner;
 
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Load Threads",
+			description = "The number of threads per entity type used to load the entity caches. 0 loads the pages one after the other.")
+	@EditorInt.EdOptsInt(dflt = 4, min = 0, max = 64, step = 1)
+	private int loadThreads = 4;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Sync Threads",
+			description = "The number of threads used to create and update Things, Sensors, Features and Datastreams.")
+	@EditorInt.EdOptsInt(dflt = 4, min = 0, max = 64, step = 1)
+	private int syncThreads = 4;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Fetch Threads",
+			description = "The number of Datastreams for which Observations are fetched concurrently. The Observations are returned in the order the fetches finish. 0 fetches one Datastream at a time, in order.")
+	@EditorInt.EdOptsInt(dflt = 0, min = 0, max = 64, step = 1)
+	private int fetchThreads = 0;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Max Per Host",
+			description = "The maximum number of concurrent Observation requests to the same SOS host, shared by all importers in the JVM. The importer that started last sets the limit.")
+	@EditorInt.EdOptsInt(dflt = 4, min = 1, max = 64, step = 1)
+	private int maxPerHost = 4;
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "Snapshot Dir",
+			description = "Directory to store snapshots of the entity caches, and the fingerprints of the last imported metadata in. Snapshots are used at startup if the server did not change, entities with unchanged fingerprints are not compared. Leave empty to disable.")
+	@EditorString.EdOptsString(dflt = "")
+	private String snapshotDir;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "Snapshot Max Age",
+			description = "Snapshots older than this number of hours are not used. The check whether the server changed only notices created and deleted entities, not updates by other clients. 0 for no limit.")
+	@EditorInt.EdOptsInt(dflt = 24, min = 0, max = Integer.MAX_VALUE, step = 1)
+	private int snapshotMaxAge = 24;
+
 	@ConfigurableField(editor = EditorString.class,
 			label = "Start Time Field",
 			description = "The field holding the start time of the phenomenonTime interval.")
@@ -171,11 +246,19 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 	private TimeGen startTime;
 
 	private boolean verbose = false;
+	private boolean noAct = false;
 	private ProgressTracker tracker;
 
 	private SensorThingsService service;
 	private FrostUtils frostUtils;
 
+	/**
+	 * The limits on concurrent Observation requests, by host.
+	 */
+	private static final Map<String, HostLimit> HOST_LIMITS = new ConcurrentHashMap<>();
+
+	private final FingerprintStore fingerprints = new FingerprintStore();
+
 	private final NameSpaceContextMap nameSpaceContext = new NameSpaceContextMap();
 
 	private final EntityCache<String, Location> locationsCache = new EntityCache<>(
@@ -223,6 +306,13 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 		this.service = context;
 		AnnotatedConfigurable.super.configure(config, context, edtCtx, configEditor);
 		frostUtils = new FrostUtils(service);
+		SharedEntityCache sharedCache = SharedEntityCache.getInstance();
+		locationsCache.setSharedCache(sharedCache.entityRegion(service, "ImporterAtAqd/Locations", Location.class));
+		thingsCache.setSharedCache(sharedCache.entityRegion(service, "ImporterAtAqd/Things", Thing.class));
+		observedPropertyCache.setSharedCache(sharedCache.entityRegion(service, "ImporterAtAqd/ObservedProperties", ObservedProperty.class));
+		sensorCache.setSharedCache(sharedCache.entityRegion(service, "ImporterAtAqd/Sensors", Sensor.class));
+		foiCache.setSharedCache(sharedCache.entityRegion(service, "ImporterAtAqd/FeaturesOfInterest", FeatureOfInterest.class));
+		datastreamCache.setSharedCache(sharedCache.entityRegion(service, "ImporterAtAqd/Datastreams", Datastream.class));
 	}
 
 	@Override
@@ -232,6 +322,7 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 
 	@Override
 	public void setNoAct(boolean noAct) {
+		this.noAct = noAct;
 		frostUtils.setDryRun(noAct);
 	}
 
@@ -249,6 +340,9 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 			loadCache();
 			tracker.updateProgress(++progress, total);
 			if (fullImport) {
+				if (!Utils.isNullOrEmpty(snapshotDir)) {
+					fingerprints.load(snapshotFile("Fingerprints"));
+				}
 				importThings();
 				tracker.updateProgress(++progress, total);
 				EeaObservedProperty.importObservedProperties(frostUtils, observedPropertyCache);
@@ -260,6 +354,8 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 				importDatastreams();
 				tracker.updateProgress(++progress, total);
 			}
+			saveSnapshots();
+			refreshPhenomenonTimes();
 			return new ObservationListIter(foiCache, datastreamCache, observationsUrl, startTime);
 		} catch (ImportException | ServiceFailureException ex) {
 			throw new IllegalStateException("Failed to import.", ex);
@@ -269,55 +365,149 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 	private void loadCache() throws ServiceFailureException {
 		LOGGER.debug("Caching entities");
 
-		String filter = "properties/" + TAG_OWNER + " eq " + FrostUtils.quoteForUrl(entityOwner);
-		final int observedPropertyCount = observedPropertyCache.load(
-				service.observedProperties(),
-				filter,
-				"id,name,description,definition,properties",
-				"");
-		LOGGER.debug("Loaded {} ObservedProperties", observedPropertyCount);
-
-		final int locationCount = locationsCache.load(
-				service.locations(),
-				filter,
-				"id,name,description,properties,encodingType,location",
-				"");
-		LOGGER.debug("Loaded {} Locations", locationCount);
-
-		final int thingCount = thingsCache.load(
-				service.things(),
-				filter,
-				"id,name,description,properties",
-				"Locations($select=id)");
-		LOGGER.debug("Loaded {} Things", thingCount);
-
-		final int sensorCount = sensorCache.load(
-				service.sensors(),
-				filter,
-				"id,name,description,encodingtype,metadata,properties",
-				"");
-		LOGGER.debug("Loaded {} Sensors", sensorCount);
-
-		final int foiCount = foiCache.load(
-				service.featuresOfInterest(),
-				filter,
-				"id,name,description,encodingtype,feature,properties",
-				"");
-		LOGGER.debug("Loaded {} FeaturesOfInterest", foiCount);
-
-		final int datastreamCount = datastreamCache.load(
-				service.datastreams(),
-				filter,
-				"id,name,description,unitOfMeasurement,observationType,properties,phenomenonTime",
-				"");
-		LOGGER.debug("Loaded {} Datastreams", datastreamCount);
-		LOGGER.info("Cached {} OP, {} Loc, {} Thngs, {} Snsrs, {} FoIs, {} DS",
-				observedPropertyCount,
-				locationCount,
-				thingCount,
-				sensorCount,
-				foiCount,
-				datastreamCount);
+		String filter = ownerFilter();
+		ExecutorService executor = Executors.newFixedThreadPool(6);
+		try {
+			Future<Integer> observedPropertyCount = executor.submit(() -> loadCache(observedPropertyCache, service.observedProperties(), ObservedProperty.class, "ObservedProperties", filter, SELECT_OBSERVED_PROPERTIES, ""));
+			Future<Integer> locationCount = executor.submit(() -> loadCache(locationsCache, service.locations(), Location.class, "Locations", filter, SELECT_LOCATIONS, ""));
+			Future<Integer> thingCount = executor.submit(() -> loadCache(thingsCache, service.things(), Thing.class, "Things", filter, SELECT_THINGS, EXPAND_THINGS));
+			Future<Integer> sensorCount = executor.submit(() -> loadCache(sensorCache, service.sensors(), Sensor.class, "Sensors", filter, SELECT_SENSORS, ""));
+			Future<Integer> foiCount = executor.submit(() -> loadCache(foiCache, service.featuresOfInterest(), FeatureOfInterest.class, "FeaturesOfInterest", filter, SELECT_FOIS, ""));
+			Future<Integer> datastreamCount = executor.submit(() -> loadCache(datastreamCache, service.datastreams(), Datastream.class, "Datastreams", filter, SELECT_DATASTREAMS, ""));
+			LOGGER.info("Cached {} OP, {} Loc, {} Thngs, {} Snsrs, {} FoIs, {} DS",
+					observedPropertyCount.get(),
+					locationCount.get(),
+					thingCount.get(),
+					sensorCount.get(),
+					foiCount.get(),
+					datastreamCount.get());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new ServiceFailureException("Interrupted while caching entities.", ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof ServiceFailureException) {
+				throw (ServiceFailureException) ex.getCause();
+			}
+			throw new ServiceFailureException("Failed to cache entities.", ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private <U, T extends Entity<T>> int loadCache(EntityCache<U, T> cache, BaseDao<T> dao, Class<T> entityClass, String name, String filter, String select, String expand) throws ServiceFailureException {
+		if (!Utils.isNullOrEmpty(snapshotDir) && !cache.isShared(filter, select, expand)) {
+			int count = cache.loadSnapshot(snapshotFile(name), service, dao, entityClass, filter, select, expand, TimeUnit.HOURS.toMillis(snapshotMaxAge));
+			if (count >= 0) {
+				LOGGER.debug("Using snapshot for {}", name);
+				return count;
+			}
+		}
+		int count = cache.load(dao, filter, select, expand, loadThreads);
+		LOGGER.debug("Loaded {} {}", count, name);
+		return count;
+	}
+
+	private void saveSnapshots() throws ServiceFailureException {
+		if (Utils.isNullOrEmpty(snapshotDir) || noAct) {
+			return;
+		}
+		String filter = ownerFilter();
+		try {
+			observedPropertyCache.saveSnapshot(snapshotFile("ObservedProperties"), service, service.observedProperties(), filter, SELECT_OBSERVED_PROPERTIES, "");
+			locationsCache.saveSnapshot(snapshotFile("Locations"), service, service.locations(), filter, SELECT_LOCATIONS, "");
+			thingsCache.saveSnapshot(snapshotFile("Things"), service, service.things(), filter, SELECT_THINGS, EXPAND_THINGS);
+			sensorCache.saveSnapshot(snapshotFile("Sensors"), service, service.sensors(), filter, SELECT_SENSORS, "");
+			foiCache.saveSnapshot(snapshotFile("FeaturesOfInterest"), service, service.featuresOfInterest(), filter, SELECT_FOIS, "");
+			fingerprints.save(snapshotFile("Fingerprints"));
+		} catch (IOException ex) {
+			LOGGER.warn("Failed to write cache snapshots to {}: {}", snapshotDir, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Save the snapshot of the Datastreams. Done after the Observations are
+	 * imported, since that sets the unitOfMeasurement of new Datastreams.
+	 */
+	private void saveDatastreamSnapshot() {
+		if (Utils.isNullOrEmpty(snapshotDir) || noAct) {
+			return;
+		}
+		try {
+			datastreamCache.saveSnapshot(snapshotFile("Datastreams"), service, service.datastreams(), ownerFilter(), SELECT_DATASTREAMS, "");
+		} catch (IOException | ServiceFailureException ex) {
+			LOGGER.warn("Failed to write Datastream snapshot to {}: {}", snapshotDir, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Fetch the current phenomenonTimes of the Datastreams, used to find the
+	 * start time of the Observations to import. These are not part of the
+	 * cached Datastreams, since they change with each import.
+	 */
+	private void refreshPhenomenonTimes() throws ServiceFailureException {
+		Map<Object, Interval> times = new HashMap<>();
+		Iterator<Datastream> it = service.datastreams().query()
+				.filter(ownerFilter())
+				.select("id", "phenomenonTime")
+				.top(EntityCache.PAGE_SIZE)
+				.list()
+				.fullIterator();
+		while (it.hasNext()) {
+			Datastream ds = it.next();
+			times.put(ds.getId().getValue(), ds.getPhenomenonTime());
+		}
+		for (Datastream ds : datastreamCache.values()) {
+			if (ds.getId() != null) {
+				ds.setPhenomenonTime(times.get(ds.getId().getValue()));
+			}
+		}
+	}
+
+	private String fingerprintPrefix(String entityType) {
+		return service.getEndpoint() + "|" + entityType + "|";
+	}
+
+	private String ownerFilter() {
+		return "properties/" + TAG_OWNER + " eq " + FrostUtils.quoteForUrl(entityOwner);
+	}
+
+	/**
+	 * Locations that were created together with their Thing, using deep
+	 * insert, do not get their id set. Fetch them, so they are in the cache
+	 * the next time the station is seen.
+	 */
+	private void cacheDeepInsertedLocations(Map<String, Thing> things) throws ServiceFailureException {
+		List<FrostUtils.ServiceTask> tasks = new ArrayList<>();
+		for (Map.Entry<String, Thing> entry : things.entrySet()) {
+			final String stationId = entry.getKey();
+			final Thing thing = entry.getValue();
+			if (thing.getId() == null || locationsCache.containsId(stationId)) {
+				continue;
+			}
+			tasks.add(() -> {
+				Location location = thing.locations().query().select(SELECT_LOCATIONS).first();
+				if (location != null) {
+					locationsCache.put(stationId, location);
+				}
+			});
+		}
+		frostUtils.execute(tasks, syncThreads);
+	}
+
+	private <T extends Entity<T>> EntitySync.Finder<String, T> localIdFinder(BaseDao<T> dao, String select, String expand) {
+		return (localId) -> {
+			Query<T> query = dao.query()
+					.filter(ownerFilter() + " and properties/" + TAG_LOCAL_ID + " eq " + FrostUtils.quoteForUrl(localId))
+					.select(select);
+			if (!expand.isEmpty()) {
+				query.expand(expand);
+			}
+			return query.first();
+		};
+	}
+
+	private File snapshotFile(String name) {
+		return new File(snapshotDir, "AtAqd-" + name + ".json");
 	}
 
 	private void importThings() throws ImportException {
@@ -352,6 +542,16 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 			XPathExpression exprLocationSrsDim = xpath.compile("ef:geometry/gml:Point/@srsDimension");
 			XPathExpression exprLocationPos = xpath.compile("ef:geometry/gml:Point/gml:pos");
 
+			EntitySync<String, Location> locationSync = new EntitySync<>(frostUtils, locationsCache,
+					(id, desired, existing) -> frostUtils.maybeUpdateLocation(desired.getName(), desired.getDescription(), desired.getProperties(), (GeoJsonObject) desired.getLocation(), existing));
+			locationSync.setFingerprints(fingerprints, fingerprintPrefix("Locations"))
+					.setFinder(localIdFinder(service.locations(), SELECT_LOCATIONS, ""));
+			EntitySync<String, Thing> thingSync = new EntitySync<>(frostUtils, thingsCache,
+					(id, desired, existing) -> frostUtils.maybeUpdateThing(desired.getName(), desired.getDescription(), desired.getProperties(), locationsCache.get(id), existing));
+			thingSync.setFingerprints(fingerprints, fingerprintPrefix("Things"))
+					.setFinder(localIdFinder(service.things(), SELECT_THINGS, EXPAND_THINGS));
+			Map<String, Thing> things = new LinkedHashMap<>();
+
 			NodeList stationList = (NodeList) exprStationsList.evaluate(doc, XPathConstants.NODESET);
 			total = stationList.getLength();
 			LOGGER.info("Found {} stations.", total);
@@ -394,17 +594,32 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 				locationProps.put(TAG_NAMESPACE, stationNamesSpace);
 				locationProps.put(TAG_METADATA, stationMetaData);
 
-				String filter = "properties/" + TAG_LOCAL_ID + " eq " + Utils.quoteForUrl(stationId);
-				Location cachedLocation = locationsCache.get(stationId);
-				Location location = frostUtils.findOrCreateLocation(filter, stationName, locationDescription, locationProps, new Point(targetPoint.x, targetPoint.y), cachedLocation);
-				Thing cachedThing = thingsCache.get(stationId);
-				Thing thing = frostUtils.findOrCreateThing(filter, stationName, stationDescription, stationProps, location, cachedThing);
-				locationsCache.put(stationId, location);
-				thingsCache.put(stationId, thing);
+				Location location = new Location(stationName, locationDescription, FrostUtils.ENCODING_GEOJSON, new Point(targetPoint.x, targetPoint.y));
+				location.setProperties(locationProps);
+				Thing thing = new Thing(stationName, stationDescription);
+				thing.setProperties(stationProps);
+				if (locationsCache.containsId(stationId) || thingsCache.containsId(stationId)) {
+					locationSync.add(stationId, location);
+				} else {
+					// New station, create the Thing and Location in one go.
+					thing.getLocations().add(location);
+				}
+				things.put(stationId, thing);
 
 				imported++;
 				LOGGER.debug("Station: {}: {}.", stationId, stationName);
 			}
+			locationSync.sync(syncThreads);
+			for (Map.Entry<String, Thing> entry : things.entrySet()) {
+				Thing thing = entry.getValue();
+				Location location = locationsCache.get(entry.getKey());
+				if (thing.getLocations().toList().isEmpty() && location != null) {
+					thing.getLocations().add(location.withOnlyId());
+				}
+				thingSync.add(entry.getKey(), thing);
+			}
+			thingSync.sync(syncThreads);
+			cacheDeepInsertedLocations(things);
 			LOGGER.info("Done with stations, imported {} of {}.", imported, total);
 
 		} catch (ParserConfigurationException | SAXException | IOException | XPathExpressionException ex) {
@@ -455,6 +670,11 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 			XPathExpression exprRpWebsite = xpath.compile("ompr:responsibleParty/base2:RelatedParty/base2:contact/base2:Contact/base2:website");
 			String processMetadata = "http://luft.umweltbundesamt.at/inspire/wfs?service=WFS&version=2.0.0&request=GetFeature&typeName=aqd:AQD_SamplingPointProcess";
 
+			EntitySync<String, Sensor> sensorSync = new EntitySync<>(frostUtils, sensorCache,
+					(id, desired, existing) -> frostUtils.mayeUpdateSensor(desired.getName(), desired.getDescription(), desired.getEncodingType(), desired.getMetadata(), desired.getProperties(), existing));
+			sensorSync.setFingerprints(fingerprints, fingerprintPrefix("Sensors"))
+					.setFinder(localIdFinder(service.sensors(), SELECT_SENSORS, ""));
+
 			NodeList processList = (NodeList) exprList.evaluate(doc, XPathConstants.NODESET);
 			total = processList.getLength();
 			LOGGER.debug("Found {} processes.", total);
@@ -516,13 +736,13 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 				FrostUtils.putIntoSubMap(properties, "responsibleParty", "telephoneVoice", exprRpTelephoneVoice.evaluate(processNode));
 				FrostUtils.putIntoSubMap(properties, "responsibleParty", "website", exprRpWebsite.evaluate(processNode));
 
-				String filter = "properties/" + TAG_LOCAL_ID + " eq " + Utils.quoteForUrl(processId);
-				Sensor cachedSensor = sensorCache.get(processId);
-				Sensor sensor = frostUtils.findOrCreateSensor(filter, processName, processDescription, "application/pdf", processMeta, properties, cachedSensor);
-				sensorCache.put(processId, sensor);
+				Sensor sensor = new Sensor(processName, processDescription, "application/pdf", processMeta);
+				sensor.setProperties(properties);
+				sensorSync.add(processId, sensor);
 				LOGGER.debug("Process: {}.", processId);
 				imported++;
 			}
+			sensorSync.sync(syncThreads);
 		} catch (ParserConfigurationException | SAXException | IOException | XPathExpressionException ex) {
 			LOGGER.debug("Exception: {}", ex.getMessage());
 			throw new ImportException("XML problem.", ex);
@@ -558,6 +778,11 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 			XPathExpression exprPos = xpath.compile("sams:shape/gml:Point/gml:pos");
 			String featureMetaData = "http://luft.umweltbundesamt.at/inspire/wfs?service=WFS&version=2.0.0&request=GetFeature&typeName=aqd:AQD_Sample";
 
+			EntitySync<String, FeatureOfInterest> foiSync = new EntitySync<>(frostUtils, foiCache,
+					(id, desired, existing) -> frostUtils.maybeUpdateFeatureOfInterest(desired.getName(), desired.getDescription(), (GeoJsonObject) desired.getFeature(), desired.getProperties(), existing));
+			foiSync.setFingerprints(fingerprints, fingerprintPrefix("FeaturesOfInterest"))
+					.setFinder(localIdFinder(service.featuresOfInterest(), SELECT_FOIS, ""));
+
 			NodeList samplesList = (NodeList) exprSamplesList.evaluate(doc, XPathConstants.NODESET);
 			total = samplesList.getLength();
 			LOGGER.debug("Found {} samples.", total);
@@ -579,14 +804,14 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 				String locationPos = exprPos.evaluate(sampleNode);
 				DirectPosition2D targetPoint = FrostUtils.convertCoordinates(locationPos, locationSrsName);
 
-				String filter = "properties/" + TAG_LOCAL_ID + " eq " + Utils.quoteForUrl(sampleId);
-				FeatureOfInterest cachedFoi = foiCache.get(sampleId);
 				Point geoJson = new Point(targetPoint.x, targetPoint.y);
-				FeatureOfInterest foi = frostUtils.findOrCreateFeature(filter, sampleName, sampleDescription, geoJson, properties, cachedFoi);
-				foiCache.put(sampleId, foi);
+				FeatureOfInterest foi = new FeatureOfInterest(sampleName, sampleDescription, FrostUtils.CONTENT_TYPE_GEOJSON, geoJson);
+				foi.setProperties(properties);
+				foiSync.add(sampleId, foi);
 				LOGGER.debug("Sample: {}.", sampleId);
 				imported++;
 			}
+			foiSync.sync(syncThreads);
 		} catch (ParserConfigurationException | SAXException | IOException | XPathExpressionException ex) {
 			LOGGER.debug("Exception: {}", ex.getMessage());
 			throw new ImportException("XML problem.", ex);
@@ -628,6 +853,11 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 			String resultNature = "http://inspire.ec.europa.eu/codeList/ResultNatureValue/primary";
 			String featureMetaData = "http://luft.umweltbundesamt.at/inspire/wfs?service=WFS&version=2.0.0&request=GetFeature&typeName=aqd:AQD_SamplingPoint";
 
+			EntitySync<String, Datastream> datastreamSync = new EntitySync<>(frostUtils, datastreamCache,
+					(id, desired, existing) -> frostUtils.maybeUpdateDatastream(desired.getName(), desired.getDescription(), desired.getProperties(), desired.getUnitOfMeasurement(), desired.getThing(), desired.getObservedProperty(), desired.getSensor(), existing));
+			datastreamSync.setFingerprints(fingerprints, fingerprintPrefix("Datastreams"))
+					.setFinder(localIdFinder(service.datastreams(), SELECT_DATASTREAMS, ""));
+
 			NodeList featureList = (NodeList) exprList.evaluate(doc, XPathConstants.NODESET);
 			total = featureList.getLength();
 			LOGGER.debug("Found {} SamplingPoints.", total);
@@ -681,17 +911,21 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 				properties.put("resultNature", resultNature);
 				properties.put("featureOfInterestLocalId", foiLocalId);
 
-				String filter = "properties/" + TAG_LOCAL_ID + " eq " + Utils.quoteForUrl(dsId);
 				Datastream cachedDs = datastreamCache.get(dsId);
 				UnitOfMeasurement uom = FrostUtils.NULL_UNIT;
 				if (cachedDs != null && !uom.equals(cachedDs.getUnitOfMeasurement())) {
 					uom = cachedDs.getUnitOfMeasurement();
 				}
-				Datastream ds = frostUtils.findOrCreateDatastream(filter, dsName, dsDescription, properties, uom, thing, observedProperty, sensor, cachedDs);
-				datastreamCache.put(dsId, ds);
+				Datastream ds = new Datastream(dsName, dsDescription, "http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement", uom);
+				ds.setProperties(properties);
+				ds.setThing(thing);
+				ds.setSensor(sensor);
+				ds.setObservedProperty(observedProperty);
+				datastreamSync.add(dsId, ds);
 				LOGGER.debug("SamplingPoints: {}.", dsId);
 				imported++;
 			}
+			datastreamSync.sync(syncThreads);
 		} catch (ParserConfigurationException | SAXException | IOException | XPathExpressionException ex) {
 			LOGGER.debug("Exception: {}", ex.getMessage());
 			throw new ImportException("XML problem.", ex);
@@ -702,7 +936,7 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 		LOGGER.info("Done with SamplingPoints, imported {} of {}.", imported, total);
 	}
 
-	private class ObservationListIter implements Iterator<List<Observation>> {
+	private class ObservationListIter implements Iterator<List<Observation>>, Closeable {
 
 		private final EntityCache<String, FeatureOfInterest> foiCache;
 		private final EntityCache<String, Datastream> datastreamCache;
@@ -712,6 +946,11 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 		private final long count;
 		private long progress = 0;
 
+		private ExecutorService executor;
+		private CompletionService<List<Observation>> completion;
+		private HostLimit hostLimit;
+		private int inFlight = 0;
+
 		public ObservationListIter(EntityCache<String, FeatureOfInterest> foiCache, EntityCache<String, Datastream> datastreamCache, String observationsUrl, TimeGen startTime) {
 			this.foiCache = foiCache;
 			this.datastreamCache = datastreamCache;
@@ -719,6 +958,53 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 			this.startTime = startTime;
 			datastreamIterator = datastreamCache.values().iterator();
 			count = datastreamCache.values().size();
+			if (fetchThreads > 0) {
+				String host;
+				try {
+					host = new URL(observationsUrl).getHost();
+				} catch (MalformedURLException ex) {
+					host = observationsUrl;
+				}
+				hostLimit = HOST_LIMITS.computeIfAbsent(host, h -> new HostLimit(maxPerHost));
+				hostLimit.setLimit(maxPerHost);
+				final AtomicInteger threadNr = new AtomicInteger();
+				ThreadPoolExecutor pool = new ThreadPoolExecutor(fetchThreads, fetchThreads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r) -> {
+					Thread thread = new Thread(r, "AtAqdFetch-" + threadNr.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+				pool.allowCoreThreadTimeOut(true);
+				executor = pool;
+				completion = new ExecutorCompletionService<>(executor);
+				submitFetches();
+			}
+		}
+
+		/**
+		 * Keep fetchThreads fetches in flight, as long as there are
+		 * Datastreams left.
+		 */
+		private void submitFetches() {
+			while (inFlight < fetchThreads && datastreamIterator.hasNext()) {
+				final Datastream ds = datastreamIterator.next();
+				completion.submit(() -> fetchDatastream(ds));
+				inFlight++;
+			}
+			if (inFlight == 0) {
+				executor.shutdown();
+			}
+		}
+
+		private List<Observation> fetchDatastream(Datastream ds) throws InterruptedException {
+			hostLimit.acquire();
+			try {
+				return importDatastream(ds);
+			} catch (ImportException | ServiceFailureException ex) {
+				LOGGER.error("Failed to import data for datastream " + ds.getName(), ex);
+				return Collections.emptyList();
+			} finally {
+				hostLimit.release();
+			}
 		}
 
 		private List<Observation> importDatastream(Datastream ds) throws ImportException, ServiceFailureException {
@@ -730,89 +1016,83 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 			String dsLocalId = ds.getProperties().get(TAG_LOCAL_ID).toString();
 			String finalUrl = observationsUrl.replace("{datastreamLocalId}", dsLocalId);
 			finalUrl = finalUrl.replace("{phenomenonTimeInterval}", interval.toString());
-			String observationsXml = UrlUtils.fetchFromUrl(finalUrl);
+			SosObservationResponse response;
+			try (InputStream input = UrlUtils.openStream(new URL(finalUrl))) {
+				response = SosObservationResponse.parse(input);
+			} catch (IOException | XMLStreamException ex) {
+				LOGGER.error("Failed to fetch url {}: {}", finalUrl, ex.getMessage());
+				throw new ImportException("Failed to fetch url " + finalUrl, ex);
+			}
 
-			try {
-				DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-				factory.setNamespaceAware(true);
-				DocumentBuilder builder = factory.newDocumentBuilder();
-				Document doc = builder.parse(IOUtils.toInputStream(observationsXml, Charset.forName("UTF-8")));
-
-				XPathFactory xpathfactory = XPathFactory.newInstance();
-				XPath xpath = xpathfactory.newXPath();
-				xpath.setNamespaceContext(nameSpaceContext);
-
-				XPathExpression exprFeatureId = xpath.compile("/sos:GetObservationResponse/sos:observationData/om:OM_Observation/om:featureOfInterest/@xlink:href");
-				XPathExpression exprSamplingPointId = xpath.compile("/sos:GetObservationResponse/sos:observationData/om:OM_Observation/om:parameter/om:NamedValue[./om:name/@xlink:href='http://dd.eionet.europa.eu/vocabulary/aq/processparameter/SamplingPoint']/om:value/@xlink:href");
-				XPathExpression exprDataArray = xpath.compile("/sos:GetObservationResponse/sos:observationData/om:OM_Observation/om:result/swe:DataArray");
-
-				String featureId = exprFeatureId.evaluate(doc);
-				String samplingPointId = exprSamplingPointId.evaluate(doc);
-				if (!samplingPointId.endsWith(dsLocalId)) {
-					LOGGER.debug("Returned data has sampling point {}, but expected data for {}", samplingPointId, dsLocalId);
-				}
-				if (Utils.isNullOrEmpty(featureId)) {
-					return result;
-				}
-				FeatureOfInterest foi = foiCache.get(FrostUtils.afterLastSlash(featureId));
-				if (foi == null) {
-					LOGGER.error("Could not find foi for {}", featureId);
-					return result;
-				}
-
-				Node dataArrayNode = (Node) exprDataArray.evaluate(doc, XPathConstants.NODE);
-				SweValueExtractor sweValueExtractor = new SweValueExtractor(xpath, dataArrayNode);
-				SweValueExtractor.Field timeStart = new SweValueExtractor.Field(fieldStartTime, false);
-				SweValueExtractor.Field timeEnd = new SweValueExtractor.Field(fieldEndTime, false);
-				SweValueExtractor.Field value = new SweValueExtractor.Field(fieldValue, true);
-				sweValueExtractor.addRequestedField(timeStart);
-				sweValueExtractor.addRequestedField(timeEnd);
-				sweValueExtractor.addRequestedField(value);
-				sweValueExtractor.parse();
-				LOGGER.debug("Parsing {} Observations", sweValueExtractor.getElementCount());
-
-				if (FrostUtils.NULL_UNIT.equals(ds.getUnitOfMeasurement()) && sweValueExtractor.hasNext()) {
-					sweValueExtractor.next();
-					String name = FrostUtils.afterLastSlash(value.uom);
-					ds.setUnitOfMeasurement(new UnitOfMeasurement(name, name, value.uom));
-					frostUtils.update(ds);
-					sweValueExtractor.reset();
-				}
-
-				while (sweValueExtractor.hasNext()) {
-					sweValueExtractor.next();
-					try {
-						Observation o = new Observation();
-						o.setResult(new BigDecimal(value.lastValue.trim()));
-						ZonedDateTime zdtStart = ZonedDateTime.parse(timeStart.lastValue.trim());
-						ZonedDateTime zdtEnd = ZonedDateTime.parse(timeEnd.lastValue.trim());
-						o.setPhenomenonTimeFrom(Interval.of(zdtStart.toInstant(), zdtEnd.toInstant()));
-						o.setDatastream(ds);
-						o.setFeatureOfInterest(foi);
-						result.add(o);
-					} catch (NumberFormatException ex) {
-						LOGGER.error("Failed to parse number {}", value.lastValue);
-						throw new ImportException("XML problem.", ex);
-					} catch (DateTimeParseException ex) {
-						LOGGER.error("Failed to parse date {} or {}", timeStart.lastValue, timeEnd.lastValue);
-						throw new ImportException("XML problem.", ex);
-					}
-				}
+			String featureId = response.getFeatureOfInterest();
+			String samplingPointId = response.getSamplingPoint();
+			if (!samplingPointId.endsWith(dsLocalId)) {
+				LOGGER.debug("Returned data has sampling point {}, but expected data for {}", samplingPointId, dsLocalId);
+			}
+			if (Utils.isNullOrEmpty(featureId)) {
 				return result;
+			}
+			FeatureOfInterest foi = foiCache.get(FrostUtils.afterLastSlash(featureId));
+			if (foi == null) {
+				LOGGER.error("Could not find foi for {}", featureId);
+				return result;
+			}
 
-			} catch (ParserConfigurationException | SAXException | IOException | XPathExpressionException ex) {
-				LOGGER.debug("Exception: {}", ex.getMessage());
-				throw new ImportException("XML problem.", ex);
+			if (!response.hasDataArray()) {
+				LOGGER.debug("No DataArray in response for {}", dsLocalId);
+				return result;
 			}
+
+			SweValueExtractor sweValueExtractor = new SweValueExtractor(response);
+			SweValueExtractor.Field timeStart = new SweValueExtractor.Field(fieldStartTime, false);
+			SweValueExtractor.Field timeEnd = new SweValueExtractor.Field(fieldEndTime, false);
+			SweValueExtractor.Field value = new SweValueExtractor.Field(fieldValue, true);
+			sweValueExtractor.addRequestedField(timeStart);
+			sweValueExtractor.addRequestedField(timeEnd);
+			sweValueExtractor.addRequestedField(value);
+			sweValueExtractor.parse();
+			LOGGER.debug("Parsing {} Observations", sweValueExtractor.getElementCount());
+
+			if (FrostUtils.NULL_UNIT.equals(ds.getUnitOfMeasurement()) && sweValueExtractor.hasNext()) {
+				sweValueExtractor.next();
+				String name = FrostUtils.afterLastSlash(value.uom);
+				ds.setUnitOfMeasurement(new UnitOfMeasurement(name, name, value.uom));
+				frostUtils.update(ds);
+				sweValueExtractor.reset();
+			}
+
+			while (sweValueExtractor.hasNext()) {
+				sweValueExtractor.next();
+				try {
+					Observation o = new Observation();
+					o.setResult(value.getDecimal());
+					ZonedDateTime zdtStart = ZonedDateTime.parse(timeStart.getChars());
+					ZonedDateTime zdtEnd = ZonedDateTime.parse(timeEnd.getChars());
+					o.setPhenomenonTimeFrom(Interval.of(zdtStart.toInstant(), zdtEnd.toInstant()));
+					o.setDatastream(ds);
+					o.setFeatureOfInterest(foi);
+					result.add(o);
+				} catch (NumberFormatException ex) {
+					LOGGER.error("Failed to parse number {}", value.getLastValue());
+					throw new ImportException("XML problem.", ex);
+				} catch (DateTimeParseException ex) {
+					LOGGER.error("Failed to parse date {} or {}", timeStart.getLastValue(), timeEnd.getLastValue());
+					throw new ImportException("XML problem.", ex);
+				}
+			}
+			return result;
 		}
 
 		@Override
 		public boolean hasNext() {
-			return datastreamIterator.hasNext();
+			return inFlight > 0 || datastreamIterator.hasNext();
 		}
 
 		@Override
 		public List<Observation> next() {
+			if (executor != null) {
+				return nextCompleted();
+			}
 			if (datastreamIterator.hasNext()) {
 				Datastream ds = datastreamIterator.next();
 				try {
@@ -825,6 +1105,73 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 			return Collections.emptyList();
 		}
 
+		private List<Observation> nextCompleted() {
+			if (inFlight == 0) {
+				return Collections.emptyList();
+			}
+			Future<List<Observation>> done;
+			try {
+				done = completion.take();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				executor.shutdownNow();
+				throw new IllegalStateException("Interrupted while fetching Observations.", ex);
+			}
+			inFlight--;
+			tracker.updateProgress(++progress, count);
+			submitFetches();
+			try {
+				return done.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while fetching Observations.", ex);
+			} catch (ExecutionException ex) {
+				LOGGER.error("Failed to fetch Observations.", ex.getCause());
+				return Collections.emptyList();
+			}
+		}
+
+		/**
+		 * Stop fetching, when the consumer stops before all Datastreams are
+		 * done, and save the Datastream snapshot.
+		 */
+		@Override
+		public void close() {
+			if (executor != null) {
+				executor.shutdownNow();
+				inFlight = 0;
+				try {
+					executor.awaitTermination(10, TimeUnit.SECONDS);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			saveDatastreamSnapshot();
+		}
+
+	}
+
+	/**
+	 * A limit on concurrent requests to a host, that can be changed while it
+	 * is in use.
+	 */
+	private static class HostLimit extends Semaphore {
+
+		private int limit;
+
+		public HostLimit(int limit) {
+			super(limit);
+			this.limit = limit;
+		}
+
+		public synchronized void setLimit(int newLimit) {
+			if (newLimit > limit) {
+				release(newLimit - limit);
+			} else if (newLimit < limit) {
+				reducePermits(limit - newLimit);
+			}
+			limit = newLimit;
+		}
 	}
 
 	private static class NameSpaceContextMap implements NamespaceContext {
@@ -858,7 +1205,12 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 
 	}
 
-	private static class SweValueExtractor {
+	/**
+	 * Walks the blocks and tokens of the swe:values text in place. The values
+	 * of the fields are kept as offsets into the text, requested fields are
+	 * parsed directly from these offsets, without creating Strings.
+	 */
+	static class SweValueExtractor {
 
 		public static class Field {
 
@@ -866,100 +1218,184 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 			String uom;
 			boolean numeric;
 			int index = -1;
-			String lastValue;
+			private CharSequence source;
+			private int start;
+			private int end;
+			private String decimalSep = ".";
+			private char[] buffer = new char[32];
 
 			public Field(String name, boolean numeric) {
 				this.name = name;
 				this.numeric = numeric;
 			}
 
+			private void setRange(CharSequence source, int start, int end) {
+				while (start < end && Character.isWhitespace(source.charAt(start))) {
+					start++;
+				}
+				while (end > start && Character.isWhitespace(source.charAt(end - 1))) {
+					end--;
+				}
+				this.source = source;
+				this.start = start;
+				this.end = end;
+			}
+
 			/**
-			 * @return The latest value, updated by a call to next.
+			 * @return A view on the latest value, updated by a call to next.
+			 */
+			public CharSequence getChars() {
+				return CharBuffer.wrap(source, start, end);
+			}
+
+			/**
+			 * Parse the latest value as a number, using the decimal separator
+			 * of the encoding.
+			 *
+			 * @return The latest value as a number.
+			 * @throws NumberFormatException if the value is not a number.
+			 */
+			public BigDecimal getDecimal() {
+				final int length = end - start;
+				if (buffer.length < length) {
+					buffer = new char[length];
+				}
+				final boolean replace = numeric && !".".equals(decimalSep) && !decimalSep.isEmpty();
+				final char sepStart = replace ? decimalSep.charAt(0) : 0;
+				int out = 0;
+				int pos = start;
+				while (pos < end) {
+					char c = source.charAt(pos);
+					if (replace && c == sepStart && regionMatches(source, pos, end, decimalSep)) {
+						buffer[out++] = '.';
+						pos += decimalSep.length();
+					} else {
+						buffer[out++] = c;
+						pos++;
+					}
+				}
+				return new BigDecimal(buffer, 0, out);
+			}
+
+			/**
+			 * @return The latest value, as String. Only meant for messages.
 			 */
 			public String getLastValue() {
-				return lastValue;
+				if (source == null) {
+					return null;
+				}
+				return source.subSequence(start, end).toString();
 			}
 
 		}
-		private final XPath xpath;
-		private final Node dataArrayNode;
+		private final SosObservationResponse response;
 
 		private final Map<String, Field> requestedFields = new LinkedHashMap<>();
 
 		private final List<Field> fields = new ArrayList<>();
 
 		private int elementCount = -1;
-		private String decimalSep;
 		private String blockSep;
 		private String tokenSep;
 
-		private Matcher matcher;
+		private CharSequence values;
+		/**
+		 * The start of the text after the current block.
+		 */
+		private int position;
+		private int blockStart;
+		private int blockEnd;
 		private boolean hasNext = false;
 
-		public SweValueExtractor(XPath xpath, Node dataArrayNode) {
-			this.xpath = xpath;
-			this.dataArrayNode = dataArrayNode;
+		public SweValueExtractor(SosObservationResponse response) {
+			this.response = response;
 		}
 
 		public void addRequestedField(Field field) {
 			requestedFields.put(field.name, field);
 		}
 
-		public void parse() throws XPathExpressionException {
-			elementCount = -1;
-			XPathExpression exprElementCount = xpath.compile("swe:elementCount/swe:Count/swe:value");
-			XPathExpression exprFieldList = xpath.compile("swe:elementType[@name='Components']/swe:DataRecord/swe:field");
-			XPathExpression exprEncoding = xpath.compile("swe:encoding/swe:TextEncoding");
-			XPathExpression exprValues = xpath.compile("swe:values");
-			XPathExpression exprFieldUom = xpath.compile(".//swe:uom/@xlink:href");
-			XPathExpression exprFieldName = xpath.compile("@name");
-
-			elementCount = Integer.parseInt(exprElementCount.evaluate(dataArrayNode));
-
-			Node encodingNode = (Node) exprEncoding.evaluate(dataArrayNode, XPathConstants.NODE);
-			decimalSep = encodingNode.getAttributes().getNamedItem("decimalSeparator").getTextContent();
-			blockSep = encodingNode.getAttributes().getNamedItem("blockSeparator").getTextContent();
-			tokenSep = encodingNode.getAttributes().getNamedItem("tokenSeparator").getTextContent();
-
-			NodeList fieldList = (NodeList) exprFieldList.evaluate(dataArrayNode, XPathConstants.NODESET);
+		public void parse() throws ImportException {
+			if (Utils.isNullOrEmpty(response.getBlockSeparator()) || Utils.isNullOrEmpty(response.getTokenSeparator())) {
+				throw new ImportException("XML problem: DataArray has no TextEncoding.");
+			}
+			elementCount = response.getElementCount();
+			String decimalSep = response.getDecimalSeparator() == null ? "." : response.getDecimalSeparator();
+			blockSep = response.getBlockSeparator();
+			tokenSep = response.getTokenSeparator();
 
-			int fieldCount = fieldList.getLength();
+			List<SosObservationResponse.SweField> fieldList = response.getFields();
+			int fieldCount = fieldList.size();
 			for (int i = 0; i < fieldCount; i++) {
-				Node fieldNode = fieldList.item(i).cloneNode(true);
-
-				String fieldName = exprFieldName.evaluate(fieldNode);
+				SosObservationResponse.SweField sweField = fieldList.get(i);
+				String fieldName = sweField.getName();
 				Field field = requestedFields.get(fieldName);
 				if (field == null) {
 					field = new Field(fieldName, false);
 				} else {
 					field.index = i;
-					field.uom = exprFieldUom.evaluate(fieldNode);
+					field.uom = sweField.getUom();
 				}
+				field.decimalSep = decimalSep;
 				fields.add(field);
 			}
 
-			String values = exprValues.evaluate(dataArrayNode);
-			String regexBlockSep = Pattern.quote(blockSep);
-			Pattern pattern = Pattern.compile("([^" + regexBlockSep + "$]+)(" + regexBlockSep + "|$)");
+			values = response.getValues();
+			reset();
+		}
 
-			matcher = pattern.matcher(values);
-			hasNext = matcher.find();
+		/**
+		 * Find the next non-empty block, starting at position.
+		 *
+		 * @return true if a block was found.
+		 */
+		private boolean findBlock() {
+			final int length = values.length();
+			while (position < length) {
+				int start = position;
+				int end = indexOf(values, blockSep, start, length);
+				if (end < 0) {
+					end = length;
+					position = length;
+				} else {
+					position = end + blockSep.length();
+				}
+				while (start < end && Character.isWhitespace(values.charAt(start))) {
+					start++;
+				}
+				while (end > start && Character.isWhitespace(values.charAt(end - 1))) {
+					end--;
+				}
+				if (start < end) {
+					blockStart = start;
+					blockEnd = end;
+					return true;
+				}
+			}
+			return false;
 		}
 
 		public void next() {
-			String block = matcher.group(1);
-			String[] split = StringUtils.split(block, tokenSep);
-			if (split.length != fields.size()) {
-				throw new IllegalArgumentException("Found " + split.length + " fields in block, expected " + fields.size());
-			}
-			for (int i = 0; i < split.length; i++) {
-				Field field = fields.get(i);
-				field.lastValue = split[i];
-				if (field.numeric) {
-					field.lastValue = field.lastValue.replace(decimalSep, ".");
+			final int fieldCount = fields.size();
+			int count = 0;
+			int pos = blockStart;
+			while (pos <= blockEnd) {
+				int end = indexOf(values, tokenSep, pos, blockEnd);
+				if (end < 0) {
+					end = blockEnd;
 				}
+				if (end > pos) {
+					if (count < fieldCount) {
+						fields.get(count).setRange(values, pos, end);
+					}
+					count++;
+				}
+				pos = end + tokenSep.length();
 			}
-			hasNext = matcher.find();
+			if (count != fieldCount) {
+				throw new IllegalArgumentException("Found " + count + " fields in block, expected " + fieldCount);
+			}
+			hasNext = findBlock();
 		}
 
 		public boolean hasNext() {
@@ -967,13 +1403,37 @@ public class ImporterAtAqd implements Importer, AnnotatedConfigurable<SensorThin
 		}
 
 		public void reset() {
-			matcher.reset();
-			hasNext = matcher.find();
+			position = 0;
+			hasNext = findBlock();
 		}
 
 		public int getElementCount() {
 			return elementCount;
 		}
 
+		private static int indexOf(CharSequence text, String search, int from, int to) {
+			final char first = search.charAt(0);
+			final int last = to - search.length();
+			for (int i = from; i <= last; i++) {
+				if (text.charAt(i) == first && regionMatches(text, i, to, search)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private static boolean regionMatches(CharSequence text, int offset, int to, String search) {
+			final int length = search.length();
+			if (offset + length > to) {
+				return false;
+			}
+			for (int i = 1; i < length; i++) {
+				if (text.charAt(offset + i) != search.charAt(i)) {
+					return false;
+				}
+			}
+			return text.charAt(offset) == search.charAt(0);
+		}
+
 	}
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.importers;
+
+import com.google.gson.JsonElement;
+import de.fraunhofer.iosb.ilt.configurable.AnnotatedConfigurable;
+import de.fraunhofer.iosb.ilt.configurable.ConfigEditor;
+import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
+import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorBoolean;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorSubclass;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.Importer;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.timegen.TimeGen;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.BulkDeleter;
+import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
+import de.fraunhofer.iosb.ilt.sta.Utils;
+import de.fraunhofer.iosb.ilt.sta.dao.BaseDao;
+import de.fraunhofer.iosb.ilt.sta.model.Datastream;
+import de.fraunhofer.iosb.ilt.sta.model.MultiDatastream;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import de.fraunhofer.iosb.ilt.sta.model.TimeObject;
+import de.fraunhofer.iosb.ilt.sta.query.Query;
+import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A maintenance job that does not import anything, but scans the Observations
+ * of Datastreams in phenomenonTime order, and deletes Observations that have
+ * the same phenomenonTime as an earlier Observation. Of each set of duplicates
+ * the Observation with the lowest id is kept.
+ *
+ * @author hylke
+ */
+public class ImporterDeduplicate implements Importer, AnnotatedConfigurable<SensorThingsService, Object> {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImporterDeduplicate.class);
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "Datastream Filter",
+			description = "The filter selecting the (Multi)Datastreams to scan. Leave empty to scan all.")
+	@EditorString.EdOptsString(dflt = "")
+	private String datastreamFilter;
+
+	@ConfigurableField(editor = EditorBoolean.class, optional = true,
+			label = "MultiDatastreams",
+			description = "Also scan MultiDatastreams.")
+	@EditorBoolean.EdOptsBool()
+	private boolean multiDatastreams;
+
+	@ConfigurableField(editor = EditorSubclass.class, optional = true,
+			label = "Scan From",
+			description = "Only scan Observations with a phenomenonTime after this time.")
+	@EditorSubclass.EdOptsSubclass(iface = TimeGen.class)
+	private TimeGen scanFrom;
+
+	private SensorThingsService service;
+	private boolean noAct = false;
+
+	@Override
+	public void configure(JsonElement config, SensorThingsService context, Object edtCtx, ConfigEditor<?> configEditor) throws ConfigurationException {
+		service = context;
+		AnnotatedConfigurable.super.configure(config, context, edtCtx, configEditor);
+	}
+
+	@Override
+	public void setVerbose(boolean verbose) {
+		// Nothing to be verbose about.
+	}
+
+	@Override
+	public void setNoAct(boolean noAct) {
+		this.noAct = noAct;
+	}
+
+	@Override
+	public Iterator<List<Observation>> iterator() {
+		try {
+			long total = 0;
+			Query<Datastream> dsQuery = service.datastreams().query().select("id", "name");
+			if (!Utils.isNullOrEmpty(datastreamFilter)) {
+				dsQuery.filter(datastreamFilter);
+			}
+			Iterator<Datastream> dsIt = dsQuery.top(1000).list().fullIterator();
+			while (dsIt.hasNext()) {
+				Datastream ds = dsIt.next();
+				String timeFilter = scanFrom == null ? "" : "phenomenonTime ge " + scanFrom.getInstant(ds).toString();
+				total += deduplicate(ds.observations(), ds.getName(), timeFilter);
+			}
+			if (multiDatastreams) {
+				Query<MultiDatastream> mdsQuery = service.multiDatastreams().query().select("id", "name");
+				if (!Utils.isNullOrEmpty(datastreamFilter)) {
+					mdsQuery.filter(datastreamFilter);
+				}
+				Iterator<MultiDatastream> mdsIt = mdsQuery.top(1000).list().fullIterator();
+				while (mdsIt.hasNext()) {
+					MultiDatastream mds = mdsIt.next();
+					String timeFilter = scanFrom == null ? "" : "phenomenonTime ge " + scanFrom.getInstant(mds).toString();
+					total += deduplicate(mds.observations(), mds.getName(), timeFilter);
+				}
+			}
+			LOGGER.info("Deduplication done, removed {} Observations.", total);
+		} catch (ServiceFailureException ex) {
+			throw new IllegalStateException("Failed to deduplicate.", ex);
+		}
+		return Collections.emptyIterator();
+	}
+
+	private int deduplicate(BaseDao<Observation> observations, String name, String timeFilter) throws ServiceFailureException {
+		Query<Observation> query = observations.query()
+				.select("id", "phenomenonTime")
+				.orderBy("phenomenonTime asc,id asc");
+		if (!timeFilter.isEmpty()) {
+			query.filter(timeFilter);
+		}
+		// Collect first, deleting while paging would shift the pages.
+		List<Observation> duplicates = new ArrayList<>();
+		TimeObject lastTime = null;
+		Iterator<Observation> it = query.top(10000).list().fullIterator();
+		while (it.hasNext()) {
+			Observation obs = it.next();
+			TimeObject phenomenonTime = obs.getPhenomenonTime();
+			if (phenomenonTime != null && phenomenonTime.equals(lastTime)) {
+				duplicates.add(obs);
+			} else {
+				lastTime = phenomenonTime;
+			}
+		}
+		if (duplicates.isEmpty()) {
+			return 0;
+		}
+		if (noAct) {
+			LOGGER.info("Dry Run: Not deleting {} duplicates from {}.", duplicates.size(), name);
+			return 0;
+		}
+		int deleted = BulkDeleter.getInstance().delete(duplicates);
+		LOGGER.info("Deleted {} of {} duplicates from {}.", deleted, duplicates.size(), name);
+		return deleted;
+	}
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.importers;
+
+import de.fraunhofer.iosb.ilt.configurable.AnnotatedConfigurable;
+import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorSubclass;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.Importer;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.CsvRow;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.DatastreamMapper;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.UrlGenerator;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.CompressionUtils;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.UrlUtils;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.document.DocumentParser;
+import de.fraunhofer.iosb.ilt.sta.model.Datastream;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports documents, one per url, using a DocumentParser. The documents are
+ * streamed to the parser, parsers that support it return the Observations in
+ * batches without loading the entire document.
+ *
+ * @author hylke
+ */
+public class ImporterDocument implements Importer, AnnotatedConfigurable<SensorThingsService, Object> {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImporterDocument.class);
+
+	@ConfigurableField(editor = EditorSubclass.class,
+			label = "Input Url", description = "The input url(s)")
+	@EditorSubclass.EdOptsSubclass(iface = UrlGenerator.class)
+	private UrlGenerator inputUrl;
+
+	@ConfigurableField(editor = EditorSubclass.class,
+			label = "Datastream Mapper", description = "The mapper that returns the Datastream for the documents. It is called without a record, so filter templates can not use columns.")
+	@EditorSubclass.EdOptsSubclass(iface = DatastreamMapper.class)
+	private DatastreamMapper dsMapper;
+
+	@ConfigurableField(editor = EditorSubclass.class,
+			label = "Document Parser", description = "The parser that turns documents into Observations.")
+	@EditorSubclass.EdOptsSubclass(iface = DocumentParser.class)
+	private DocumentParser documentParser;
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "Characterset", description = "The character set of the documents (default UTF-8).")
+	@EditorString.EdOptsString(dflt = "UTF-8")
+	private String charset;
+
+	@Override
+	public void setVerbose(boolean verbose) {
+		// Nothing to be verbose about.
+	}
+
+	@Override
+	public void setNoAct(boolean noAct) {
+		// Nothing to set.
+	}
+
+	@Override
+	public Iterator<List<Observation>> iterator() {
+		return new DocumentIterator(inputUrl.iterator());
+	}
+
+	private class DocumentIterator implements Iterator<List<Observation>>, Closeable {
+
+		private final Iterator<URL> urls;
+		private Iterator<List<Observation>> current = Collections.emptyIterator();
+
+		public DocumentIterator(Iterator<URL> urls) {
+			this.urls = urls;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!current.hasNext()) {
+				if (!urls.hasNext()) {
+					return false;
+				}
+				current = open(urls.next());
+			}
+			return true;
+		}
+
+		@Override
+		public List<Observation> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return current.next();
+		}
+
+		/**
+		 * Close the document that is being read, and the url iterator if it
+		 * holds resources.
+		 */
+		@Override
+		public void close() {
+			closeQuietly(current);
+			current = Collections.emptyIterator();
+			closeQuietly(urls);
+		}
+
+		private void closeQuietly(Object closeable) {
+			if (closeable instanceof AutoCloseable) {
+				try {
+					((AutoCloseable) closeable).close();
+				} catch (Exception ex) {
+					LOGGER.debug("Failed to close.", ex);
+				}
+			}
+		}
+
+		private Iterator<List<Observation>> open(URL url) {
+			try {
+				Datastream ds = dsMapper.getDatastreamFor((CsvRow) null);
+				if (ds == null) {
+					LOGGER.error("No Datastream found for {}", url);
+					return Collections.emptyIterator();
+				}
+				Charset cs = Charset.forName(charset);
+				InputStream raw = UrlUtils.openStream(url);
+				InputStream input;
+				try {
+					input = CompressionUtils.decompress(url.getPath(), raw);
+				} catch (IOException | RuntimeException ex) {
+					closeQuietly(raw);
+					throw ex;
+				}
+				return documentParser.process(ds, input, cs);
+			} catch (ImportException | IOException ex) {
+				LOGGER.error("Failed to handle URL: {}; {}", url, ex.getMessage());
+				return Collections.emptyIterator();
+			} catch (RuntimeException ex) {
+				// For instance a mapper that needs a record to fill its template.
+				LOGGER.error("Failed to handle URL: {}; {}", url, ex.toString());
+				LOGGER.debug("Exception:", ex);
+				return Collections.emptyIterator();
+			}
+		}
+	}
+
+}
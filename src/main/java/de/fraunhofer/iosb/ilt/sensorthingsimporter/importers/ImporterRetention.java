@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.importers;
+
+import com.google.gson.JsonElement;
+import de.fraunhofer.iosb.ilt.configurable.AnnotatedConfigurable;
+import de.fraunhofer.iosb.ilt.configurable.ConfigEditor;
+import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
+import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorBoolean;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorSubclass;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.Importer;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.timegen.TimeGen;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.BulkDeleter;
+import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
+import de.fraunhofer.iosb.ilt.sta.Utils;
+import de.fraunhofer.iosb.ilt.sta.dao.BaseDao;
+import de.fraunhofer.iosb.ilt.sta.model.Datastream;
+import de.fraunhofer.iosb.ilt.sta.model.MultiDatastream;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import de.fraunhofer.iosb.ilt.sta.query.Query;
+import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A maintenance job that does not import anything, but deletes Observations
+ * with a phenomenonTime before a cutoff time.
+ *
+ * @author hylke
+ */
+public class ImporterRetention implements Importer, AnnotatedConfigurable<SensorThingsService, Object> {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImporterRetention.class);
+
+	@ConfigurableField(editor = EditorString.class, optional = true,
+			label = "Datastream Filter",
+			description = "The filter selecting the (Multi)Datastreams to clean. Leave empty to clean all.")
+	@EditorString.EdOptsString(dflt = "")
+	private String datastreamFilter;
+
+	@ConfigurableField(editor = EditorBoolean.class, optional = true,
+			label = "MultiDatastreams",
+			description = "Also clean MultiDatastreams.")
+	@EditorBoolean.EdOptsBool()
+	private boolean multiDatastreams;
+
+	@ConfigurableField(editor = EditorBoolean.class, optional = true,
+			label = "Filtered Delete",
+			description = "Delete with a single filtered DELETE request on the Observations collection. Only enable for servers known to support this, a server that ignores the filter deletes all Observations of the Datastream.")
+	@EditorBoolean.EdOptsBool()
+	private boolean filteredDelete;
+
+	@ConfigurableField(editor = EditorSubclass.class,
+			label = "Cutoff",
+			description = "Observations with a phenomenonTime before this time are deleted.")
+	@EditorSubclass.EdOptsSubclass(iface = TimeGen.class)
+	private TimeGen cutoff;
+
+	private SensorThingsService service;
+	private boolean noAct = false;
+
+	@Override
+	public void configure(JsonElement config, SensorThingsService context, Object edtCtx, ConfigEditor<?> configEditor) throws ConfigurationException {
+		service = context;
+		AnnotatedConfigurable.super.configure(config, context, edtCtx, configEditor);
+	}
+
+	@Override
+	public void setVerbose(boolean verbose) {
+		// Nothing to be verbose about.
+	}
+
+	@Override
+	public void setNoAct(boolean noAct) {
+		this.noAct = noAct;
+	}
+
+	@Override
+	public Iterator<List<Observation>> iterator() {
+		try {
+			Query<Datastream> dsQuery = service.datastreams().query().select("id", "name");
+			if (!Utils.isNullOrEmpty(datastreamFilter)) {
+				dsQuery.filter(datastreamFilter);
+			}
+			Iterator<Datastream> dsIt = dsQuery.top(1000).list().fullIterator();
+			while (dsIt.hasNext()) {
+				Datastream ds = dsIt.next();
+				clean("Datastreams(" + ds.getId().getUrl() + ")/Observations", ds.observations(), ds.getName(), cutoff.getInstant(ds));
+			}
+			if (multiDatastreams) {
+				Query<MultiDatastream> mdsQuery = service.multiDatastreams().query().select("id", "name");
+				if (!Utils.isNullOrEmpty(datastreamFilter)) {
+					mdsQuery.filter(datastreamFilter);
+				}
+				Iterator<MultiDatastream> mdsIt = mdsQuery.top(1000).list().fullIterator();
+				while (mdsIt.hasNext()) {
+					MultiDatastream mds = mdsIt.next();
+					clean("MultiDatastreams(" + mds.getId().getUrl() + ")/Observations", mds.observations(), mds.getName(), cutoff.getInstant(mds));
+				}
+			}
+		} catch (ServiceFailureException ex) {
+			throw new IllegalStateException("Failed to clean up Observations.", ex);
+		}
+		return Collections.emptyIterator();
+	}
+
+	private void clean(String path, BaseDao<Observation> observations, String name, Instant before) throws ServiceFailureException {
+		String filter = "phenomenonTime lt " + before.toString();
+		if (noAct) {
+			Observation first = observations.query().select("id").filter(filter).first();
+			if (first != null) {
+				LOGGER.info("Dry Run: Not deleting Observations before {} from {}.", before, name);
+			}
+			return;
+		}
+		long deleted = BulkDeleter.getInstance().deleteByFilter(service, path, observations, filter, filteredDelete);
+		if (deleted < 0) {
+			LOGGER.info("Deleted Observations before {} from {}.", before, name);
+		} else if (deleted > 0) {
+			LOGGER.info("Deleted {} Observations before {} from {}.", deleted, before, name);
+		}
+	}
+
+}
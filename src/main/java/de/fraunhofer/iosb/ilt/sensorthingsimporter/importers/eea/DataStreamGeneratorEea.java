@@ -23,6 +23,7 @@ import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
 import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.CsvRow;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.DatastreamGenerator;
 import static de.fraunhofer.iosb.ilt.sensorthingsimporter.importers.eea.EeaConstants.TAG_AREA_TYPE;
 import static de.fraunhofer.iosb.ilt.sensorthingsimporter.importers.eea.EeaConstants.TAG_BEGIN_TIME;
@@ -89,7 +90,7 @@ public class DataStreamGeneratorEea implements DatastreamGenerator, AnnotatedCon
 	}
 
 	@Override
-	public Datastream createDatastreamFor(CSVRecord record) throws ImportException {
+	public Datastream createDatastreamFor(CsvRow record) throws ImportException {
 		EeaStationRecord stationRecord = findStation(record);
 		if (stationRecord == null) {
 			return null;
@@ -97,7 +98,7 @@ public class DataStreamGeneratorEea implements DatastreamGenerator, AnnotatedCon
 		return importEntities(stationRecord, record);
 	}
 
-	private Datastream importEntities(EeaStationRecord sr, CSVRecord record) throws ImportException {
+	private Datastream importEntities(EeaStationRecord sr, CsvRow record) throws ImportException {
 		String name = sr.airQualityStation;
 		Point point = new Point(
 				new BigDecimal(sr.longitude).setScale(6, RoundingMode.HALF_EVEN).doubleValue(),
@@ -185,7 +186,7 @@ public class DataStreamGeneratorEea implements DatastreamGenerator, AnnotatedCon
 		}
 	}
 
-	private String getFromRecord(CSVRecord record, String... names) {
+	private String getFromRecord(CsvRow record, String... names) {
 		for (String name : names) {
 			try {
 				return record.get(name);
@@ -196,7 +197,7 @@ public class DataStreamGeneratorEea implements DatastreamGenerator, AnnotatedCon
 		throw new IllegalArgumentException("Could not find any of names in record: " + names);
 	}
 
-	private EeaStationRecord findStation(CSVRecord record) throws ImportException {
+	private EeaStationRecord findStation(CsvRow record) throws ImportException {
 		loadStationData();
 		loadObservedProperties();
 		String stationLocalId = getFromRecord(record, "station_localid", "AirQualityStation");
@@ -241,7 +242,7 @@ public class DataStreamGeneratorEea implements DatastreamGenerator, AnnotatedCon
 			Iterator<CSVRecord> iterator = stationParser.iterator();
 			while (iterator.hasNext()) {
 				CSVRecord record = iterator.next();
-				EeaStationRecord station = new EeaStationRecord(record);
+				EeaStationRecord station = new EeaStationRecord(CsvRow.wrap(record));
 				STATIONS.computeIfAbsent(station.airQualityStation, (t) -> new HashMap<>())
 						.computeIfAbsent(station.samplingPoint, (t) -> new HashMap<>())
 						.put(station.samplingProces, station);
@@ -281,7 +282,7 @@ public class DataStreamGeneratorEea implements DatastreamGenerator, AnnotatedCon
 		String buildingDistance;
 		String kerbDistance;
 
-		public EeaStationRecord(CSVRecord record) {
+		public EeaStationRecord(CsvRow record) {
 			countrycode = record.get("Countrycode");
 			timezone = record.get("Timezone");
 			namespace = record.get("Namespace");
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.importers.eea;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The parts of a SOS GetObservation response that are needed to import the
+ * observations of a SamplingPoint, read in one forward pass over the response
+ * with StAX. Only the first OM_Observation in the response is read, the rest
+ * of the response is not parsed.
+ *
+ * @author hylke
+ */
+public class SosObservationResponse {
+
+	public static final String NS_OM = "http://www.opengis.net/om/2.0";
+	public static final String NS_SWE = "http://www.opengis.net/swe/2.0";
+	public static final String NS_XLINK = "http://www.w3.org/1999/xlink";
+	public static final String PARAMETER_SAMPLING_POINT = "http://dd.eionet.europa.eu/vocabulary/aq/processparameter/SamplingPoint";
+
+	private static final XMLInputFactory FACTORY = createFactory();
+
+	/**
+	 * A field of the swe:DataRecord of the result.
+	 */
+	public static class SweField {
+
+		private final String name;
+		private String uom;
+
+		public SweField(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return The href of the first uom in the field, or an empty String.
+		 */
+		public String getUom() {
+			return uom == null ? "" : uom;
+		}
+
+	}
+
+	private String featureOfInterest = "";
+	private String samplingPoint = "";
+	private boolean hasDataArray;
+	private int elementCount = -1;
+	private final List<SweField> fields = new ArrayList<>();
+	private String decimalSeparator;
+	private String blockSeparator;
+	private String tokenSeparator;
+	private String values = "";
+
+	private SosObservationResponse() {
+		// Created by parse.
+	}
+
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
+
+	/**
+	 * Read the response from the given stream. The stream is read while it
+	 * is being downloaded, so fetching and parsing overlap. The stream is not
+	 * closed.
+	 *
+	 * @param input The stream to read the response from.
+	 * @return The parsed response.
+	 * @throws XMLStreamException If the response is not valid XML.
+	 */
+	public static SosObservationResponse parse(InputStream input) throws XMLStreamException {
+		SosObservationResponse response = new SosObservationResponse();
+		XMLStreamReader reader = FACTORY.createXMLStreamReader(input);
+		try {
+			response.read(reader);
+		} finally {
+			reader.close();
+		}
+		return response;
+	}
+
+	private void read(XMLStreamReader reader) throws XMLStreamException {
+		List<String> path = new ArrayList<>();
+		String parameterName = null;
+		String parameterValue = null;
+		boolean inComponents = false;
+		SweField field = null;
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = key(reader.getNamespaceURI(), reader.getLocalName());
+				path.add(name);
+				switch (name) {
+					case "om:featureOfInterest":
+						if (featureOfInterest.isEmpty() && parentIs(path, "om:OM_Observation")) {
+							featureOfInterest = href(reader);
+						}
+						break;
+
+					case "om:NamedValue":
+						parameterName = null;
+						parameterValue = null;
+						break;
+
+					case "om:name":
+						if (parentIs(path, "om:NamedValue")) {
+							parameterName = href(reader);
+						}
+						break;
+
+					case "om:value":
+						if (parentIs(path, "om:NamedValue")) {
+							parameterValue = href(reader);
+						}
+						break;
+
+					case "swe:DataArray":
+						if (!hasDataArray) {
+							hasDataArray = parentIs(path, "om:result");
+						}
+						break;
+
+					case "swe:elementType":
+						inComponents = hasDataArray && "Components".equals(reader.getAttributeValue(null, "name"));
+						break;
+
+					case "swe:field":
+						if (inComponents && parentIs(path, "swe:DataRecord")) {
+							field = new SweField(reader.getAttributeValue(null, "name"));
+							fields.add(field);
+						}
+						break;
+
+					case "swe:uom":
+						if (field != null && field.uom == null) {
+							field.uom = href(reader);
+						}
+						break;
+
+					case "swe:value":
+						if (hasDataArray && elementCount < 0 && parentIs(path, "swe:Count")) {
+							elementCount = Integer.parseInt(reader.getElementText().trim());
+							path.remove(path.size() - 1);
+						}
+						break;
+
+					case "swe:TextEncoding":
+						if (hasDataArray && decimalSeparator == null) {
+							decimalSeparator = reader.getAttributeValue(null, "decimalSeparator");
+							blockSeparator = reader.getAttributeValue(null, "blockSeparator");
+							tokenSeparator = reader.getAttributeValue(null, "tokenSeparator");
+						}
+						break;
+
+					case "swe:values":
+						if (hasDataArray) {
+							values = reader.getElementText();
+							path.remove(path.size() - 1);
+						}
+						break;
+
+					default:
+					// Not interesting.
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				String name = path.remove(path.size() - 1);
+				switch (name) {
+					case "om:NamedValue":
+						if (PARAMETER_SAMPLING_POINT.equals(parameterName) && samplingPoint.isEmpty() && parameterValue != null) {
+							samplingPoint = parameterValue;
+						}
+						break;
+
+					case "swe:field":
+						field = null;
+						break;
+
+					case "swe:elementType":
+						inComponents = false;
+						break;
+
+					case "om:OM_Observation":
+						// Only the first observation is used.
+						return;
+
+					default:
+					// Not interesting.
+				}
+			}
+		}
+	}
+
+	private static boolean parentIs(List<String> path, String parent) {
+		return path.size() > 1 && parent.equals(path.get(path.size() - 2));
+	}
+
+	private static String key(String namespace, String localName) {
+		if (NS_OM.equals(namespace)) {
+			return "om:" + localName;
+		}
+		if (NS_SWE.equals(namespace)) {
+			return "swe:" + localName;
+		}
+		return localName;
+	}
+
+	private static String href(XMLStreamReader reader) {
+		String href = reader.getAttributeValue(NS_XLINK, "href");
+		return href == null ? "" : href;
+	}
+
+	/**
+	 * @return The href of the featureOfInterest, or an empty String.
+	 */
+	public String getFeatureOfInterest() {
+		return featureOfInterest;
+	}
+
+	/**
+	 * @return The href of the SamplingPoint parameter, or an empty String.
+	 */
+	public String getSamplingPoint() {
+		return samplingPoint;
+	}
+
+	/**
+	 * @return true if the observation has a swe:DataArray result.
+	 */
+	public boolean hasDataArray() {
+		return hasDataArray;
+	}
+
+	public int getElementCount() {
+		return elementCount;
+	}
+
+	public List<SweField> getFields() {
+		return Collections.unmodifiableList(fields);
+	}
+
+	public String getDecimalSeparator() {
+		return decimalSeparator;
+	}
+
+	public String getBlockSeparator() {
+		return blockSeparator;
+	}
+
+	public String getTokenSeparator() {
+		return tokenSeparator;
+	}
+
+	/**
+	 * @return The text of the swe:values element.
+	 */
+	public String getValues() {
+		return values;
+	}
+
+}
@@ -22,10 +22,13 @@ import de.fraunhofer.iosb.ilt.configurable.AbstractConfigurable;
 import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
 import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorClass;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorInt;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorList;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorLong;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.Options;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.BulkDeleter;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.ChangingStatusLogger;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.SharedEntityCache;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
@@ -68,6 +71,30 @@ public class ImporterScheduler extends AbstractConfigurable<Void, Void> {
 	@EditorLong.EdOptsLong(dflt = DEFAULT_LOG_INTERVAL)
 	private long logInterval = DEFAULT_LOG_INTERVAL;
 
+	@ConfigurableField(editor = EditorLong.class, optional = true,
+			label = "SharedCacheTtl",
+			description = "Time in seconds that entities loaded by one job are kept for use by following jobs. 0 disables the shared cache.")
+	@EditorLong.EdOptsLong(dflt = SharedEntityCache.DEFAULT_TTL_SECONDS)
+	private long sharedCacheTtl = SharedEntityCache.DEFAULT_TTL_SECONDS;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "SharedCacheSize",
+			description = "The maximum number of entries in the shared cache.")
+	@EditorInt.EdOptsInt(dflt = SharedEntityCache.DEFAULT_MAX_ENTRIES, min = 0, max = Integer.MAX_VALUE, step = 1)
+	private int sharedCacheSize = SharedEntityCache.DEFAULT_MAX_ENTRIES;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "DeleteThreads",
+			description = "The number of threads used for deleting entities, shared by all jobs.")
+	@EditorInt.EdOptsInt(dflt = BulkDeleter.DEFAULT_THREADS, min = 1, max = 1000, step = 1)
+	private int deleteThreads = BulkDeleter.DEFAULT_THREADS;
+
+	@ConfigurableField(editor = EditorInt.class, optional = true,
+			label = "DeleteRate",
+			description = "The maximum number of delete requests per second, shared by all jobs. 0 for no limit.")
+	@EditorInt.EdOptsInt(dflt = BulkDeleter.DEFAULT_MAX_PER_SECOND, min = 0, max = Integer.MAX_VALUE, step = 1)
+	private int deleteRate = BulkDeleter.DEFAULT_MAX_PER_SECOND;
+
 	private boolean noAct = false;
 	private Scheduler scheduler;
 	private File basePath;
@@ -96,6 +123,8 @@ public class ImporterScheduler extends AbstractConfigurable<Void, Void> {
 		scheduler.start();
 		STATUS_LOGGER.setLogIntervalMs(logInterval);
 		STATUS_LOGGER.start();
+		SharedEntityCache.getInstance().setLimits(sharedCacheTtl, sharedCacheSize);
+		BulkDeleter.getInstance().setLimits(deleteThreads, deleteRate);
 
 		int i = 0;
 		for (final Schedule schedule : schedules) {
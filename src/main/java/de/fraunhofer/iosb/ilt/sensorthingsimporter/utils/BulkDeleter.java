@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils;
+
+import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
+import de.fraunhofer.iosb.ilt.sta.dao.BaseDao;
+import de.fraunhofer.iosb.ilt.sta.model.Entity;
+import de.fraunhofer.iosb.ilt.sta.model.ext.EntityList;
+import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes entities using a JVM-wide, rate-limited thread pool, so that deletes
+ * do not compete with the imports for connections to the server.
+ *
+ * @author hylke
+ */
+public class BulkDeleter {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(BulkDeleter.class);
+
+	public static final int DEFAULT_THREADS = 10;
+	public static final int DEFAULT_MAX_PER_SECOND = 50;
+
+	/**
+	 * The number of ids fetched per request when deleting by filter on a
+	 * server that does not support filtered collection deletes.
+	 */
+	private static final int ID_PAGE_SIZE = 1000;
+
+	private static final BulkDeleter INSTANCE = new BulkDeleter();
+
+	private final ThreadPoolExecutor executor;
+	private long intervalNanos = TimeUnit.SECONDS.toNanos(1) / DEFAULT_MAX_PER_SECOND;
+	private long nextSlot = 0;
+
+	private BulkDeleter() {
+		final AtomicInteger threadNr = new AtomicInteger();
+		executor = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r) -> {
+			Thread thread = new Thread(r, "BulkDeleter-" + threadNr.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static BulkDeleter getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Set the number of threads and the maximum number of delete requests per
+	 * second.
+	 *
+	 * @param threads The number of threads to use.
+	 * @param maxPerSecond The maximum number of delete requests per second, 0
+	 * for no limit.
+	 */
+	public synchronized void setLimits(int threads, int maxPerSecond) {
+		LOGGER.info("Bulk deleter: {} threads, max {} deletes/s.", threads, maxPerSecond);
+		int count = Math.max(1, threads);
+		if (count > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(count);
+			executor.setCorePoolSize(count);
+		} else {
+			executor.setCorePoolSize(count);
+			executor.setMaximumPoolSize(count);
+		}
+		intervalNanos = maxPerSecond <= 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / maxPerSecond;
+	}
+
+	/**
+	 * Wait until the rate limit allows the next request.
+	 */
+	private void acquire() throws InterruptedException {
+		long waitNanos;
+		synchronized (this) {
+			long now = System.nanoTime();
+			if (nextSlot < now) {
+				nextSlot = now;
+			}
+			waitNanos = nextSlot - now;
+			nextSlot += intervalNanos;
+		}
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	private Future<Boolean> submit(Entity entity) {
+		return executor.submit(() -> {
+			acquire();
+			try {
+				entity.getService().delete(entity);
+				return true;
+			} catch (ServiceFailureException ex) {
+				LOGGER.error("Failed to delete {}: {}", entity, ex.getMessage());
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * Delete the given entities, and wait for the deletes to finish.
+	 *
+	 * @param entities The entities to delete.
+	 * @return The number of entities that were deleted.
+	 */
+	public int delete(List<? extends Entity> entities) {
+		List<Future<Boolean>> futures = new ArrayList<>();
+		for (Entity entity : entities) {
+			futures.add(submit(entity));
+		}
+		int deleted = 0;
+		for (Future<Boolean> f : futures) {
+			try {
+				if (f.get()) {
+					deleted++;
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				LOGGER.warn("Interrupted while waiting for deletes.");
+				return deleted;
+			} catch (ExecutionException ex) {
+				LOGGER.error("Maybe Failed to delete?", ex);
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * Queue the given entities for deletion, without waiting for the deletes
+	 * to finish.
+	 *
+	 * @param entities The entities to delete.
+	 */
+	public void deleteAsync(List<? extends Entity> entities) {
+		for (Entity entity : entities) {
+			submit(entity);
+		}
+	}
+
+	/**
+	 * Delete all entities in a collection that match the given filter. If
+	 * tryFilteredDelete is set, a filtered delete on the collection is tried
+	 * first. If the server does not support that, or tryFilteredDelete is not
+	 * set, the ids of the matching entities are fetched and the entities are
+	 * deleted one by one.
+	 *
+	 * A filtered delete on a collection is not part of the SensorThings API
+	 * standard. A server that ignores the filter deletes the entire
+	 * collection, so only set tryFilteredDelete for servers that are known to
+	 * support it.
+	 *
+	 * @param <T> The type of the entities to delete.
+	 * @param service The service to delete from.
+	 * @param collectionPath The path of the collection, relative to the
+	 * service root, for example "Datastreams(5)/Observations".
+	 * @param dao The dao for the same collection, used as fallback.
+	 * @param filter The filter selecting the entities to delete.
+	 * @param tryFilteredDelete Try a filtered delete on the collection first.
+	 * @return The number of deleted entities, or -1 if the server deleted
+	 * the entities in one go, without reporting a count.
+	 * @throws ServiceFailureException If fetching the entities fails.
+	 */
+	public <T extends Entity<T>> long deleteByFilter(SensorThingsService service, String collectionPath, BaseDao<T> dao, String filter, boolean tryFilteredDelete) throws ServiceFailureException {
+		if (tryFilteredDelete && deleteCollection(service, collectionPath, filter)) {
+			return -1;
+		}
+		long deleted = 0;
+		while (true) {
+			EntityList<T> list = dao.query().select("id").filter(filter).top(ID_PAGE_SIZE).list();
+			List<T> batch = new ArrayList<>();
+			Iterator<T> it = list.iterator();
+			while (it.hasNext()) {
+				batch.add(it.next());
+			}
+			if (batch.isEmpty()) {
+				return deleted;
+			}
+			int count = delete(batch);
+			deleted += count;
+			if (count == 0) {
+				LOGGER.error("Failed to delete any of {} entities from {}, giving up.", batch.size(), collectionPath);
+				return deleted;
+			}
+		}
+	}
+
+	private boolean deleteCollection(SensorThingsService service, String collectionPath, String filter) {
+		String base = service.getEndpoint().toString();
+		if (!base.endsWith("/")) {
+			base += "/";
+		}
+		try {
+			String url = base + collectionPath + "?$filter=" + URLEncoder.encode(filter, "UTF-8").replace("+", "%20");
+			acquire();
+			HttpDelete delete = new HttpDelete(url);
+			try (CloseableHttpResponse response = service.getClient().execute(delete)) {
+				int code = response.getStatusLine().getStatusCode();
+				EntityUtils.consumeQuietly(response.getEntity());
+				if (code >= 200 && code < 300) {
+					LOGGER.debug("Deleted entities from {} with filter {}", collectionPath, filter);
+					return true;
+				}
+				LOGGER.debug("Server does not support filtered delete on {}: {}", collectionPath, code);
+			}
+		} catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException("UTF-8 not supported?", ex);
+		} catch (IOException ex) {
+			LOGGER.warn("Filtered delete on {} failed: {}", collectionPath, ex.getMessage());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+}
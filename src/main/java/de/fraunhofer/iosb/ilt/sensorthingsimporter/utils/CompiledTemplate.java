@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils;
+
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.CsvRow;
+import de.fraunhofer.iosb.ilt.sta.Utils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A template with {colNr} or {colName} placeholders, parsed once. Filling the
+ * template only appends the literal parts and the column values to a
+ * per-thread buffer.
+ *
+ * @author hylke
+ */
+public class CompiledTemplate {
+
+	private static final Pattern PLACE_HOLDER_PATTERN = Pattern.compile("\\{([0-9a-zA-Z_]+)\\}");
+
+	private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(StringBuilder::new);
+
+	/**
+	 * The literal parts of the template. There is one more literal than there
+	 * are placeholders.
+	 */
+	private final String[] literals;
+	/**
+	 * The column index of each placeholder, or -1 if the placeholder is a
+	 * column name.
+	 */
+	private final int[] columns;
+	/**
+	 * The column name of each placeholder, or null if the placeholder is a
+	 * column index.
+	 */
+	private final String[] names;
+	private final boolean escapeForUrl;
+	private final boolean escapeForJson;
+	private final String key;
+
+	private CompiledTemplate(String source, String[] literals, int[] columns, String[] names, boolean escapeForUrl, boolean escapeForJson) {
+		this.key = (escapeForUrl ? 'U' : '-') + (escapeForJson ? "J|" : "-|") + source;
+		this.literals = literals;
+		this.columns = columns;
+		this.names = names;
+		this.escapeForUrl = escapeForUrl;
+		this.escapeForJson = escapeForJson;
+	}
+
+	/**
+	 * Parse the given template.
+	 *
+	 * @param template The template to parse.
+	 * @param escapeForUrl Escape the values for use in a string constant in a
+	 * filter.
+	 * @param escapeForJson Escape backslashes and newlines in the values.
+	 * @param removeNewlines Remove newlines from the template.
+	 * @return The parsed template.
+	 */
+	public static CompiledTemplate compile(String template, boolean escapeForUrl, boolean escapeForJson, boolean removeNewlines) {
+		String source = template == null ? "" : template;
+		if (removeNewlines) {
+			source = StringUtils.remove(source, "\n");
+		}
+		List<String> literals = new ArrayList<>();
+		List<Integer> columns = new ArrayList<>();
+		List<String> names = new ArrayList<>();
+		Matcher matcher = PLACE_HOLDER_PATTERN.matcher(source);
+		int pos = 0;
+		while (matcher.find()) {
+			literals.add(source.substring(pos, matcher.start()));
+			String placeHolder = matcher.group(1);
+			if (isDigits(placeHolder)) {
+				columns.add(Integer.valueOf(placeHolder));
+				names.add(null);
+			} else {
+				columns.add(-1);
+				names.add(placeHolder);
+			}
+			pos = matcher.end();
+		}
+		literals.add(source.substring(pos));
+		int[] columnArray = new int[columns.size()];
+		for (int i = 0; i < columnArray.length; i++) {
+			columnArray[i] = columns.get(i);
+		}
+		return new CompiledTemplate(
+				source,
+				literals.toArray(new String[literals.size()]),
+				columnArray,
+				names.toArray(new String[names.size()]),
+				escapeForUrl,
+				escapeForJson);
+	}
+
+	private static boolean isDigits(String value) {
+		if (value.isEmpty() || value.length() > 9) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return A key that is the same for templates that give the same
+	 * results.
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return true if the template has no placeholders.
+	 */
+	public boolean isConstant() {
+		return columns.length == 0;
+	}
+
+	/**
+	 * Fill the template with the values of the given record.
+	 *
+	 * @param record The record to take the values from.
+	 * @return The filled template.
+	 */
+	public String fill(CsvRow record) {
+		if (columns.length == 0) {
+			return literals[0];
+		}
+		StringBuilder buffer = BUFFER.get();
+		buffer.setLength(0);
+		fill(record, buffer);
+		return buffer.toString();
+	}
+
+	/**
+	 * Fill the template with the values of the given record, appending the
+	 * result to the given buffer.
+	 *
+	 * @param record The record to take the values from.
+	 * @param target The buffer to append to.
+	 */
+	public void fill(CsvRow record, StringBuilder target) {
+		final int count = columns.length;
+		for (int i = 0; i < count; i++) {
+			target.append(literals[i]);
+			final int column = columns[i];
+			String value = column >= 0 ? record.get(column) : record.get(names[i]);
+			if (escapeForUrl) {
+				value = Utils.escapeForStringConstant(value);
+			}
+			if (escapeForJson) {
+				appendJsonEscaped(value, target);
+			} else {
+				target.append(value);
+			}
+		}
+		target.append(literals[count]);
+	}
+
+	private static void appendJsonEscaped(String value, StringBuilder target) {
+		if (value == null) {
+			target.append((String) null);
+			return;
+		}
+		final int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c == '\\') {
+				target.append("\\\\");
+			} else if (c == '\n') {
+				target.append("\\n");
+			} else {
+				target.append(c);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+
+/**
+ * Detects and unpacks compressed (gzip, bzip2, xz) and archived (zip, tar)
+ * input. Compression and archive types are detected by the extension of the
+ * name, or else by the magic bytes at the start of the stream.
+ *
+ * @author hylke
+ */
+public class CompressionUtils {
+
+	public static final String ARCHIVE_ZIP = ArchiveStreamFactory.ZIP;
+	public static final String ARCHIVE_TAR = ArchiveStreamFactory.TAR;
+
+	/**
+	 * The number of bytes needed to detect the archive type. Tar headers are
+	 * 512 bytes.
+	 */
+	private static final int DETECT_BYTES = 512;
+
+	private CompressionUtils() {
+		// Utility class.
+	}
+
+	private static String extension(String name) {
+		if (name == null) {
+			return "";
+		}
+		String lower = name.toLowerCase(Locale.ROOT);
+		int idx = lower.lastIndexOf('.');
+		if (idx < 0 || idx < lower.lastIndexOf('/')) {
+			return "";
+		}
+		return lower.substring(idx + 1);
+	}
+
+	private static String compressorForName(String name) {
+		switch (extension(name)) {
+			case "gz":
+			case "tgz":
+				return CompressorStreamFactory.GZIP;
+
+			case "bz2":
+			case "tbz2":
+				return CompressorStreamFactory.BZIP2;
+
+			case "xz":
+			case "txz":
+				return CompressorStreamFactory.XZ;
+
+			default:
+				return null;
+		}
+	}
+
+	private static String archiveForName(String name) {
+		switch (extension(name)) {
+			case "zip":
+				return ARCHIVE_ZIP;
+
+			case "tar":
+			case "tgz":
+			case "tbz2":
+			case "txz":
+				return ARCHIVE_TAR;
+
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Check if the name has the extension of a compressed file or an archive.
+	 *
+	 * @param name The name to check.
+	 * @return true if the name indicates compression or an archive.
+	 */
+	public static boolean isPackedName(String name) {
+		return compressorForName(name) != null || archiveForName(name) != null;
+	}
+
+	/**
+	 * Remove the compression extension (.gz, .bz2, .xz) from the name, so the
+	 * name can be used to detect the type of the decompressed content.
+	 *
+	 * @param name The name to strip.
+	 * @return The name without compression extension.
+	 */
+	public static String stripCompression(String name) {
+		switch (extension(name)) {
+			case "gz":
+			case "bz2":
+			case "xz":
+				return name.substring(0, name.lastIndexOf('.'));
+
+			case "tgz":
+			case "tbz2":
+			case "txz":
+				return name.substring(0, name.lastIndexOf('.')) + ".tar";
+
+			default:
+				return name;
+		}
+	}
+
+	private static BufferedInputStream buffered(InputStream input) {
+		if (input instanceof BufferedInputStream) {
+			return (BufferedInputStream) input;
+		}
+		return new BufferedInputStream(input);
+	}
+
+	private static String detectCompressor(String name, BufferedInputStream input) {
+		String type = compressorForName(name);
+		if (type != null) {
+			return type;
+		}
+		try {
+			type = CompressorStreamFactory.detect(input);
+		} catch (CompressorException ex) {
+			return null;
+		}
+		switch (type) {
+			case CompressorStreamFactory.GZIP:
+			case CompressorStreamFactory.BZIP2:
+			case CompressorStreamFactory.XZ:
+				return type;
+
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Wrap the given stream in a decompressing stream, if the name or the
+	 * content indicate gzip, bzip2 or xz compression. Concatenated streams
+	 * are decompressed completely.
+	 *
+	 * @param name The name (file name or url) of the input, may be null.
+	 * @param input The stream to wrap.
+	 * @return The decompressed stream, or a buffered version of the input if
+	 * it is not compressed. The returned stream supports mark/reset.
+	 * @throws IOException if the compressed stream can not be opened.
+	 */
+	public static BufferedInputStream decompress(String name, InputStream input) throws IOException {
+		BufferedInputStream buffered = buffered(input);
+		String type = detectCompressor(name, buffered);
+		if (type == null) {
+			return buffered;
+		}
+		try {
+			return new BufferedInputStream(new CompressorStreamFactory(true).createCompressorInputStream(type, buffered));
+		} catch (CompressorException ex) {
+			throw new IOException("Failed to open " + type + " stream for " + name, ex);
+		}
+	}
+
+	/**
+	 * Detect if the given (decompressed) stream is a zip or tar archive.
+	 *
+	 * @param name The name of the input, without compression extension.
+	 * @param input The stream to check, must support mark/reset.
+	 * @return {@link #ARCHIVE_ZIP}, {@link #ARCHIVE_TAR} or null.
+	 */
+	public static String detectArchive(String name, BufferedInputStream input) {
+		String type = archiveForName(name);
+		if (type != null) {
+			return type;
+		}
+		try {
+			type = ArchiveStreamFactory.detect(input);
+		} catch (ArchiveException ex) {
+			return null;
+		}
+		if (ARCHIVE_ZIP.equals(type) || ARCHIVE_TAR.equals(type)) {
+			return type;
+		}
+		return null;
+	}
+
+	/**
+	 * Open an archive stream of the given type.
+	 *
+	 * @param type The type, {@link #ARCHIVE_ZIP} or {@link #ARCHIVE_TAR}.
+	 * @param input The stream to read the archive from.
+	 * @return The archive stream.
+	 */
+	public static ArchiveInputStream openArchive(String type, InputStream input) {
+		if (ARCHIVE_ZIP.equals(type)) {
+			return new ZipArchiveInputStream(input, "UTF-8", true, true);
+		}
+		return new TarArchiveInputStream(input);
+	}
+
+	/**
+	 * Check if the given file is compressed or an archive, by its name or its
+	 * first bytes.
+	 *
+	 * @param file The file to check.
+	 * @return true if the file is compressed or an archive.
+	 * @throws IOException if the file can not be read.
+	 */
+	public static boolean isPacked(File file) throws IOException {
+		String name = file.getName();
+		if (compressorForName(name) != null || archiveForName(name) != null) {
+			return true;
+		}
+		try (BufferedInputStream input = new BufferedInputStream(new FileInputStream(file), DETECT_BYTES)) {
+			return detectCompressor(name, input) != null || detectArchive(name, input) != null;
+		}
+	}
+
+}
@@ -16,16 +16,36 @@
  */
 package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
 import de.fraunhofer.iosb.ilt.sta.Utils;
 import de.fraunhofer.iosb.ilt.sta.dao.BaseDao;
+import de.fraunhofer.iosb.ilt.sta.jackson.ObjectMapperFactory;
 import de.fraunhofer.iosb.ilt.sta.model.Entity;
 import de.fraunhofer.iosb.ilt.sta.model.ext.EntityList;
 import de.fraunhofer.iosb.ilt.sta.query.Query;
+import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  *
@@ -34,34 +54,75 @@ import java.util.Map;
  */
 public class EntityCache<U, T extends Entity<T>> {
 
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(EntityCache.class);
+
+	/**
+	 * The number of entities requested per page.
+	 */
+	public static final int PAGE_SIZE = 1000;
+
+	private static final String SNAPSHOT_KEY = "key";
+	private static final String SNAPSHOT_MARKER = "marker";
+	private static final String SNAPSHOT_SAVED = "saved";
+	private static final String SNAPSHOT_ENTITIES = "entities";
+
 	private final Map<U, T> entitiesByLocalId = new LinkedHashMap<>();
 	private final Map<String, T> entitiesByName = new LinkedHashMap<>();
 
 	private final PropertyExtractor<U, T> localIdExtractor;
 	private final PropertyExtractor<String, T> nameExtractor;
 
+	/**
+	 * Optional cache, shared between jobs, that holds the results of load.
+	 */
+	private SharedEntityCache.EntityRegion<T> sharedCache;
+	private final Set<String> sharedKeys = new HashSet<>();
+
 	public EntityCache(PropertyExtractor<U, T> localIdExtractor, PropertyExtractor<String, T> nameExtractor) {
 		this.localIdExtractor = localIdExtractor;
 		this.nameExtractor = nameExtractor;
 	}
 
-	public T get(U localId) {
+	/**
+	 * Use the given region of the shared cache to store the results of load, so
+	 * that following jobs against the same service do not have to load the
+	 * entities again.
+	 *
+	 * @param sharedCache The shared cache region to use, or null.
+	 * @return this.
+	 */
+	public EntityCache<U, T> setSharedCache(SharedEntityCache.EntityRegion<T> sharedCache) {
+		this.sharedCache = sharedCache;
+		return this;
+	}
+
+	public synchronized T get(U localId) {
 		return entitiesByLocalId.get(localId);
 	}
 
-	public T getByName(String name) {
+	public synchronized T getByName(String name) {
 		return entitiesByName.get(name);
 	}
 
-	public boolean containsId(U localId) {
+	public synchronized boolean containsId(U localId) {
 		return entitiesByLocalId.containsKey(localId);
 	}
 
-	public void put(U localId, T entity) {
-		entitiesByLocalId.put(localId, entity);
+	public synchronized void put(U localId, T entity) {
+		T old = entitiesByLocalId.put(localId, entity);
+		if (old != entity && sharedCache != null) {
+			// The shared lists are no longer up to date.
+			for (String key : sharedKeys) {
+				sharedCache.remove(key);
+			}
+			sharedKeys.clear();
+		}
 	}
 
-	public boolean isEmpty() {
+	public synchronized boolean isEmpty() {
 		return entitiesByLocalId.isEmpty();
 	}
 
@@ -70,6 +131,106 @@ public class EntityCache<U, T extends Entity<T>> {
 	}
 
 	public int load(BaseDao<T> dao, String filter, String select, String expand) throws ServiceFailureException {
+		return load(dao, filter, select, expand, 0);
+	}
+
+	/**
+	 * Load all entities matching the filter into the cache. If threads is
+	 * larger than 0, the pages after the first are fetched in parallel using
+	 * $skip, with at most the given number of threads.
+	 *
+	 * @param dao The dao to load the entities from.
+	 * @param filter The filter to use, or null.
+	 * @param select The select to use, or an empty String.
+	 * @param expand The expand to use, or an empty String.
+	 * @param threads The number of threads to use for fetching pages, 0 to
+	 * fetch the pages one after the other.
+	 * @return The number of entities with a localId that were loaded.
+	 * @throws ServiceFailureException if loading fails.
+	 */
+	public synchronized int load(BaseDao<T> dao, String filter, String select, String expand, int threads) throws ServiceFailureException {
+		String sharedKey = filter + '|' + select + '|' + expand;
+		if (sharedCache != null) {
+			List<T> shared = sharedCache.getList(sharedKey);
+			if (shared != null) {
+				sharedKeys.add(sharedKey);
+				int count = 0;
+				for (T entity : shared) {
+					count += addEntity(entity);
+				}
+				return count;
+			}
+		}
+		List<T> loaded;
+		if (threads > 0) {
+			loaded = loadParallel(dao, filter, select, expand, threads);
+		} else {
+			loaded = new ArrayList<>();
+			Iterator<T> it = createQuery(dao, filter, select, expand).top(PAGE_SIZE).list().fullIterator();
+			while (it.hasNext()) {
+				loaded.add(it.next());
+			}
+		}
+		int count = 0;
+		for (T entitiy : loaded) {
+			count += addEntity(entitiy);
+		}
+		if (sharedCache != null) {
+			sharedCache.putList(sharedKey, loaded);
+			sharedKeys.add(sharedKey);
+		}
+		return count;
+	}
+
+	private List<T> loadParallel(BaseDao<T> dao, String filter, String select, String expand, int threads) throws ServiceFailureException {
+		EntityList<T> firstPage = createQuery(dao, filter, select, expand).count().orderBy("id asc").top(PAGE_SIZE).list();
+		List<T> loaded = new ArrayList<>(firstPage.toList());
+		long total = firstPage.getCount();
+		// The server may cap the page size, use what it actually returned.
+		final int pageSize = loaded.size();
+		if (total < 0 || pageSize == 0) {
+			// No count from the server, fall back to following the nextLinks.
+			loaded.clear();
+			Iterator<T> it = firstPage.fullIterator();
+			while (it.hasNext()) {
+				loaded.add(it.next());
+			}
+			return loaded;
+		}
+		if (total <= pageSize) {
+			return loaded;
+		}
+		int pageCount = (int) ((total - 1) / pageSize);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, pageCount));
+		try {
+			List<Future<List<T>>> futures = new ArrayList<>();
+			for (int page = 1; page <= pageCount; page++) {
+				final int skip = page * pageSize;
+				futures.add(executor.submit(() -> createQuery(dao, filter, select, expand)
+						.orderBy("id asc")
+						.skip(skip)
+						.top(pageSize)
+						.list()
+						.toList()));
+			}
+			for (Future<List<T>> f : futures) {
+				loaded.addAll(f.get());
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new ServiceFailureException("Interrupted while loading entities.", ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof ServiceFailureException) {
+				throw (ServiceFailureException) ex.getCause();
+			}
+			throw new ServiceFailureException("Failed to load entities.", ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return loaded;
+	}
+
+	private static <T extends Entity<T>> Query<T> createQuery(BaseDao<T> dao, String filter, String select, String expand) {
 		Query<T> query = dao.query();
 		if (!select.isEmpty()) {
 			query.select(select);
@@ -80,28 +241,163 @@ public class EntityCache<U, T extends Entity<T>> {
 		if (!Utils.isNullOrEmpty(filter)) {
 			query.filter(filter);
 		}
-		EntityList<T> entities = query.top(1000).list();
-		Iterator<T> it = entities.fullIterator();
+		return query;
+	}
+
+	private int addEntity(T entitiy) {
 		int count = 0;
-		while (it.hasNext()) {
-			T entitiy = it.next();
-			try {
-				U localId = localIdExtractor.extractFrom(entitiy);
-				if (localId != null) {
-					entitiesByLocalId.put(localId, entitiy);
-					count++;
-				}
-			} catch (RuntimeException ex) {
-				// probably no localId, ignore.
+		try {
+			U localId = localIdExtractor.extractFrom(entitiy);
+			if (localId != null) {
+				entitiesByLocalId.put(localId, entitiy);
+				count++;
 			}
-			if (nameExtractor != null) {
-				String name = nameExtractor.extractFrom(entitiy);
-				entitiesByName.put(name, entitiy);
+		} catch (RuntimeException ex) {
+			// probably no localId, ignore.
+		}
+		if (nameExtractor != null) {
+			String name = nameExtractor.extractFrom(entitiy);
+			entitiesByName.put(name, entitiy);
+		}
+		return count;
+	}
+
+	/**
+	 * Load the cache from a snapshot file, written by saveSnapshot. The
+	 * snapshot is only used if it was made with the same service, filter,
+	 * select and expand, and if the change marker of the server still matches.
+	 * The change marker consists of the number of entities matching the filter
+	 * and the highest id, and is fetched using a single, small request. Since
+	 * the marker does not change when entities are updated, snapshots older
+	 * than the given maximum age are not used either. Fields that change often,
+	 * like the phenomenonTime of Datastreams, should not be in the snapshot.
+	 *
+	 * @param file The file to load the snapshot from.
+	 * @param service The service to attach the loaded entities to.
+	 * @param dao The dao to use for checking the change marker.
+	 * @param entityClass The class of the entities in the snapshot.
+	 * @param filter The filter used to load the entities.
+	 * @param select The select used to load the entities.
+	 * @param expand The expand used to load the entities.
+	 * @param maxAgeMs The maximum age of the snapshot in milliseconds, 0 for
+	 * no limit.
+	 * @return The number of entities loaded, or -1 if the snapshot does not
+	 * exist or is not valid any more.
+	 * @throws ServiceFailureException if the change marker can not be fetched.
+	 */
+	public synchronized int loadSnapshot(File file, SensorThingsService service, BaseDao<T> dao, Class<T> entityClass, String filter, String select, String expand, long maxAgeMs) throws ServiceFailureException {
+		if (!file.isFile()) {
+			return -1;
+		}
+		ObjectMapper mapper = ObjectMapperFactory.get();
+		JsonNode snapshot;
+		try {
+			snapshot = mapper.readTree(file);
+		} catch (IOException ex) {
+			LOGGER.warn("Failed to read snapshot {}: {}", file, ex.getMessage());
+			return -1;
+		}
+		String key = snapshotKey(service, filter, select, expand);
+		if (!key.equals(snapshot.path(SNAPSHOT_KEY).asText())) {
+			LOGGER.debug("Snapshot {} was made with a different query.", file);
+			return -1;
+		}
+		long age = System.currentTimeMillis() - snapshot.path(SNAPSHOT_SAVED).asLong(0);
+		if (maxAgeMs > 0 && age > maxAgeMs) {
+			LOGGER.debug("Snapshot {} is too old: {}s.", file, age / 1000);
+			return -1;
+		}
+		String marker = changeMarker(dao, filter);
+		if (!marker.equals(snapshot.path(SNAPSHOT_MARKER).asText())) {
+			LOGGER.debug("Snapshot {} is outdated: {} != {}.", file, snapshot.path(SNAPSHOT_MARKER).asText(), marker);
+			return -1;
+		}
+		List<T> loaded = new ArrayList<>();
+		try {
+			for (JsonNode node : snapshot.path(SNAPSHOT_ENTITIES)) {
+				T entity = mapper.treeToValue(node, entityClass);
+				if (entity.getId() == null) {
+					LOGGER.warn("Snapshot {} contains entities without id.", file);
+					return -1;
+				}
+				entity.setService(service);
+				loaded.add(entity);
 			}
+		} catch (IOException ex) {
+			LOGGER.warn("Failed to parse snapshot {}: {}", file, ex.getMessage());
+			return -1;
+		}
+		int count = 0;
+		for (T entity : loaded) {
+			count += addEntity(entity);
+		}
+		if (sharedCache != null) {
+			String sharedKey = filter + '|' + select + '|' + expand;
+			sharedCache.putList(sharedKey, loaded);
+			sharedKeys.add(sharedKey);
 		}
 		return count;
 	}
 
+	/**
+	 * Check if the shared cache holds the result of a load with the given
+	 * parameters.
+	 *
+	 * @param filter The filter of the load.
+	 * @param select The select of the load.
+	 * @param expand The expand of the load.
+	 * @return true if the load can be served from the shared cache.
+	 */
+	public boolean isShared(String filter, String select, String expand) {
+		return sharedCache != null && sharedCache.containsKey(filter + '|' + select + '|' + expand);
+	}
+
+	/**
+	 * Write all entities in the cache to a snapshot file, together with the
+	 * current change marker of the server.
+	 *
+	 * @param file The file to write the snapshot to.
+	 * @param service The service the entities came from.
+	 * @param dao The dao to use for fetching the change marker.
+	 * @param filter The filter used to load the entities.
+	 * @param select The select used to load the entities.
+	 * @param expand The expand used to load the entities.
+	 * @throws ServiceFailureException if the change marker can not be fetched.
+	 * @throws IOException if the file can not be written.
+	 */
+	public synchronized void saveSnapshot(File file, SensorThingsService service, BaseDao<T> dao, String filter, String select, String expand) throws ServiceFailureException, IOException {
+		ObjectMapper mapper = ObjectMapperFactory.get();
+		ObjectNode snapshot = mapper.createObjectNode();
+		snapshot.put(SNAPSHOT_KEY, snapshotKey(service, filter, select, expand));
+		snapshot.put(SNAPSHOT_MARKER, changeMarker(dao, filter));
+		snapshot.put(SNAPSHOT_SAVED, System.currentTimeMillis());
+		ArrayNode entities = snapshot.putArray(SNAPSHOT_ENTITIES);
+		Set<T> all = Collections.newSetFromMap(new IdentityHashMap<>());
+		all.addAll(entitiesByLocalId.values());
+		all.addAll(entitiesByName.values());
+		for (T entity : all) {
+			if (entity != null && entity.getId() != null) {
+				entities.add(mapper.valueToTree(entity));
+			}
+		}
+		JsonFileStore.writeFile(mapper, file, snapshot);
+	}
+
+	private static String snapshotKey(SensorThingsService service, String filter, String select, String expand) {
+		return String.valueOf(service.getEndpoint()) + '|' + filter + '|' + select + '|' + expand;
+	}
+
+	private static <T extends Entity<T>> String changeMarker(BaseDao<T> dao, String filter) throws ServiceFailureException {
+		Query<T> query = dao.query().count().select("id").orderBy("id desc").top(1);
+		if (!Utils.isNullOrEmpty(filter)) {
+			query.filter(filter);
+		}
+		EntityList<T> list = query.list();
+		List<T> first = list.toList();
+		String maxId = first.isEmpty() ? "" : String.valueOf(first.get(0).getId().getValue());
+		return list.getCount() + "|" + maxId;
+	}
+
 	public Collection<T> values() {
 		return entitiesByLocalId.values();
 	}
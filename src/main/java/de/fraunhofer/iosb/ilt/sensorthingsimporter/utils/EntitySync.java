@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2020 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils;
+
+import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
+import de.fraunhofer.iosb.ilt.sta.model.Entity;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Synchronises a set of desired entities with the service, in bulk. The
+ * existing entities are taken from an EntityCache, that must have been loaded
+ * from the service (with a single bulk load) before sync is called. Entities
+ * that do not exist are created, entities that do exist are passed to the
+ * updater. Creates and updates are done concurrently.
+ *
+ * If a Finder is set, entities that are not in the cache are looked up in the
+ * service by their localId before they are created, so entities that were
+ * added since the cache was loaded are not created twice.
+ *
+ * Entities to be created may contain new related entities, that are then
+ * created in the same request using deep insert.
+ *
+ * If a FingerprintStore is set, existing entities whose desired state did not
+ * change since the last sync are skipped without comparing.
+ *
+ * @author hylke
+ * @param <U> The type of the localId.
+ * @param <T> The entity type to sync.
+ */
+public class EntitySync<U, T extends Entity<T>> {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(EntitySync.class);
+
+	private final FrostUtils frostUtils;
+	private final EntityCache<U, T> cache;
+	private final Updater<U, T> updater;
+	private final Map<U, T> desired = new LinkedHashMap<>();
+	private FingerprintStore fingerprints;
+	private String fingerprintPrefix;
+	private Finder<U, T> finder;
+
+	public EntitySync(FrostUtils frostUtils, EntityCache<U, T> cache, Updater<U, T> updater) {
+		this.frostUtils = frostUtils;
+		this.cache = cache;
+		this.updater = updater;
+	}
+
+	/**
+	 * Use the given store to skip entities that did not change since the last
+	 * sync.
+	 *
+	 * @param fingerprints The store to use.
+	 * @param prefix The prefix to put before the localId to make the key in
+	 * the store.
+	 * @return this.
+	 */
+	public EntitySync<U, T> setFingerprints(FingerprintStore fingerprints, String prefix) {
+		this.fingerprints = fingerprints;
+		this.fingerprintPrefix = prefix;
+		return this;
+	}
+
+	/**
+	 * Use the given finder to look up entities that are not in the cache.
+	 *
+	 * @param finder The finder to use.
+	 * @return this.
+	 */
+	public EntitySync<U, T> setFinder(Finder<U, T> finder) {
+		this.finder = finder;
+		return this;
+	}
+
+	/**
+	 * Add an entity to the set of desired entities.
+	 *
+	 * @param localId The localId of the entity.
+	 * @param entity The entity as it should be in the service.
+	 */
+	public void add(U localId, T entity) {
+		desired.put(localId, entity);
+	}
+
+	public int size() {
+		return desired.size();
+	}
+
+	/**
+	 * Create or update all desired entities. Created entities are added to
+	 * the cache.
+	 *
+	 * @param threads The number of threads to use.
+	 * @return The number of entities that were created.
+	 * @throws ServiceFailureException if creating or updating fails.
+	 */
+	public int sync(int threads) throws ServiceFailureException {
+		List<FrostUtils.ServiceTask> tasks = new ArrayList<>();
+		final Map<U, T> created = Collections.synchronizedMap(new LinkedHashMap<>());
+		final AtomicInteger updated = new AtomicInteger();
+		int unchanged = 0;
+		for (Map.Entry<U, T> entry : desired.entrySet()) {
+			final U localId = entry.getKey();
+			final T entity = entry.getValue();
+			final T existing = cache.get(localId);
+			final String key = fingerprintPrefix + localId;
+			final String fingerprint = fingerprints == null ? "" : fingerprints.fingerprint(entity);
+			if (existing == null) {
+				tasks.add(() -> {
+					T found = finder == null ? null : finder.find(localId);
+					if (found == null) {
+						frostUtils.create(entity);
+						created.put(localId, entity);
+					} else {
+						LOGGER.debug("Found {} in the service, but not in the cache.", localId);
+						cache.put(localId, found);
+						if (updater.update(localId, entity, found)) {
+							updated.incrementAndGet();
+						}
+					}
+					storeFingerprint(key, fingerprint);
+				});
+			} else if (fingerprints != null && fingerprints.isUnchanged(key, fingerprint)) {
+				unchanged++;
+			} else {
+				tasks.add(() -> {
+					if (updater.update(localId, entity, existing)) {
+						updated.incrementAndGet();
+					}
+					storeFingerprint(key, fingerprint);
+				});
+			}
+		}
+		frostUtils.execute(tasks, threads);
+		synchronized (created) {
+			for (Map.Entry<U, T> entry : created.entrySet()) {
+				cache.put(entry.getKey(), entry.getValue());
+			}
+		}
+		LOGGER.info("Synced {} entities: {} created, {} updated, {} unchanged.", desired.size(), created.size(), updated.get(), unchanged);
+		return created.size();
+	}
+
+	private void storeFingerprint(String key, String fingerprint) {
+		if (fingerprints != null) {
+			fingerprints.put(key, fingerprint);
+		}
+	}
+
+	/**
+	 * Finds an entity in the service, by its localId.
+	 *
+	 * @param <U> The type of the localId.
+	 * @param <T> The entity type.
+	 */
+	public static interface Finder<U, T extends Entity<T>> {
+
+		/**
+		 * Find the entity with the given localId.
+		 *
+		 * @param localId The localId of the entity.
+		 * @return The entity, or null if it does not exist.
+		 * @throws ServiceFailureException if the lookup fails.
+		 */
+		public T find(U localId) throws ServiceFailureException;
+	}
+
+	/**
+	 * Updates an existing entity to match the desired entity.
+	 *
+	 * @param <U> The type of the localId.
+	 * @param <T> The entity type.
+	 */
+	public static interface Updater<U, T extends Entity<T>> {
+
+		/**
+		 * Update the existing entity, if needed.
+		 *
+		 * @param localId The localId of the entity.
+		 * @param desired The entity as it should be.
+		 * @param existing The entity as it is in the service.
+		 * @return true if the entity was updated.
+		 * @throws ServiceFailureException if the update fails.
+		 */
+		public boolean update(U localId, T desired, T existing) throws ServiceFailureException;
+	}
+}
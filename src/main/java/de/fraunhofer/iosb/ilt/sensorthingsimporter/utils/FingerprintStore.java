@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2020 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import de.fraunhofer.iosb.ilt.sta.jackson.ObjectMapperFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a hash of the desired state of entities, as it was last pushed to the
+ * service. If the desired state of an entity has the same hash as the last
+ * time, the entity does not need to be compared or updated.
+ *
+ * Changes made to entities on the server by others are not detected. Delete
+ * the fingerprint file to force a full comparison.
+ *
+ * @author hylke
+ */
+public class FingerprintStore {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(FingerprintStore.class);
+
+	private static final TypeReference<Map<String, String>> TYPE_MAP_STRING_STRING = new TypeReference<Map<String, String>>() {
+		// Empty on purpose.
+	};
+
+	private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+	private final ObjectMapper mapper;
+	private volatile boolean changed = false;
+
+	public FingerprintStore() {
+		mapper = ObjectMapperFactory.get().copy()
+				.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+	}
+
+	/**
+	 * Calculate the fingerprint of the given object, using its JSON
+	 * serialisation.
+	 *
+	 * @param desired The object to calculate the fingerprint for.
+	 * @return The fingerprint.
+	 */
+	public String fingerprint(Object desired) {
+		try {
+			byte[] json = mapper.writeValueAsString(desired).getBytes(StandardCharsets.UTF_8);
+			return Hex.encodeHexString(MessageDigest.getInstance("SHA-256").digest(json));
+		} catch (JsonProcessingException | NoSuchAlgorithmException ex) {
+			LOGGER.warn("Failed to calculate fingerprint: {}", ex.getMessage());
+			return "";
+		}
+	}
+
+	/**
+	 * Check if the given fingerprint is the same as the stored one.
+	 *
+	 * @param key The key of the entity.
+	 * @param fingerprint The fingerprint of the desired state.
+	 * @return true if the stored fingerprint is the same.
+	 */
+	public boolean isUnchanged(String key, String fingerprint) {
+		return !fingerprint.isEmpty() && fingerprint.equals(fingerprints.get(key));
+	}
+
+	public void put(String key, String fingerprint) {
+		if (fingerprint.isEmpty()) {
+			return;
+		}
+		String old = fingerprints.put(key, fingerprint);
+		if (!fingerprint.equals(old)) {
+			changed = true;
+		}
+	}
+
+	public void remove(String key) {
+		if (fingerprints.remove(key) != null) {
+			changed = true;
+		}
+	}
+
+	public int size() {
+		return fingerprints.size();
+	}
+
+	public void load(File file) {
+		if (!file.isFile()) {
+			return;
+		}
+		try {
+			Map<String, String> loaded = mapper.readValue(file, TYPE_MAP_STRING_STRING);
+			fingerprints.putAll(loaded);
+			LOGGER.debug("Loaded {} fingerprints from {}", loaded.size(), file);
+		} catch (IOException ex) {
+			LOGGER.warn("Failed to load fingerprints from {}: {}", file, ex.getMessage());
+		}
+	}
+
+	public void save(File file) throws IOException {
+		if (!changed) {
+			return;
+		}
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		mapper.writeValue(file, fingerprints);
+		changed = false;
+	}
+
+}
@@ -122,32 +122,78 @@ public final class FrostUtils {
 		}
 	}
 
+	/**
+	 * Delete the given entities. If threads is larger than 0, the shared,
+	 * rate-limited BulkDeleter is used.
+	 *
+	 * @param entities The entities to delete.
+	 * @param threads 0 to delete in the calling thread.
+	 * @throws ServiceFailureException if deleting fails.
+	 */
 	public void delete(List<? extends Entity> entities, int threads) throws ServiceFailureException {
+		if (dryRun) {
+			LOGGER.info("Dry Run: Not deleting {} entities.", entities.size());
+			return;
+		}
 		if (threads == 0) {
 			for (Entity entity : entities) {
 				service.delete(entity);
 			}
 			return;
 		}
-		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		BulkDeleter.getInstance().delete(entities);
+	}
+
+	/**
+	 * Run the given tasks, using the given number of threads. All tasks are
+	 * run, even if some fail. The first failure is re-thrown after all tasks
+	 * are done.
+	 *
+	 * @param tasks The tasks to run.
+	 * @param threads The number of threads to use, 0 to run the tasks in the
+	 * calling thread.
+	 * @throws ServiceFailureException The first exception thrown by a task.
+	 */
+	public void execute(List<? extends ServiceTask> tasks, int threads) throws ServiceFailureException {
+		if (threads == 0 || tasks.size() <= 1) {
+			for (ServiceTask task : tasks) {
+				task.run();
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
 		List<Future<?>> futures = new ArrayList<>();
-		for (Entity entity : entities) {
+		for (ServiceTask task : tasks) {
 			futures.add(executor.submit(() -> {
-				try {
-					service.delete(entity);
-				} catch (ServiceFailureException ex) {
-					LOGGER.error("Failed to delete {}", entity, ex);
-				}
+				task.run();
+				return null;
 			}));
 		}
-		for (Future<?> f : futures) {
-			try {
-				f.get();
-			} catch (InterruptedException | ExecutionException ex) {
-				LOGGER.error("Maybe Failed to delete?", ex);
+		ServiceFailureException failure = null;
+		try {
+			for (Future<?> f : futures) {
+				try {
+					f.get();
+				} catch (ExecutionException ex) {
+					LOGGER.error("Task failed: {}", ex.getCause().getMessage());
+					if (failure == null) {
+						if (ex.getCause() instanceof ServiceFailureException) {
+							failure = (ServiceFailureException) ex.getCause();
+						} else {
+							failure = new ServiceFailureException("Task failed.", ex.getCause());
+						}
+					}
+				}
 			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new ServiceFailureException("Interrupted while waiting for tasks.", ex);
+		} finally {
+			executor.shutdownNow();
+		}
+		if (failure != null) {
+			throw failure;
 		}
-		executor.shutdownNow();
 	}
 
 	public Thing findOrCreateThing(
@@ -190,22 +236,27 @@ public final class FrostUtils {
 			final Map<String, Object> properties,
 			final Location location,
 			final Thing cached) throws ServiceFailureException {
+		final Thing patch = cached.withOnlyId();
 		boolean updated = false;
 		if (!name.equals(cached.getName())) {
 			updated = true;
 			cached.setName(name);
+			patch.setName(name);
 		}
 		if (!description.equals(cached.getDescription())) {
 			updated = true;
 			cached.setDescription(description);
+			patch.setDescription(description);
 		}
 		if (addProperties(cached.getProperties(), properties, 5)) {
+			patch.setProperties(cached.getProperties());
 			updated = true;
 		}
 		if (location != null) {
 			final List<Location> locationList = cached.getLocations().toList();
 			if (locationList.isEmpty()) {
 				cached.getLocations().add(location.withOnlyId());
+				patch.getLocations().add(location.withOnlyId());
 				updated = true;
 			} else {
 				boolean found = false;
@@ -218,12 +269,13 @@ public final class FrostUtils {
 				if (!found) {
 					cached.getLocations().clear();
 					cached.getLocations().add(location.withOnlyId());
+					patch.getLocations().add(location.withOnlyId());
 					updated = true;
 				}
 			}
 		}
 		if (updated) {
-			update(cached);
+			update(patch);
 		}
 		return updated;
 	}
@@ -268,31 +320,38 @@ public final class FrostUtils {
 			final Object metadata,
 			final Map<String, Object> properties,
 			final Sensor cached) throws ServiceFailureException {
+		final Sensor patch = cached.withOnlyId();
 		boolean update = false;
 		if (!name.equals(cached.getName())) {
 			update = true;
 			cached.setName(name);
+			patch.setName(name);
 		}
 		if (!description.equals(cached.getDescription())) {
 			update = true;
 			cached.setDescription(description);
+			patch.setDescription(description);
 		}
 		if (!encodingType.equals(cached.getEncodingType())) {
 			update = true;
 			cached.setEncodingType(encodingType);
+			patch.setEncodingType(encodingType);
 		}
 		if (!Objects.equals(metadata, cached.getMetadata())) {
 			update = true;
 			cached.setMetadata(metadata);
+			patch.setMetadata(metadata);
 		}
 		if (cached.getProperties() == null && properties != null && !properties.isEmpty()) {
 			cached.setProperties(properties);
+			patch.setProperties(cached.getProperties());
 			update = true;
 		} else if (addProperties(cached.getProperties(), properties, 5)) {
+			patch.setProperties(cached.getProperties());
 			update = true;
 		}
 		if (update) {
-			update(cached);
+			update(patch);
 		}
 		return update;
 	}
@@ -334,14 +393,17 @@ public final class FrostUtils {
 			final GeoJsonObject geoJson,
 			final Map<String, Object> properties,
 			final FeatureOfInterest cached) throws ServiceFailureException {
+		final FeatureOfInterest patch = cached.withOnlyId();
 		boolean update = false;
 		if (!name.equals(cached.getName())) {
 			update = true;
 			cached.setName(name);
+			patch.setName(name);
 		}
 		if (!description.equals(cached.getDescription())) {
 			update = true;
 			cached.setDescription(description);
+			patch.setDescription(description);
 		}
 		ObjectMapper om = ObjectMapperFactory.get();
 		try {
@@ -349,6 +411,7 @@ public final class FrostUtils {
 				update = true;
 				LOGGER.debug("Location changed from {} to {}", cached.getFeature(), geoJson);
 				cached.setFeature(geoJson);
+				patch.setFeature(geoJson);
 			}
 		} catch (JsonProcessingException ex) {
 			LOGGER.error("Failed to compare geoJson objects.");
@@ -356,13 +419,15 @@ public final class FrostUtils {
 
 		if (cached.getProperties() == null && properties != null) {
 			cached.setProperties(properties);
+			patch.setProperties(cached.getProperties());
 			update = true;
 		}
 		if (addProperties(cached.getProperties(), properties, 5)) {
+			patch.setProperties(cached.getProperties());
 			update = true;
 		}
 		if (update) {
-			update(cached);
+			update(patch);
 		}
 		return update;
 	}
@@ -373,24 +438,29 @@ public final class FrostUtils {
 			final String description,
 			final Map<String, Object> properties,
 			final ObservedProperty cached) throws ServiceFailureException {
+		final ObservedProperty patch = cached.withOnlyId();
 		boolean update = false;
 		if (!name.equals(cached.getName())) {
 			update = true;
 			cached.setName(name);
+			patch.setName(name);
 		}
 		if (!description.equals(cached.getDescription())) {
 			update = true;
 			cached.setDescription(description);
+			patch.setDescription(description);
 		}
 		if (cached.getProperties() == null && properties != null) {
 			cached.setProperties(properties);
+			patch.setProperties(cached.getProperties());
 			update = true;
 		}
 		if (addProperties(cached.getProperties(), properties, 5)) {
+			patch.setProperties(cached.getProperties());
 			update = true;
 		}
 		if (update) {
-			update(cached);
+			update(patch);
 		}
 		return update;
 	}
@@ -438,32 +508,39 @@ public final class FrostUtils {
 			final ObservedProperty op,
 			final Sensor s,
 			final Datastream cached) throws ServiceFailureException {
+		final Datastream patch = cached.withOnlyId();
 		boolean update = false;
 		if (!name.equals(cached.getName())) {
 			update = true;
 			cached.setName(name);
+			patch.setName(name);
 		}
 		if (!desc.equals(cached.getDescription())) {
 			update = true;
 			cached.setDescription(desc);
+			patch.setDescription(desc);
 		}
 		if (cached.getProperties() == null && properties != null) {
 			cached.setProperties(properties);
+			patch.setProperties(cached.getProperties());
 			update = true;
 		}
 		if (addProperties(cached.getProperties(), properties, 5)) {
+			patch.setProperties(cached.getProperties());
 			update = true;
 		}
 		if (!uom.equals(cached.getUnitOfMeasurement())) {
 			cached.setUnitOfMeasurement(uom);
+			patch.setUnitOfMeasurement(uom);
 			update = true;
 		}
 		if (!cached.getObservedProperty().getId().equals(op.getId())) {
 			cached.setObservedProperty(op.withOnlyId());
+			patch.setObservedProperty(op.withOnlyId());
 			update = true;
 		}
 		if (update) {
-			update(cached);
+			update(patch);
 		}
 		return update;
 	}
@@ -553,24 +630,29 @@ public final class FrostUtils {
 			final String desc,
 			final Map<String, Object> props,
 			final MultiDatastream cached) throws ServiceFailureException {
+		final MultiDatastream patch = cached.withOnlyId();
 		boolean update = false;
 		if (!name.equals(cached.getName())) {
 			update = true;
 			cached.setName(name);
+			patch.setName(name);
 		}
 		if (!desc.equals(cached.getDescription())) {
 			update = true;
 			cached.setDescription(desc);
+			patch.setDescription(desc);
 		}
 		if (cached.getProperties() == null && props != null) {
 			cached.setProperties(props);
+			patch.setProperties(cached.getProperties());
 			update = true;
 		}
 		if (addProperties(cached.getProperties(), props, 5)) {
+			patch.setProperties(cached.getProperties());
 			update = true;
 		}
 		if (update) {
-			update(cached);
+			update(patch);
 		}
 		return update;
 	}
@@ -629,16 +711,20 @@ public final class FrostUtils {
 			final Map<String, Object> properties,
 			final GeoJsonObject geoJson,
 			final Location cached) throws ServiceFailureException {
+		final Location patch = cached.withOnlyId();
 		boolean updated = false;
 		if (!cached.getName().equals(name)) {
 			updated = true;
 			cached.setName(name);
+			patch.setName(name);
 		}
 		if (!cached.getDescription().equals(description)) {
 			updated = true;
 			cached.setDescription(description);
+			patch.setDescription(description);
 		}
 		if (addProperties(cached.getProperties(), properties, 10)) {
+			patch.setProperties(cached.getProperties());
 			updated = true;
 		}
 		ObjectMapper om = ObjectMapperFactory.get();
@@ -647,12 +733,13 @@ public final class FrostUtils {
 				updated = true;
 				LOGGER.debug("Location changed from {} to {}", cached.getLocation(), geoJson);
 				cached.setLocation(geoJson);
+				patch.setLocation(geoJson);
 			}
 		} catch (JsonProcessingException ex) {
 			LOGGER.error("Failed to compare geoJson objects.");
 		}
 		if (updated) {
-			update(cached);
+			update(patch);
 		}
 		return updated;
 	}
@@ -903,6 +990,14 @@ public final class FrostUtils {
 		return input.substring(input.lastIndexOf('/') + 1);
 	}
 
+	/**
+	 * A task that talks to the service, for use with execute.
+	 */
+	public static interface ServiceTask {
+
+		public void run() throws ServiceFailureException;
+	}
+
 	public static PropertyBuilder propertiesBuilder() {
 		return new PropertyBuilder();
 	}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A map from keys to values, stored in a JSON file. The file is loaded when
+ * the store is created, and saved after each change. The file is written
+ * through a temporary file that is then moved over the old file, so a crash
+ * while saving does not leave a corrupt file behind.
+ *
+ * @author hylke
+ * @param <V> The type of the values.
+ */
+public class JsonFileStore<V> {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(JsonFileStore.class);
+
+	private final File file;
+	private final String name;
+	private final TypeReference<Map<String, V>> type;
+	private final Map<String, V> values = new TreeMap<>();
+
+	/**
+	 * Create a store, and load the given file if it exists.
+	 *
+	 * @param file The file to store the values in, or null to keep nothing.
+	 * @param name The name of the values, for log messages.
+	 * @param type The type of the map in the file.
+	 */
+	public JsonFileStore(File file, String name, TypeReference<Map<String, V>> type) {
+		this.file = file;
+		this.name = name;
+		this.type = type;
+		load();
+	}
+
+	private void load() {
+		if (file == null || !file.isFile()) {
+			return;
+		}
+		try {
+			Map<String, V> loaded = JsonUtils.getMapper().readValue(file, type);
+			values.putAll(loaded);
+			LOGGER.debug("Loaded {} {} from {}", loaded.size(), name, file);
+		} catch (IOException ex) {
+			LOGGER.warn("Failed to load {} from {}: {}", name, file, ex.getMessage());
+		}
+	}
+
+	/**
+	 * @return false if the store has no file.
+	 */
+	public boolean isEnabled() {
+		return file != null;
+	}
+
+	public synchronized V get(String key) {
+		return values.get(key);
+	}
+
+	/**
+	 * Store the value for the given key, and save the file. Does nothing if
+	 * the store has no file.
+	 *
+	 * @param key The key to store the value for.
+	 * @param value The value to store.
+	 */
+	public synchronized void put(String key, V value) {
+		if (file == null) {
+			return;
+		}
+		values.put(key, value);
+		try {
+			writeFile(JsonUtils.getMapper(), file, values);
+		} catch (IOException ex) {
+			LOGGER.warn("Failed to save {} to {}: {}", name, file, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Write the value as JSON to the given file, through a temporary file
+	 * that replaces the file once it is written completely.
+	 *
+	 * @param mapper The mapper to serialise the value with.
+	 * @param file The file to write.
+	 * @param value The value to write.
+	 * @throws IOException if the file can not be written.
+	 */
+	public static void writeFile(ObjectMapper mapper, File file, Object value) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		Path target = file.toPath();
+		Path temp = new File(file.getPath() + ".tmp").toPath();
+		mapper.writeValue(temp.toFile(), value);
+		try {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fraunhofer.iosb.ilt.sta.jackson.ObjectMapperFactory;
+import de.fraunhofer.iosb.ilt.sta.model.Entity;
+import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A JVM-wide cache for entities and other lookup results, shared by all
+ * importers that run in the same JVM. Entries are keyed by the service URL, a
+ * region name and a (filter) key, expire after a configurable time, and the
+ * least recently used entries are evicted when the cache grows too large.
+ *
+ * Entities should be stored through an EntityRegion. These store the entities
+ * as JSON, so that each job gets its own copies, attached to its own service,
+ * and concurrent jobs can not change each others entities.
+ *
+ * @author hylke
+ */
+public class SharedEntityCache {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(SharedEntityCache.class);
+
+	public static final long DEFAULT_TTL_SECONDS = 1800;
+	public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+	private static final SharedEntityCache INSTANCE = new SharedEntityCache();
+
+	private final Map<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(1000, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+			return size() > maxEntries;
+		}
+	};
+
+	private long ttlMs = DEFAULT_TTL_SECONDS * 1000;
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+	public static SharedEntityCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Set the time-to-live and the maximum number of entries. A ttl of 0
+	 * disables the cache.
+	 *
+	 * @param ttlSeconds The number of seconds after which entries expire.
+	 * @param maxEntries The maximum number of entries to keep.
+	 */
+	public synchronized void setLimits(long ttlSeconds, int maxEntries) {
+		LOGGER.info("Shared entity cache: ttl {}s, max {} entries.", ttlSeconds, maxEntries);
+		this.ttlMs = ttlSeconds * 1000;
+		this.maxEntries = maxEntries;
+		if (ttlMs <= 0) {
+			entries.clear();
+		}
+		removeExpired();
+	}
+
+	public synchronized boolean isEnabled() {
+		return ttlMs > 0 && maxEntries > 0;
+	}
+
+	/**
+	 * Get a view on the cache for the given service and region. The service
+	 * URL is resolved at the time of each access, so the region can be created
+	 * before the service endpoint is configured.
+	 *
+	 * @param <V> The type of the values in the region.
+	 * @param service The service the cached values come from.
+	 * @param regionName The name of the region, usually the entity type and
+	 * the user of the region.
+	 * @return A view on the cache.
+	 */
+	public <V> Region<V> region(SensorThingsService service, String regionName) {
+		return new Region<>(this, service, regionName);
+	}
+
+	/**
+	 * Get a view on the cache for the given service and region, that holds
+	 * entities of the given type.
+	 *
+	 * @param <T> The type of the entities in the region.
+	 * @param service The service the entities come from, and that the copies
+	 * returned by the region are attached to.
+	 * @param regionName The name of the region.
+	 * @param entityClass The class of the entities in the region.
+	 * @return A view on the cache.
+	 */
+	public <T extends Entity<T>> EntityRegion<T> entityRegion(SensorThingsService service, String regionName, Class<T> entityClass) {
+		return new EntityRegion<>(new Region<>(this, service, regionName), service, entityClass);
+	}
+
+	private synchronized CacheEntry getEntry(String key) {
+		CacheEntry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.expires < System.currentTimeMillis()) {
+			entries.remove(key);
+			return null;
+		}
+		return entry;
+	}
+
+	private synchronized void putEntry(String key, Object value) {
+		if (!isEnabled()) {
+			return;
+		}
+		entries.put(key, new CacheEntry(value, System.currentTimeMillis() + ttlMs));
+	}
+
+	private synchronized void removeEntry(String key) {
+		entries.remove(key);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized void removeExpired() {
+		long now = System.currentTimeMillis();
+		Iterator<CacheEntry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().expires < now) {
+				it.remove();
+			}
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private static class CacheEntry {
+
+		private final Object value;
+		private final long expires;
+
+		public CacheEntry(Object value, long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+
+	}
+
+	/**
+	 * A view on the shared cache, for one service and region.
+	 *
+	 * @param <V> The type of the values in this region.
+	 */
+	public static class Region<V> {
+
+		private final SharedEntityCache cache;
+		private final SensorThingsService service;
+		private final String regionName;
+
+		private Region(SharedEntityCache cache, SensorThingsService service, String regionName) {
+			this.cache = cache;
+			this.service = service;
+			this.regionName = regionName;
+		}
+
+		private String fullKey(String key) {
+			String serviceUrl = service == null ? "" : String.valueOf(service.getEndpoint());
+			return serviceUrl + '|' + regionName + '|' + key;
+		}
+
+		/**
+		 * Get the value for the given key.
+		 *
+		 * @param key The key to get the value for.
+		 * @return the value, or null if there is no (valid) entry, or the entry
+		 * is a cached null.
+		 */
+		public V get(String key) {
+			CacheEntry entry = cache.getEntry(fullKey(key));
+			if (entry == null) {
+				return null;
+			}
+			return (V) entry.value;
+		}
+
+		/**
+		 * Check if there is a (valid) entry for the key. The value of that
+		 * entry may be null, indicating that an earlier lookup found nothing.
+		 *
+		 * @param key The key to check.
+		 * @return true if there is a valid entry for the key.
+		 */
+		public boolean containsKey(String key) {
+			return cache.getEntry(fullKey(key)) != null;
+		}
+
+		public void put(String key, V value) {
+			cache.putEntry(fullKey(key), value);
+		}
+
+		public void remove(String key) {
+			cache.removeEntry(fullKey(key));
+		}
+	}
+
+	/**
+	 * A view on the shared cache that holds entities. The entities are stored
+	 * as JSON, and each get returns new instances. Null values are not stored,
+	 * so a failed lookup in one job is not seen by other jobs.
+	 *
+	 * @param <T> The type of the entities in this region.
+	 */
+	public static class EntityRegion<T extends Entity<T>> {
+
+		private final Region<String> region;
+		private final SensorThingsService service;
+		private final Class<T> entityClass;
+
+		private EntityRegion(Region<String> region, SensorThingsService service, Class<T> entityClass) {
+			this.region = region;
+			this.service = service;
+			this.entityClass = entityClass;
+		}
+
+		/**
+		 * Get a copy of the entity stored for the given key.
+		 *
+		 * @param key The key to get the entity for.
+		 * @return A new instance of the entity, or null if there is no valid
+		 * entry.
+		 */
+		public T get(String key) {
+			String json = region.get(key);
+			if (json == null) {
+				return null;
+			}
+			try {
+				return attach(ObjectMapperFactory.get().readValue(json, entityClass));
+			} catch (IOException ex) {
+				LOGGER.warn("Failed to parse cached entity: {}", ex.getMessage());
+				region.remove(key);
+				return null;
+			}
+		}
+
+		/**
+		 * Get copies of the entities stored for the given key.
+		 *
+		 * @param key The key to get the entities for.
+		 * @return A new list of new instances, or null if there is no valid
+		 * entry.
+		 */
+		public List<T> getList(String key) {
+			String json = region.get(key);
+			if (json == null) {
+				return null;
+			}
+			try {
+				ObjectMapper mapper = ObjectMapperFactory.get();
+				List<T> result = new ArrayList<>();
+				for (JsonNode node : mapper.readTree(json)) {
+					result.add(attach(mapper.treeToValue(node, entityClass)));
+				}
+				return result;
+			} catch (IOException ex) {
+				LOGGER.warn("Failed to parse cached entities: {}", ex.getMessage());
+				region.remove(key);
+				return null;
+			}
+		}
+
+		public void put(String key, T entity) {
+			if (entity == null) {
+				return;
+			}
+			try {
+				region.put(key, ObjectMapperFactory.get().writeValueAsString(entity));
+			} catch (IOException ex) {
+				LOGGER.warn("Failed to serialise entity for the cache: {}", ex.getMessage());
+			}
+		}
+
+		public void putList(String key, List<T> entities) {
+			try {
+				region.put(key, ObjectMapperFactory.get().writeValueAsString(entities));
+			} catch (IOException ex) {
+				LOGGER.warn("Failed to serialise entities for the cache: {}", ex.getMessage());
+			}
+		}
+
+		public boolean containsKey(String key) {
+			return region.containsKey(key);
+		}
+
+		public void remove(String key) {
+			region.remove(key);
+		}
+
+		private T attach(T entity) {
+			entity.setService(service);
+			return entity;
+		}
+	}
+}
@@ -24,7 +24,7 @@ import de.fraunhofer.iosb.ilt.configurable.ConfigEditor;
 import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
 import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
-import de.fraunhofer.iosb.ilt.sta.Utils;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.CsvRow;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
@@ -33,7 +33,6 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,7 +46,6 @@ public class Translator extends AbstractConfigurable<Void, Void> {
 	 * The logger for this class.
 	 */
 	private static final Logger LOGGER = LoggerFactory.getLogger(Translator.class);
-	private static final Pattern PLACE_HOLDER_PATTERN = Pattern.compile("\\{([0-9a-zA-Z_]+)\\}");
 
 	private static final TypeReference<Map<String, String>> TYPE_REF_MAP_STRING_STRING = new TypeReference<Map<String, String>>() {
 		// Empty by design.
@@ -118,41 +116,43 @@ public class Translator extends AbstractConfigurable<Void, Void> {
 		return result.toString();
 	}
 
+	/**
+	 * Fill the given template with values from the given record. The template
+	 * is parsed on each call, use {@link CompiledTemplate} for templates that
+	 * are used for more than one record.
+	 *
+	 * @param template The template to fill.
+	 * @param record The record to take the values from.
+	 * @param escapeForUrl Escape the values for use in a filter.
+	 * @param escapeForJson Escape the values for use in json.
+	 * @param removeNewlines Remove newlines from the template.
+	 * @return The filled template.
+	 */
+	public static String fillTemplate(String template, CsvRow record, boolean escapeForUrl, boolean escapeForJson, boolean removeNewlines) {
+		return CompiledTemplate.compile(template, escapeForUrl, escapeForJson, removeNewlines).fill(record);
+	}
+
+	public static String fillTemplate(String template, CsvRow record, boolean escapeForUrl, boolean escapeForJson) {
+		return CompiledTemplate.compile(template, escapeForUrl, escapeForJson, false).fill(record);
+	}
+
+	/**
+	 * Fill the given template with values from the given record. Kept for
+	 * scripts that work on commons-csv records.
+	 *
+	 * @param template The template to fill.
+	 * @param record The record to take the values from.
+	 * @param escapeForUrl Escape the values for use in a filter.
+	 * @param escapeForJson Escape the values for use in json.
+	 * @param removeNewlines Remove newlines from the template.
+	 * @return The filled template.
+	 */
 	public static String fillTemplate(String template, CSVRecord record, boolean escapeForUrl, boolean escapeForJson, boolean removeNewlines) {
-		if (removeNewlines) {
-			return fillTemplate(StringUtils.remove(template, "\n"), record, escapeForUrl, escapeForJson);
-		}
-		return fillTemplate(template, record, escapeForUrl, escapeForJson);
+		return fillTemplate(template, CsvRow.wrap(record), escapeForUrl, escapeForJson, removeNewlines);
 	}
 
 	public static String fillTemplate(String template, CSVRecord record, boolean escapeForUrl, boolean escapeForJson) {
-		Matcher matcher = PLACE_HOLDER_PATTERN.matcher(template);
-		matcher.reset();
-		StringBuilder filter = new StringBuilder();
-		int pos = 0;
-		while (matcher.find()) {
-			int start = matcher.start();
-			filter.append(template.substring(pos, start));
-			String value;
-			try {
-				int colNr = Integer.parseInt(matcher.group(1));
-				value = record.get(colNr);
-			} catch (NumberFormatException ex) {
-				String colName = matcher.group(1);
-				value = record.get(colName);
-			}
-			if (escapeForUrl) {
-				value = Utils.escapeForStringConstant(value);
-			}
-			if (escapeForJson) {
-				value = StringUtils.replace(value, "\\", "\\\\");
-				value = StringUtils.replace(value, "\n", "\\n");
-			}
-			filter.append(value);
-			pos = matcher.end();
-		}
-		filter.append(template.substring(pos));
-		return filter.toString();
+		return fillTemplate(template, CsvRow.wrap(record), escapeForUrl, escapeForJson);
 	}
 
 }
@@ -20,6 +20,10 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
 import de.fraunhofer.iosb.ilt.sta.Utils;
 import de.fraunhofer.iosb.ilt.sta.jackson.ObjectMapperFactory;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -28,9 +32,11 @@ import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
 import org.apache.http.ParseException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
@@ -82,6 +88,122 @@ public class UrlUtils {
 		}
 	}
 
+	/**
+	 * Open a stream on the given url, without reading it into memory first.
+	 * The caller must close the stream.
+	 *
+	 * @param targetUrl The url to open.
+	 * @return A stream with the (raw) content of the url.
+	 * @throws IOException if the url can not be opened.
+	 */
+	public static InputStream openStream(URL targetUrl) throws IOException {
+		LOGGER.info("Fetching: {}", targetUrl);
+		if (!targetUrl.getProtocol().startsWith("http")) {
+			return targetUrl.openStream();
+		}
+		final CloseableHttpClient client = HttpClients.createSystem();
+		try {
+			final CloseableHttpResponse response = client.execute(new HttpGet(targetUrl.toString()));
+			HttpEntity entity = response.getEntity();
+			if (entity == null) {
+				response.close();
+				client.close();
+				return new ByteArrayInputStream(new byte[0]);
+			}
+			return new FilterInputStream(entity.getContent()) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						response.close();
+						client.close();
+					}
+				}
+			};
+		} catch (IOException | RuntimeException ex) {
+			client.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Open a stream on the given url, starting at the given byte offset. For
+	 * http urls a Range request is used. If the server ignores the range, or
+	 * the url is not http, the bytes before the offset are skipped. The caller
+	 * must close the stream.
+	 *
+	 * @param targetUrl The url to open.
+	 * @param from The offset of the first byte to read.
+	 * @return A stream with the content of the url starting at the offset, or
+	 * null if the content is shorter than the offset.
+	 * @throws IOException if the url can not be opened.
+	 */
+	public static InputStream openStream(URL targetUrl, long from) throws IOException {
+		if (from <= 0) {
+			return openStream(targetUrl);
+		}
+		LOGGER.info("Fetching: {} from byte {}", targetUrl, from);
+		if ("file".equals(targetUrl.getProtocol())) {
+			File file = FileUtils.toFile(targetUrl);
+			if (file.length() < from) {
+				return null;
+			}
+			FileInputStream input = new FileInputStream(file);
+			input.getChannel().position(from);
+			return input;
+		}
+		if (!targetUrl.getProtocol().startsWith("http")) {
+			return skipTo(targetUrl.openStream(), from);
+		}
+		final CloseableHttpClient client = HttpClients.createSystem();
+		try {
+			HttpGet get = new HttpGet(targetUrl.toString());
+			get.setHeader(HttpHeaders.RANGE, "bytes=" + from + "-");
+			final CloseableHttpResponse response = client.execute(get);
+			int code = response.getStatusLine().getStatusCode();
+			HttpEntity entity = response.getEntity();
+			if (code == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE || entity == null) {
+				response.close();
+				client.close();
+				return null;
+			}
+			if (code != HttpStatus.SC_OK && code != HttpStatus.SC_PARTIAL_CONTENT) {
+				response.close();
+				client.close();
+				throw new IOException("Unexpected response " + code + " from " + targetUrl);
+			}
+			InputStream input = new FilterInputStream(entity.getContent()) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						response.close();
+						client.close();
+					}
+				}
+			};
+			if (code == HttpStatus.SC_OK) {
+				LOGGER.debug("Server ignored range request for {}", targetUrl);
+				return skipTo(input, from);
+			}
+			return input;
+		} catch (IOException | RuntimeException ex) {
+			client.close();
+			throw ex;
+		}
+	}
+
+	private static InputStream skipTo(InputStream input, long from) throws IOException {
+		long skipped = IOUtils.skip(input, from);
+		if (skipped < from) {
+			input.close();
+			return null;
+		}
+		return input;
+	}
+
 	private static String readNormalUrl(String targetUrl, Charset charset) throws IOException, ParseException {
 		try (CloseableHttpClient client = HttpClients.createSystem()) {
 			HttpGet get = new HttpGet(targetUrl);
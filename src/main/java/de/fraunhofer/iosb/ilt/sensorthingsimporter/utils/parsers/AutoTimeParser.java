@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses times from a column, trying the configured parser, ISO-8601 and
+ * epoch seconds, in that order. The configured parser is always tried first.
+ * Of the other strategies, the one that worked last is tried first for the
+ * following values. Since no value is both an ISO-8601 time and a number, the
+ * result does not depend on that order. ISO-8601 times with an offset and
+ * epoch seconds are parsed by hand, and recently parsed values are memoized.
+ *
+ * @author hylke
+ */
+public class AutoTimeParser {
+
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(AutoTimeParser.class);
+
+	private static enum Strategy {
+		CONFIGURED,
+		ISO,
+		EPOCH_SECONDS
+	}
+
+	private static final Strategy[] FALLBACKS = {Strategy.ISO, Strategy.EPOCH_SECONDS};
+
+	private final ParserZonedDateTime configured;
+	private final TimeMemo memo;
+	private final String key;
+	/**
+	 * The fallback strategy that worked last.
+	 */
+	private volatile Strategy current;
+
+	/**
+	 * @param configured The configured parser to try first, can be null.
+	 */
+	public AutoTimeParser(ParserZonedDateTime configured) {
+		this(configured, TimeMemo.DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param configured The configured parser to try first, can be null.
+	 * @param memoSize The number of values to memoize per thread.
+	 */
+	public AutoTimeParser(ParserZonedDateTime configured, int memoSize) {
+		this.configured = configured;
+		this.memo = new TimeMemo(memoSize);
+		if (configured == null) {
+			key = "auto";
+		} else if (configured instanceof ParserTime) {
+			ParserTime parserTime = (ParserTime) configured;
+			key = "auto|" + parserTime.getFormat() + '|' + parserTime.getZone();
+		} else {
+			key = "auto|" + configured.getClass().getName() + '@' + System.identityHashCode(configured);
+		}
+	}
+
+	/**
+	 * A key that is the same for parsers that give the same results, for use
+	 * in a {@link de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.RecordContext}.
+	 *
+	 * @return The key for this parser.
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Parse the given value.
+	 *
+	 * @param value The value to parse.
+	 * @return The parsed time, or null if no strategy could parse the value.
+	 */
+	public ZonedDateTime parse(String value) {
+		if (value == null) {
+			return null;
+		}
+		ZonedDateTime result = memo.get(value);
+		if (result != null) {
+			return result;
+		}
+		result = parseWith(Strategy.CONFIGURED, value);
+		final Strategy first = current;
+		if (result == null && first != null) {
+			result = parseWith(first, value);
+		}
+		if (result == null) {
+			for (Strategy strategy : FALLBACKS) {
+				if (strategy == first) {
+					continue;
+				}
+				result = parseWith(strategy, value);
+				if (result != null) {
+					LOGGER.debug("Parsing times using {}", strategy);
+					current = strategy;
+					break;
+				}
+			}
+		}
+		if (result != null) {
+			memo.put(value, result);
+		}
+		return result;
+	}
+
+	private ZonedDateTime parseWith(Strategy strategy, String value) {
+		switch (strategy) {
+			case CONFIGURED:
+				if (configured == null) {
+					return null;
+				}
+				try {
+					return configured.parse(value);
+				} catch (RuntimeException ex) {
+					LOGGER.trace("Configured parser failed on {}: {}", value, ex.getMessage());
+					return null;
+				}
+
+			case ISO:
+				return parseIso(value);
+
+			case EPOCH_SECONDS:
+				return parseEpochSeconds(value);
+
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Parse an ISO-8601 time, as ZonedDateTime.parse does. The common forms
+	 * yyyy-MM-ddTHH:mm[:ss[.fff]](Z|+HH:mm) are parsed by hand.
+	 *
+	 * @param value The value to parse.
+	 * @return The parsed time, or null if the value is not an ISO-8601 time.
+	 */
+	public static ZonedDateTime parseIso(String value) {
+		final int length = value.length();
+		if (length < 17 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+			return null;
+		}
+		ZonedDateTime fast = parseIsoFast(value, length);
+		if (fast != null) {
+			return fast;
+		}
+		try {
+			return ZonedDateTime.parse(value);
+		} catch (DateTimeException ex) {
+			LOGGER.trace("Not an ISO time: {}", value);
+			return null;
+		}
+	}
+
+	private static ZonedDateTime parseIsoFast(String value, int length) {
+		final int year = digits(value, 0, 4);
+		final int month = digits(value, 5, 2);
+		final int day = digits(value, 8, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || value.charAt(10) != 'T'
+				|| day > Month.of(month).length(Year.isLeap(year))) {
+			return null;
+		}
+		final int hour = digits(value, 11, 2);
+		final int minute = digits(value, 14, 2);
+		if (hour < 0 || hour > 23 || value.charAt(13) != ':' || minute < 0 || minute > 59) {
+			return null;
+		}
+		int pos = 16;
+		int second = 0;
+		int nanos = 0;
+		if (pos < length && value.charAt(pos) == ':') {
+			second = digits(value, pos + 1, 2);
+			if (second < 0 || second > 59) {
+				return null;
+			}
+			pos += 3;
+			if (pos < length && (value.charAt(pos) == '.' || value.charAt(pos) == ',')) {
+				pos++;
+				int fractionDigits = 0;
+				while (pos < length && fractionDigits < 9) {
+					char c = value.charAt(pos);
+					if (c < '0' || c > '9') {
+						break;
+					}
+					nanos = nanos * 10 + (c - '0');
+					fractionDigits++;
+					pos++;
+				}
+				if (fractionDigits == 0) {
+					return null;
+				}
+				for (int i = fractionDigits; i < 9; i++) {
+					nanos *= 10;
+				}
+			}
+		}
+		if (pos >= length) {
+			return null;
+		}
+		final ZoneOffset offset;
+		final char sign = value.charAt(pos);
+		if (sign == 'Z' && pos + 1 == length) {
+			offset = ZoneOffset.UTC;
+		} else if ((sign == '+' || sign == '-') && pos + 6 == length && value.charAt(pos + 3) == ':') {
+			int offsetHours = digits(value, pos + 1, 2);
+			int offsetMinutes = digits(value, pos + 4, 2);
+			if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+				return null;
+			}
+			if (sign == '-') {
+				offsetHours = -offsetHours;
+				offsetMinutes = -offsetMinutes;
+			}
+			try {
+				offset = ZoneOffset.ofHoursMinutes(offsetHours, offsetMinutes);
+			} catch (DateTimeException ex) {
+				// For instance +18:30
+				return null;
+			}
+		} else {
+			return null;
+		}
+		return ZonedDateTime.of(year, month, day, hour, minute, second, nanos, offset);
+	}
+
+	/**
+	 * Read a fixed number of digits.
+	 *
+	 * @return the value, or -1 if not all characters are digits.
+	 */
+	private static int digits(String value, int start, int count) {
+		int result = 0;
+		for (int i = start; i < start + count; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			result = result * 10 + (c - '0');
+		}
+		return result;
+	}
+
+	/**
+	 * Parse a number of seconds since the epoch, in the default time zone.
+	 *
+	 * @param value The value to parse.
+	 * @return The parsed time, or null if the value is not an integer.
+	 */
+	public static ZonedDateTime parseEpochSeconds(String value) {
+		final int length = value.length();
+		int i = 0;
+		boolean negative = false;
+		if (length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+')) {
+			negative = value.charAt(0) == '-';
+			i++;
+		}
+		if (i == length || length - i > 15) {
+			return null;
+		}
+		long seconds = 0;
+		for (; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return null;
+			}
+			seconds = seconds * 10 + (c - '0');
+		}
+		if (negative) {
+			seconds = -seconds;
+		}
+		return ZonedDateTime.ofInstant(Instant.ofEpochMilli(1000 * seconds), ZoneId.systemDefault());
+	}
+
+}
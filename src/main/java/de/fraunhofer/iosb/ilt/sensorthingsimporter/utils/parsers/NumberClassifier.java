@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Parses numbers by scanning the characters once, without using exceptions
+ * to find out what kind of number a string holds. The results are the same as
+ * trying Integer.parseInt, Long.parseLong and new BigDecimal, in that order.
+ *
+ * An instance can learn the type of a column: if the first values it parses
+ * are all integers, further values are parsed with a digits-only loop, falling
+ * back to the full scan for values that are not plain integers.
+ *
+ * @author hylke
+ */
+public class NumberClassifier {
+
+	/**
+	 * The maximum number of significant digits that always fit in a long.
+	 */
+	private static final int MAX_LONG_DIGITS = 18;
+	/**
+	 * The maximum exponent for which the value is calculated directly.
+	 */
+	private static final int MAX_FAST_EXPONENT = 1000;
+
+	private static enum State {
+		LEARNING,
+		INTEGER,
+		MIXED
+	}
+
+	private final int learnCount;
+	private volatile State state;
+	private int learned;
+
+	/**
+	 * Create a classifier that does not learn.
+	 */
+	public NumberClassifier() {
+		this(0);
+	}
+
+	/**
+	 * Create a classifier that learns the type of the values from the first
+	 * learnCount values.
+	 *
+	 * @param learnCount The number of values to learn from, 0 to not learn.
+	 */
+	public NumberClassifier(int learnCount) {
+		this.learnCount = learnCount;
+		this.state = learnCount > 0 ? State.LEARNING : State.MIXED;
+	}
+
+	/**
+	 * A key that is the same for classifiers with the same configuration, for
+	 * use in a {@link de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.RecordContext}.
+	 *
+	 * @return The key for this classifier.
+	 */
+	public String getKey() {
+		return "number|" + learnCount;
+	}
+
+	/**
+	 * Parse the given value into an Integer, Long or BigDecimal.
+	 *
+	 * @param value The value to parse.
+	 * @return The number, or null if the value is not a number.
+	 */
+	public Object parse(String value) {
+		final State current = state;
+		if (current == State.INTEGER) {
+			Object result = parseSimpleInteger(value);
+			if (result != null) {
+				return result;
+			}
+		}
+		Object result = parseNumber(value);
+		if (current == State.LEARNING) {
+			learn(result);
+		}
+		return result;
+	}
+
+	private synchronized void learn(Object result) {
+		if (state != State.LEARNING || result == null) {
+			return;
+		}
+		if (!(result instanceof Integer || result instanceof Long)) {
+			state = State.MIXED;
+			return;
+		}
+		learned++;
+		if (learned >= learnCount) {
+			state = State.INTEGER;
+		}
+	}
+
+	/**
+	 * Parse a value that consists of an optional minus sign and at most 18
+	 * digits.
+	 *
+	 * @return the value, or null if the value is not of that simple form.
+	 */
+	private static Object parseSimpleInteger(String value) {
+		final int length = value.length();
+		int i = 0;
+		boolean negative = false;
+		if (length > 0 && value.charAt(0) == '-') {
+			negative = true;
+			i++;
+		}
+		if (i == length || length - i > MAX_LONG_DIGITS) {
+			return null;
+		}
+		long result = 0;
+		for (; i < length; i++) {
+			final char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return null;
+			}
+			result = result * 10 + (c - '0');
+		}
+		return toIntegerOrLong(negative ? -result : result);
+	}
+
+	private static Object toIntegerOrLong(long value) {
+		if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+			return (int) value;
+		}
+		return value;
+	}
+
+	/**
+	 * Parse the given value into an Integer, Long or BigDecimal.
+	 *
+	 * @param value The value to parse.
+	 * @return The number, or null if the value is not a number.
+	 */
+	public static Object parseNumber(String value) {
+		final int length = value.length();
+		if (length == 0) {
+			return null;
+		}
+		int i = 0;
+		boolean negative = false;
+		char c = value.charAt(0);
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			i++;
+		}
+		long unscaled = 0;
+		int digits = 0;
+		int significant = 0;
+		int fractionDigits = 0;
+		boolean dot = false;
+		for (; i < length; i++) {
+			c = value.charAt(i);
+			if (c >= '0' && c <= '9') {
+				digits++;
+				if (dot) {
+					fractionDigits++;
+				}
+				if (significant > 0 || c != '0') {
+					significant++;
+					if (significant <= MAX_LONG_DIGITS) {
+						unscaled = unscaled * 10 + (c - '0');
+					}
+				}
+			} else if (c == '.' && !dot) {
+				dot = true;
+			} else {
+				break;
+			}
+		}
+		if (digits == 0) {
+			return notANumber(value);
+		}
+		boolean hasExponent = false;
+		long exponent = 0;
+		if (i < length && (c == 'e' || c == 'E')) {
+			hasExponent = true;
+			i++;
+			boolean negativeExponent = false;
+			if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+				negativeExponent = value.charAt(i) == '-';
+				i++;
+			}
+			int exponentDigits = 0;
+			for (; i < length; i++) {
+				c = value.charAt(i);
+				if (c < '0' || c > '9') {
+					break;
+				}
+				exponentDigits++;
+				if (exponent <= Integer.MAX_VALUE) {
+					exponent = exponent * 10 + (c - '0');
+				}
+			}
+			if (exponentDigits == 0) {
+				return notANumber(value);
+			}
+			if (negativeExponent) {
+				exponent = -exponent;
+			}
+		}
+		if (i != length) {
+			return notANumber(value);
+		}
+		if (!dot && !hasExponent) {
+			if (significant <= MAX_LONG_DIGITS) {
+				return toIntegerOrLong(negative ? -unscaled : unscaled);
+			}
+			BigInteger bigInteger = new BigInteger(value);
+			if (bigInteger.bitLength() < 64) {
+				return bigInteger.longValue();
+			}
+			return new BigDecimal(bigInteger);
+		}
+		if (significant <= MAX_LONG_DIGITS && Math.abs(exponent) <= MAX_FAST_EXPONENT) {
+			return BigDecimal.valueOf(negative ? -unscaled : unscaled, (int) (fractionDigits - exponent));
+		}
+		try {
+			return new BigDecimal(value);
+		} catch (NumberFormatException ex) {
+			// Exponent out of range.
+			return null;
+		}
+	}
+
+	/**
+	 * The value is not a plain ASCII number. Java also accepts non-ASCII
+	 * digits, for those use the exception based parsers.
+	 */
+	private static Object notANumber(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) > 127) {
+				return parseWithExceptions(value);
+			}
+		}
+		return null;
+	}
+
+	private static Object parseWithExceptions(String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			// Not an Integer.
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			// Not a Long.
+		}
+		try {
+			return new BigDecimal(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Check if the given value can be parsed as BigDecimal.
+	 *
+	 * @param value The value to check.
+	 * @return true if the value is a number.
+	 */
+	public static boolean isNumber(String value) {
+		return parseNumber(value) != null;
+	}
+
+}
@@ -49,6 +49,9 @@ public class ParserBigdecimal implements Parser<BigDecimal>, AnnotatedConfigurab
 
 	@Override
 	public BigDecimal parse(String value) {
+		if (!NumberClassifier.isNumber(value)) {
+			return null;
+		}
 		try {
 			BigDecimal bigDecimal = new BigDecimal(value);
 			if (dropTailingZeroes) {
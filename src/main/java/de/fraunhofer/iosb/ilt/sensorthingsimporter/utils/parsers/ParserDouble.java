@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.gson.JsonElement;
+import de.fraunhofer.iosb.ilt.configurable.ConfigEditor;
+import de.fraunhofer.iosb.ilt.configurable.Configurable;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorNull;
+import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+
+/**
+ * Parses strings into doubles. Column based document parsers store the
+ * results of this parser in primitive arrays.
+ *
+ * @author hylke
+ */
+public class ParserDouble implements Parser<Double>, Configurable<SensorThingsService, Object> {
+
+	private final EditorNull editor = new EditorNull("Double", "Parses strings into doubles.");
+
+	@Override
+	public void configure(JsonElement config, SensorThingsService context, Object edtCtx, ConfigEditor<?> configEditor) {
+		getConfigEditor(context, edtCtx).setConfig(config);
+	}
+
+	@Override
+	public ConfigEditor<?> getConfigEditor(SensorThingsService context, Object edtCtx) {
+		return editor;
+	}
+
+	/**
+	 * Parse the given value without boxing.
+	 *
+	 * @param value The value to parse.
+	 * @return The value, or NaN if the value is not a finite number.
+	 */
+	public static double toDouble(String value) {
+		try {
+			double result = Double.parseDouble(value);
+			if (Double.isInfinite(result)) {
+				return Double.NaN;
+			}
+			return result;
+		} catch (NumberFormatException ex) {
+			return Double.NaN;
+		}
+	}
+
+	@Override
+	public Double parse(JsonNode value) {
+		if (value.isNumber()) {
+			return value.doubleValue();
+		}
+		return parse(value.asText());
+	}
+
+	@Override
+	public Double parse(String value) {
+		double result = toDouble(value);
+		if (Double.isNaN(result)) {
+			return null;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.gson.JsonElement;
+import de.fraunhofer.iosb.ilt.configurable.ConfigEditor;
+import de.fraunhofer.iosb.ilt.configurable.Configurable;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorNull;
+import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+
+/**
+ * Parses strings into longs. Column based document parsers store the results
+ * of this parser in primitive arrays.
+ *
+ * @author hylke
+ */
+public class ParserLong implements Parser<Long>, Configurable<SensorThingsService, Object> {
+
+	private final EditorNull editor = new EditorNull("Long", "Parses strings into longs.");
+
+	@Override
+	public void configure(JsonElement config, SensorThingsService context, Object edtCtx, ConfigEditor<?> configEditor) {
+		getConfigEditor(context, edtCtx).setConfig(config);
+	}
+
+	@Override
+	public ConfigEditor<?> getConfigEditor(SensorThingsService context, Object edtCtx) {
+		return editor;
+	}
+
+	@Override
+	public Long parse(JsonNode value) {
+		if (value.canConvertToLong() && value.isIntegralNumber()) {
+			return value.longValue();
+		}
+		return parse(value.asText());
+	}
+
+	@Override
+	public Long parse(String value) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+}
@@ -45,6 +45,7 @@ public class ParserTime implements ParserZonedDateTime, AnnotatedConfigurable<Ob
 	private String zone;
 
 	DateTimeFormatter formatter;
+	private TimeMemo memo = new TimeMemo();
 
 	@Override
 	public void configure(JsonElement config, Object context, Object edtCtx, ConfigEditor<?> configEditor) throws ConfigurationException {
@@ -53,6 +54,7 @@ public class ParserTime implements ParserZonedDateTime, AnnotatedConfigurable<Ob
 	}
 
 	private void init() {
+		memo = new TimeMemo();
 		formatter = DateTimeFormatter.ofPattern(format);
 		if (!Utils.isNullOrEmpty(zone)) {
 			formatter = formatter.withZone(ZoneId.of(zone));
@@ -79,11 +81,16 @@ public class ParserTime implements ParserZonedDateTime, AnnotatedConfigurable<Ob
 
 	@Override
 	public ZonedDateTime parse(String time) {
-		return ZonedDateTime.from(formatter.parse(time));
+		ZonedDateTime result = memo.get(time);
+		if (result == null) {
+			result = ZonedDateTime.from(formatter.parse(time));
+			memo.put(time, result);
+		}
+		return result;
 	}
 
 	@Override
 	public ZonedDateTime parse(JsonNode time) {
-		return ZonedDateTime.from(formatter.parse(time.asText()));
+		return parse(time.asText());
 	}
 }
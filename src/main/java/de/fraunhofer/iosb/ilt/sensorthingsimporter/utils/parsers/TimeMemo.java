@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers;
+
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small least-recently-used memo of parsed times. Each thread has its own
+ * memo, so no locking is needed when converting in parallel.
+ *
+ * @author hylke
+ */
+public class TimeMemo {
+
+	public static final int DEFAULT_SIZE = 1024;
+
+	private final ThreadLocal<Map<String, ZonedDateTime>> memo;
+
+	public TimeMemo() {
+		this(DEFAULT_SIZE);
+	}
+
+	public TimeMemo(final int size) {
+		memo = ThreadLocal.withInitial(() -> new LinkedHashMap<String, ZonedDateTime>(64, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ZonedDateTime> eldest) {
+				return size() > size;
+			}
+		});
+	}
+
+	public ZonedDateTime get(String value) {
+		return memo.get().get(value);
+	}
+
+	public void put(String value, ZonedDateTime time) {
+		memo.get().put(value, time);
+	}
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.document;
+
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.Parser;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.ParserDouble;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.ParserLong;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The parsed values of one column. Columns parsed with {@link ParserDouble}
+ * or {@link ParserLong} are stored in primitive arrays with a null bitmap,
+ * other columns as a list of objects. The values are exposed as a List view
+ * that only boxes values when they are read, for instance when the result is
+ * serialised.
+ *
+ * @author hylke
+ */
+abstract class ColumnBuffer {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private boolean hasData;
+
+	/**
+	 * Create a buffer that fits the given parser.
+	 *
+	 * @param parser The parser used for the column.
+	 * @return A new, empty buffer.
+	 */
+	public static ColumnBuffer forParser(Parser parser) {
+		if (parser instanceof ParserDouble) {
+			return new DoubleColumn();
+		}
+		if (parser instanceof ParserLong) {
+			return new LongColumn();
+		}
+		return new ObjectColumn(parser);
+	}
+
+	/**
+	 * Add a value. Empty values are stored as null.
+	 *
+	 * @param value The raw value to parse and add.
+	 */
+	public void add(String value) {
+		if (value.isEmpty()) {
+			addNull();
+		} else {
+			hasData = true;
+			addValue(value);
+		}
+	}
+
+	protected abstract void addValue(String value);
+
+	protected abstract void addNull();
+
+	public abstract int size();
+
+	public abstract Object get(int index);
+
+	/**
+	 * Check if any non-empty value was added.
+	 *
+	 * @return true if a non-empty value was added.
+	 */
+	public boolean hasData() {
+		return hasData;
+	}
+
+	/**
+	 * Get the values as a list. For primitive buffers the list is a view on
+	 * the buffer, the buffer should not be changed after this.
+	 *
+	 * @return The values as a list.
+	 */
+	public List<Object> toList() {
+		return new ColumnView(this);
+	}
+
+	private static class ColumnView extends AbstractList<Object> implements RandomAccess {
+
+		private final ColumnBuffer buffer;
+
+		public ColumnView(ColumnBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public Object get(int index) {
+			if (index < 0 || index >= buffer.size()) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + buffer.size());
+			}
+			return buffer.get(index);
+		}
+
+		@Override
+		public int size() {
+			return buffer.size();
+		}
+	}
+
+	private static class ObjectColumn extends ColumnBuffer {
+
+		private final Parser parser;
+		private final List<Object> values = new ArrayList<>();
+
+		public ObjectColumn(Parser parser) {
+			this.parser = parser;
+		}
+
+		@Override
+		protected void addValue(String value) {
+			values.add(parser.parse(value));
+		}
+
+		@Override
+		protected void addNull() {
+			values.add(null);
+		}
+
+		@Override
+		public int size() {
+			return values.size();
+		}
+
+		@Override
+		public Object get(int index) {
+			return values.get(index);
+		}
+
+		@Override
+		public List<Object> toList() {
+			return values;
+		}
+	}
+
+	private static class DoubleColumn extends ColumnBuffer {
+
+		private double[] values = new double[INITIAL_CAPACITY];
+		private final BitSet nulls = new BitSet();
+		private int size;
+
+		@Override
+		protected void addValue(String value) {
+			double parsed = ParserDouble.toDouble(value);
+			if (Double.isNaN(parsed)) {
+				addNull();
+				return;
+			}
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = parsed;
+		}
+
+		@Override
+		protected void addNull() {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			nulls.set(size++);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Object get(int index) {
+			if (nulls.get(index)) {
+				return null;
+			}
+			return values[index];
+		}
+	}
+
+	private static class LongColumn extends ColumnBuffer {
+
+		private long[] values = new long[INITIAL_CAPACITY];
+		private final BitSet nulls = new BitSet();
+		private int size;
+
+		@Override
+		protected void addValue(String value) {
+			long parsed;
+			try {
+				parsed = Long.parseLong(value);
+			} catch (NumberFormatException ex) {
+				addNull();
+				return;
+			}
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = parsed;
+		}
+
+		@Override
+		protected void addNull() {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			nulls.set(size++);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Object get(int index) {
+			if (nulls.get(index)) {
+				return null;
+			}
+			return values[index];
+		}
+	}
+}
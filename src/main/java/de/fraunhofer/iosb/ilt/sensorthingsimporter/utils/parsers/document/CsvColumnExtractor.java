@@ -27,6 +27,7 @@ import de.fraunhofer.iosb.ilt.configurable.editor.EditorMap;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorSubclass;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.CsvRow;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.DatastreamMapper;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.Parser;
 import de.fraunhofer.iosb.ilt.sta.model.Datastream;
@@ -115,37 +116,24 @@ public class CsvColumnExtractor implements DocumentParser {
 		CSVParser parser = CSVParser.parse(data, format);
 
 		int rowSkip = editorRowSkip.getValue();
-		List<List<Object>> results = new ArrayList<>();
-		List<Boolean> hasData = new ArrayList<>();
+		List<ColumnBuffer> results = new ArrayList<>();
 		for (CSVRecord record : parser) {
 			if (rowSkip > 0) {
 				rowSkip--;
 				continue;
 			}
-			int column = 0;
-			for (String value : record) {
+			final int size = record.size();
+			for (int column = 0; column < size; column++) {
 				while (column >= results.size()) {
-					results.add(new ArrayList<>());
-					hasData.add(Boolean.FALSE);
-					if (column >= parsers.size()) {
-						parsers.add(parsers.get(parsers.size() - 1));
-					}
-				}
-				List<Object> result = results.get(column);
-				if (value.isEmpty()) {
-					result.add(null);
-				} else {
-					Parser resultParser = parsers.get(column);
-					result.add(resultParser.parse(value));
-					hasData.set(column, Boolean.TRUE);
+					results.add(ColumnBuffer.forParser(parserFor(results.size())));
 				}
-				column++;
+				results.get(column).add(record.get(column));
 			}
 		}
 		List<Observation> observations = new ArrayList<>();
 		int dataCount = 0;
-		for (Boolean colHasData : hasData) {
-			if (colHasData) {
+		for (ColumnBuffer result : results) {
+			if (result.hasData()) {
 				dataCount++;
 			}
 		}
@@ -153,7 +141,7 @@ public class CsvColumnExtractor implements DocumentParser {
 		MultiDatastream mds;
 		List<List<Object>> mdsResult = null;
 		if (dsms.size() == 1 && dataCount > 1) {
-			mds = dsms.get(0).getMultiDatastreamFor(null);
+			mds = dsms.get(0).getMultiDatastreamFor((CsvRow) null);
 			if (mds != null) {
 				mdsResult = new ArrayList<>();
 				Observation obs = new Observation(mdsResult, mds);
@@ -162,25 +150,33 @@ public class CsvColumnExtractor implements DocumentParser {
 		}
 
 		int dataColumn = 0;
-		for (int column = 0; column < results.size(); column++) {
-			if (hasData.get(column)) {
+		for (ColumnBuffer column : results) {
+			if (column.hasData()) {
 				if (mdsResult == null) {
 					Observation obs = new Observation();
-					obs.setResult(results.get(column));
-					Datastream ds = dsms.get(dataColumn).getDatastreamFor(null);
+					obs.setResult(column.toList());
+					Datastream ds = dsms.get(dataColumn).getDatastreamFor((CsvRow) null);
 					if (ds != null) {
 						obs.setDatastream(ds);
 						dataColumn++;
 						observations.add(obs);
 					}
 				} else {
-					mdsResult.add(results.get(column));
+					mdsResult.add(column.toList());
 				}
 			}
 		}
 		return observations;
 	}
 
+	/**
+	 * Get the parser for the given column. The last parser is used for all
+	 * columns that have no parser of their own.
+	 */
+	private Parser parserFor(int column) {
+		return parsers.get(Math.min(column, parsers.size() - 1));
+	}
+
 	@Override
 	public List<Observation> process(Datastream ds, String input) throws ImportException {
 		try {
@@ -22,7 +22,13 @@ import de.fraunhofer.iosb.ilt.sta.model.Datastream;
 import de.fraunhofer.iosb.ilt.sta.model.MultiDatastream;
 import de.fraunhofer.iosb.ilt.sta.model.Observation;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import org.apache.commons.io.IOUtils;
 
 /**
  *
@@ -33,4 +39,26 @@ public interface DocumentParser extends Configurable<SensorThingsService, Object
 	public List<Observation> process(Datastream ds, String input) throws ImportException;
 
 	public List<Observation> process(MultiDatastream mds, String... inputs) throws ImportException;
+
+	/**
+	 * Process a document from a stream, returning the Observations in
+	 * batches. The stream is closed when the last batch is returned, or when
+	 * an exception is thrown. Iterators that still hold the stream after
+	 * returning should implement AutoCloseable, so the stream can be closed
+	 * when the consumer stops early. The default implementation reads the
+	 * entire document and processes it in one go.
+	 *
+	 * @param ds The Datastream to create the Observations for.
+	 * @param input The stream to read the document from.
+	 * @param charset The character set of the document.
+	 * @return The Observations, in batches.
+	 * @throws ImportException if the document can not be processed.
+	 */
+	public default Iterator<List<Observation>> process(Datastream ds, InputStream input, Charset charset) throws ImportException {
+		try (InputStream in = input) {
+			return Collections.singletonList(process(ds, IOUtils.toString(in, charset))).iterator();
+		} catch (IOException ex) {
+			throw new ImportException(ex);
+		}
+	}
 }
@@ -16,13 +16,17 @@
  */
 package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.document;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.gson.JsonElement;
 import de.fraunhofer.iosb.ilt.configurable.ConfigEditor;
 import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorBoolean;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorClass;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorInt;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorMap;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorSubclass;
@@ -35,12 +39,18 @@ import de.fraunhofer.iosb.ilt.sta.model.MultiDatastream;
 import de.fraunhofer.iosb.ilt.sta.model.Observation;
 import de.fraunhofer.iosb.ilt.sta.model.TimeObject;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import org.slf4j.LoggerFactory;
 
 /**
@@ -55,18 +65,35 @@ public class JsonConverter implements DocumentParser {
 	 */
 	private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(JsonConverter.class);
 
+	/**
+	 * The mapper for single Datastreams, that keeps the precision of floats.
+	 */
+	private static final ObjectMapper MAPPER_DECIMAL = new ObjectMapper().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+	/**
+	 * The mapper for MultiDatastreams.
+	 */
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
 	private EditorMap<Map<String, Object>> editor;
 	private EditorClass<SensorThingsService, Object, ParserTime> editorTimeParser;
 	private EditorSubclass<SensorThingsService, Object, Parser> editorResultParser;
 	private EditorString editorPathList;
 	private EditorString editorPathPhenTime;
 	private EditorString editorPathResult;
+	private EditorBoolean editorStreaming;
+	private EditorInt editorBatchSize;
+	private EditorBoolean editorInputsSorted;
+	private EditorBoolean editorFillMissing;
 
 	private String[] listPathParts;
 	private String[] phenTimePathParts;
 	private String[] resultPathParts;
 	private Parser resultParser;
 	private ParserTime timeParser;
+	private boolean streaming;
+	private int batchSize;
+	private boolean inputsSorted;
+	private boolean fillMissing;
 
 	@Override
 	public void configure(JsonElement config, SensorThingsService context, Object edtCtx, ConfigEditor<?> configEditor) throws ConfigurationException {
@@ -79,6 +106,10 @@ public class JsonConverter implements DocumentParser {
 		resultPathParts = resultPath.split("/");
 		resultParser = editorResultParser.getValue();
 		timeParser = editorTimeParser.getValue();
+		streaming = editorStreaming.getValue();
+		batchSize = editorBatchSize.getValue();
+		inputsSorted = editorInputsSorted.getValue();
+		fillMissing = editorFillMissing.getValue();
 	}
 
 	@Override
@@ -101,6 +132,18 @@ public class JsonConverter implements DocumentParser {
 			editorPathResult = new EditorString("VALORE", 1, "Result Path", "The path inside each element in the list, that holds the result");
 			editor.addOption("pathResult", editorPathResult, false);
 
+			editorStreaming = new EditorBoolean(false, "Streaming", "Read streamed documents element by element, instead of loading the entire document. Only for single Datastreams.");
+			editor.addOption("streaming", editorStreaming, true);
+
+			editorBatchSize = new EditorInt(1, 1000000, 1, 1000, "Batch Size", "The number of Observations to return at a time when streaming.");
+			editor.addOption("batchSize", editorBatchSize, true);
+
+			editorInputsSorted = new EditorBoolean(false, "Inputs Sorted", "The MultiDatastream inputs are sorted by time, and can be joined without sorting them first.");
+			editor.addOption("inputsSorted", editorInputsSorted, true);
+
+			editorFillMissing = new EditorBoolean(false, "Fill Missing", "For MultiDatastreams, create Observations for times that are missing in some inputs, with null for the missing components. If not set, such times are dropped.");
+			editor.addOption("fillMissing", editorFillMissing, true);
+
 		}
 		return editor;
 
@@ -109,9 +152,7 @@ public class JsonConverter implements DocumentParser {
 	@Override
 	public List<Observation> process(Datastream ds, String input) throws ImportException {
 		try {
-			ObjectMapper mapper = new ObjectMapper();
-			mapper.enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
-			JsonNode json = mapper.readTree(input);
+			JsonNode json = MAPPER_DECIMAL.readTree(input);
 
 			JsonNode listJson = JsonUtils.walk(json, listPathParts);
 			if (!listJson.isArray()) {
@@ -120,11 +161,7 @@ public class JsonConverter implements DocumentParser {
 
 			List<Observation> observationList = new ArrayList<>();
 			for (JsonNode element : listJson) {
-				ZonedDateTime phenTime = timeParser.parse(JsonUtils.walk(element, phenTimePathParts).asText());
-				Object result = resultParser.parse(JsonUtils.walk(element, resultPathParts));
-				Observation obs = new Observation(result, ds);
-				obs.setPhenomenonTime(new TimeObject(phenTime));
-				observationList.add(obs);
+				observationList.add(toObservation(element, ds));
 			}
 
 			return observationList;
@@ -134,47 +171,396 @@ public class JsonConverter implements DocumentParser {
 		}
 	}
 
+	private Observation toObservation(JsonNode element, Datastream ds) {
+		ZonedDateTime phenTime = timeParser.parse(JsonUtils.walk(element, phenTimePathParts).asText());
+		Object result = resultParser.parse(JsonUtils.walk(element, resultPathParts));
+		Observation obs = new Observation(result, ds);
+		obs.setPhenomenonTime(new TimeObject(phenTime));
+		return obs;
+	}
+
 	@Override
-	public List<Observation> process(MultiDatastream mds, String... inputs) throws ImportException {
-		Map<ZonedDateTime, Observation> observationsMap = new HashMap<>();
-		ObjectMapper mapper = new ObjectMapper();
-		int resultIndex = 0;
+	public Iterator<List<Observation>> process(Datastream ds, InputStream input, Charset charset) throws ImportException {
+		if (!streaming) {
+			return DocumentParser.super.process(ds, input, charset);
+		}
+		boolean success = false;
 		try {
-			for (String input : inputs) {
-				JsonNode json = mapper.readTree(input);
+			JsonParser parser = MAPPER_DECIMAL.getFactory().createParser(new InputStreamReader(input, charset));
+			if (!walkToList(parser)) {
+				throw new ImportException("List path did not lead to an array.");
+			}
+			success = true;
+			return new StreamingIterator(parser, ds);
+		} catch (IOException ex) {
+			LOGGER.error("Failed to parse.", ex);
+			throw new ImportException(ex);
+		} finally {
+			if (!success) {
+				closeQuietly(input);
+			}
+		}
+	}
 
-				JsonNode listJson = JsonUtils.walk(json, listPathParts);
-				if (!listJson.isArray()) {
-					throw new ImportException("List path did not lead to an array.");
+	private static void closeQuietly(AutoCloseable closeable) {
+		try {
+			closeable.close();
+		} catch (Exception ex) {
+			LOGGER.debug("Failed to close.", ex);
+		}
+	}
+
+	/**
+	 * Move the parser to the start of the array that the list path points
+	 * to, skipping all other content without loading it.
+	 *
+	 * @param parser The parser to move.
+	 * @return true if the list path points to an array.
+	 */
+	private boolean walkToList(JsonParser parser) throws IOException {
+		JsonToken token = parser.nextToken();
+		for (String pathPart : listPathParts) {
+			if (pathPart.isEmpty()) {
+				continue;
+			}
+			if (token == JsonToken.START_OBJECT) {
+				boolean found = false;
+				while (!found && parser.nextToken() == JsonToken.FIELD_NAME) {
+					found = pathPart.equals(parser.getCurrentName());
+					token = parser.nextToken();
+					if (!found) {
+						parser.skipChildren();
+					}
+				}
+				if (!found) {
+					return false;
+				}
+			} else if (token == JsonToken.START_ARRAY) {
+				int arrIndex;
+				try {
+					arrIndex = Integer.parseInt(pathPart);
+				} catch (NumberFormatException exc) {
+					LOGGER.warn("Array must be traversed with index. Could not parse {} to integer.", pathPart);
+					continue;
+				}
+				for (int i = 0; i <= arrIndex; i++) {
+					token = parser.nextToken();
+					if (token == JsonToken.END_ARRAY) {
+						return false;
+					}
+					if (i < arrIndex) {
+						parser.skipChildren();
+					}
 				}
+			} else {
+				return false;
+			}
+		}
+		return token == JsonToken.START_ARRAY;
+	}
+
+	/**
+	 * Reads the elements of the list one at a time, and returns them as
+	 * Observations in batches. If the document turns out to be malformed, the
+	 * Observations read up to that point are returned, and the stream ends.
+	 */
+	private class StreamingIterator implements Iterator<List<Observation>>, Closeable {
+
+		private final JsonParser parser;
+		private final Datastream ds;
+		private boolean done;
+
+		public StreamingIterator(JsonParser parser, Datastream ds) {
+			this.parser = parser;
+			this.ds = ds;
+		}
 
-				Map<ZonedDateTime, Observation> updatedMap = new HashMap<>();
-				for (JsonNode element : listJson) {
-					ZonedDateTime phenTime = timeParser.parse(JsonUtils.walk(element, phenTimePathParts).asText());
-					Object result = resultParser.parse(JsonUtils.walk(element, resultPathParts).asText());
-					if (resultIndex == 0) {
-						Object[] resultArr = new Object[inputs.length];
-						resultArr[resultIndex] = result;
-						Observation obs = new Observation(resultArr, mds);
-						obs.setPhenomenonTime(new TimeObject(phenTime));
-						updatedMap.put(phenTime, obs);
-					} else {
-						Observation obs = observationsMap.get(phenTime);
-						if (obs != null) {
-							((Object[]) obs.getResult())[resultIndex] = result;
-							updatedMap.put(phenTime, obs);
-						}
+		@Override
+		public boolean hasNext() {
+			return !done;
+		}
+
+		@Override
+		public List<Observation> next() {
+			if (done) {
+				throw new NoSuchElementException();
+			}
+			List<Observation> batch = new ArrayList<>(Math.min(batchSize, 1024));
+			try {
+				while (batch.size() < batchSize) {
+					JsonToken token = parser.nextToken();
+					if (token == null || token == JsonToken.END_ARRAY) {
+						finish();
+						break;
+					}
+					JsonNode element = MAPPER_DECIMAL.readTree(parser);
+					try {
+						batch.add(toObservation(element, ds));
+					} catch (RuntimeException ex) {
+						LOGGER.warn("Skipping element that could not be converted: {}", ex.getMessage());
 					}
 				}
-				resultIndex++;
-				observationsMap.clear();
-				observationsMap.putAll(updatedMap);
+			} catch (IOException ex) {
+				LOGGER.error("Failed to parse document, stopping: {}", ex.getMessage());
+				finish();
 			}
-			return new ArrayList<>(observationsMap.values());
+			return batch;
+		}
+
+		@Override
+		public void close() {
+			finish();
+		}
+
+		private void finish() {
+			done = true;
+			closeQuietly(parser);
+		}
+	}
+
+	/**
+	 * Joins the components of the inputs on their phenomenonTime, in one pass
+	 * over all inputs. Each input is read in time order: either streamed as
+	 * is, if the inputs are sorted, or read and sorted first. If a streamed
+	 * input turns out not to be sorted, the join is redone with sorting.
+	 *
+	 * @param mds The MultiDatastream to create the Observations for.
+	 * @param inputs The documents, one for each component of the
+	 * MultiDatastream.
+	 * @return The Observations, ordered by phenomenonTime.
+	 * @throws ImportException if an input can not be parsed.
+	 */
+	@Override
+	public List<Observation> process(MultiDatastream mds, String... inputs) throws ImportException {
+		try {
+			if (inputsSorted) {
+				try {
+					return mergeJoin(mds, inputs, false);
+				} catch (OutOfOrderException ex) {
+					LOGGER.debug("Input {} is not sorted by time, sorting all inputs.", ex.input);
+				}
+			}
+			return mergeJoin(mds, inputs, true);
 		} catch (IOException ex) {
 			LOGGER.error("Failed to parse.", ex);
 			throw new ImportException(ex);
 		}
 	}
 
+	private List<Observation> mergeJoin(MultiDatastream mds, String[] inputs, boolean sort) throws IOException, ImportException {
+		final int count = inputs.length;
+		final Cursor[] cursors = new Cursor[count];
+		try {
+			for (int i = 0; i < count; i++) {
+				EntrySource source = new StreamSource(i, inputs[i]);
+				if (sort) {
+					source = new SortedSource(source);
+				}
+				cursors[i] = new Cursor(i, source);
+			}
+			List<Observation> observations = new ArrayList<>();
+			int exhausted = 0;
+			for (Cursor cursor : cursors) {
+				if (!cursor.advance()) {
+					exhausted++;
+				}
+			}
+			while (exhausted < count && (fillMissing || exhausted == 0)) {
+				Instant minTime = null;
+				for (Cursor cursor : cursors) {
+					if (cursor.current != null && (minTime == null || cursor.current.instant.isBefore(minTime))) {
+						minTime = cursor.current.instant;
+					}
+				}
+				Object[] resultArr = new Object[count];
+				ZonedDateTime phenTime = null;
+				boolean complete = true;
+				for (Cursor cursor : cursors) {
+					Entry entry = cursor.current;
+					if (entry == null || !entry.instant.equals(minTime)) {
+						complete = false;
+						continue;
+					}
+					resultArr[cursor.index] = entry.result;
+					if (phenTime == null) {
+						phenTime = entry.time;
+					}
+					if (!cursor.advance()) {
+						exhausted++;
+					}
+				}
+				if (complete || fillMissing) {
+					Observation obs = new Observation(resultArr, mds);
+					obs.setPhenomenonTime(new TimeObject(phenTime));
+					observations.add(obs);
+				}
+			}
+			return observations;
+		} finally {
+			for (Cursor cursor : cursors) {
+				if (cursor != null) {
+					cursor.source.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * One time/result pair of a component.
+	 */
+	private static class Entry {
+
+		private final ZonedDateTime time;
+		private final Instant instant;
+		private final Object result;
+
+		public Entry(ZonedDateTime time, Object result) {
+			this.time = time;
+			this.instant = time.toInstant();
+			this.result = result;
+		}
+	}
+
+	private static interface EntrySource {
+
+		/**
+		 * Get the next entry.
+		 *
+		 * @return The next entry, or null if there are no more entries.
+		 */
+		public Entry next() throws IOException;
+
+		public void close();
+	}
+
+	/**
+	 * Reads the entries of one input, in document order, one element at a
+	 * time.
+	 */
+	private class StreamSource implements EntrySource {
+
+		private final int input;
+		private final JsonParser parser;
+		private boolean done;
+
+		public StreamSource(int input, String json) throws IOException, ImportException {
+			this.input = input;
+			parser = MAPPER.getFactory().createParser(json);
+			if (!walkToList(parser)) {
+				parser.close();
+				throw new ImportException("List path did not lead to an array.");
+			}
+		}
+
+		@Override
+		public Entry next() throws IOException {
+			while (!done) {
+				JsonToken token = parser.nextToken();
+				if (token == null || token == JsonToken.END_ARRAY) {
+					done = true;
+					break;
+				}
+				JsonNode element = MAPPER.readTree(parser);
+				ZonedDateTime phenTime = timeParser.parse(JsonUtils.walk(element, phenTimePathParts).asText());
+				if (phenTime == null) {
+					LOGGER.warn("Skipping element without valid time in input {}.", input);
+					continue;
+				}
+				Object result = resultParser.parse(JsonUtils.walk(element, resultPathParts).asText());
+				return new Entry(phenTime, result);
+			}
+			return null;
+		}
+
+		@Override
+		public void close() {
+			closeQuietly(parser);
+		}
+	}
+
+	/**
+	 * Reads all entries of another source, and returns them sorted by time.
+	 * Entries with the same time keep their document order.
+	 */
+	private static class SortedSource implements EntrySource {
+
+		private final List<Entry> entries = new ArrayList<>();
+		private int position;
+
+		public SortedSource(EntrySource source) throws IOException {
+			try {
+				for (Entry entry = source.next(); entry != null; entry = source.next()) {
+					entries.add(entry);
+				}
+			} finally {
+				source.close();
+			}
+			entries.sort((e1, e2) -> e1.instant.compareTo(e2.instant));
+		}
+
+		@Override
+		public Entry next() {
+			if (position >= entries.size()) {
+				return null;
+			}
+			return entries.get(position++);
+		}
+
+		@Override
+		public void close() {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Walks over the entries of a source, one distinct time at a time. Of
+	 * entries with the same time, the last one is used.
+	 */
+	private static class Cursor {
+
+		private final int index;
+		private final EntrySource source;
+		private Entry current;
+		private Entry lookahead;
+
+		public Cursor(int index, EntrySource source) throws IOException {
+			this.index = index;
+			this.source = source;
+			lookahead = source.next();
+		}
+
+		/**
+		 * Move to the next distinct time.
+		 *
+		 * @return false if there are no more entries.
+		 * @throws OutOfOrderException if the source is not sorted by time.
+		 */
+		public boolean advance() throws IOException {
+			current = lookahead;
+			if (current == null) {
+				return false;
+			}
+			lookahead = source.next();
+			while (lookahead != null && lookahead.instant.equals(current.instant)) {
+				current = lookahead;
+				lookahead = source.next();
+			}
+			if (lookahead != null && lookahead.instant.isBefore(current.instant)) {
+				throw new OutOfOrderException(index);
+			}
+			return true;
+		}
+	}
+
+	private static class OutOfOrderException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+		private final int input;
+
+		public OutOfOrderException(int input) {
+			super("Input " + input + " is not sorted by time.");
+			this.input = input;
+		}
+	}
+
 }
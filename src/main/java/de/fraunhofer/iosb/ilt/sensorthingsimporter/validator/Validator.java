@@ -19,6 +19,7 @@ package de.fraunhofer.iosb.ilt.sensorthingsimporter.validator;
 
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
 import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import java.util.List;
 
 /**
  *
@@ -28,6 +29,24 @@ public interface Validator {
 
 	public boolean isValid(Observation obs) throws ImportException;
 
+	/**
+	 * Tell the validator if it is running in noAct mode. In noAct mode a
+	 * validator must not change anything in the server.
+	 *
+	 * @param noAct flag indicating nothing should be changed.
+	 */
+	public default void setNoAct(boolean noAct) {
+	}
+
+	/**
+	 * Called after the given, validated, Observations have been sent to the
+	 * server without errors. Never called when running in noAct mode.
+	 *
+	 * @param observations The Observations that have been sent.
+	 */
+	public default void observationsSent(List<Observation> observations) {
+	}
+
 	/**
 	 * Always returns true.
 	 */
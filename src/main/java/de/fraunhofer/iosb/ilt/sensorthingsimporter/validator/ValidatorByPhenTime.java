@@ -21,7 +21,7 @@ import de.fraunhofer.iosb.ilt.configurable.AnnotatedConfigurable;
 import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorBoolean;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
-import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.FrostUtils;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.BulkDeleter;
 import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
 import de.fraunhofer.iosb.ilt.sta.dao.BaseDao;
 import de.fraunhofer.iosb.ilt.sta.model.Datastream;
@@ -69,6 +69,7 @@ public class ValidatorByPhenTime implements Validator, AnnotatedConfigurable<Sen
 	@EditorBoolean.EdOptsBool(dflt = true)
 	private boolean deleteDuplicates;
 
+	private boolean noAct = false;
 	private Id latestDsId;
 	private Id latestMdsId;
 	private Instant cacheStart;
@@ -185,8 +186,12 @@ public class ValidatorByPhenTime implements Validator, AnnotatedConfigurable<Sen
 			}
 		}
 		if (!Utils.isNullOrEmpty(toDelete)) {
-			LOGGER.warn("Deleting {} duplicates.", toDelete.size());
-			new FrostUtils(toDelete.get(0).getService()).delete(toDelete, 100);
+			if (noAct) {
+				LOGGER.warn("Dry Run: Not deleting {} duplicates.", toDelete.size());
+			} else {
+				LOGGER.warn("Queueing {} duplicates for deletion.", toDelete.size());
+				BulkDeleter.getInstance().deleteAsync(toDelete);
+			}
 		}
 
 		return cache.get(checkTime);
@@ -232,6 +237,11 @@ public class ValidatorByPhenTime implements Validator, AnnotatedConfigurable<Sen
 		}
 	}
 
+	@Override
+	public void setNoAct(boolean noAct) {
+		this.noAct = noAct;
+	}
+
 	@Override
 	public boolean isValid(Observation obs) throws ImportException {
 		try {
@@ -72,4 +72,18 @@ public class ValidatorMulti implements Validator, Configurable<SensorThingsServi
 		return true;
 	}
 
+	@Override
+	public void setNoAct(boolean noAct) {
+		for (Validator validator : validators) {
+			validator.setNoAct(noAct);
+		}
+	}
+
+	@Override
+	public void observationsSent(List<Observation> observations) {
+		for (Validator validator : validators) {
+			validator.observationsSent(observations);
+		}
+	}
+
 }
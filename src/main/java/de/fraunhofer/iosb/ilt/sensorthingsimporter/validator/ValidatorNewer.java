@@ -24,7 +24,6 @@ import de.fraunhofer.iosb.ilt.configurable.editor.EditorNull;
 import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
 import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
 import de.fraunhofer.iosb.ilt.sta.model.Datastream;
-import de.fraunhofer.iosb.ilt.sta.model.Id;
 import de.fraunhofer.iosb.ilt.sta.model.MultiDatastream;
 import de.fraunhofer.iosb.ilt.sta.model.Observation;
 import de.fraunhofer.iosb.ilt.sta.model.TimeObject;
@@ -37,13 +36,17 @@ import java.util.Map;
  * Checks if the observation has a phenomenonTime that is later than the latest
  * in the configured datastream.
  *
+ * The latest time of each datastream is looked up once per run, and kept for
+ * the rest of the run. It is not shared between runs, since other writers may
+ * have added Observations in the mean time.
+ *
  * @author scf
  */
 public class ValidatorNewer implements Validator, Configurable<SensorThingsService, Object> {
 
 	private EditorNull editor = new EditorNull("Validator", "Validates the observation against the datastream");
-	private final Map<Id, Instant> datastreamCache = new HashMap<>();
-	private final Map<Id, Instant> multiDatastreamCache = new HashMap<>();
+	private final Map<String, Instant> datastreamTimes = new HashMap<>();
+	private final Map<String, Instant> multiDatastreamTimes = new HashMap<>();
 
 	@Override
 	public boolean isValid(Observation obs) throws ImportException {
@@ -59,56 +62,48 @@ public class ValidatorNewer implements Validator, Configurable<SensorThingsServi
 			} else {
 				latest = getTimeForDatastream(ds);
 			}
-			TimeObject phenomenonTime = obs.getPhenomenonTime();
-			Instant obsInstant;
-			if (phenomenonTime.isInterval()) {
-				obsInstant = phenomenonTime.getAsInterval().getStart();
-			} else {
-				obsInstant = phenomenonTime.getAsDateTime().toInstant();
-			}
-			return latest.isBefore(obsInstant);
+			return latest.isBefore(getInstant(obs.getPhenomenonTime()));
 		} catch (ServiceFailureException ex) {
 			throw new ImportException("Failed to validate.", ex);
 		}
 	}
 
+	private static Instant getInstant(TimeObject phenomenonTime) {
+		if (phenomenonTime.isInterval()) {
+			return phenomenonTime.getAsInterval().getStart();
+		}
+		return phenomenonTime.getAsDateTime().toInstant();
+	}
+
 	private Instant getTimeForDatastream(Datastream ds) throws ServiceFailureException {
-		Id dsId = ds.getId();
-		Instant latest = datastreamCache.get(dsId);
-		if (latest == null) {
-			Observation firstObs = ds.observations().query().select("@iot.id", "phenomenonTime").orderBy("phenomenonTime desc").first();
-			if (firstObs == null) {
-				latest = Instant.MIN;
-			} else {
-				TimeObject phenomenonTime = firstObs.getPhenomenonTime();
-				if (phenomenonTime.isInterval()) {
-					latest = phenomenonTime.getAsInterval().getStart();
-				} else {
-					latest = phenomenonTime.getAsDateTime().toInstant();
-				}
-			}
-			datastreamCache.put(dsId, latest);
+		String key = ds.getId().getUrl();
+		Instant latest = datastreamTimes.get(key);
+		if (latest != null) {
+			return latest;
 		}
+		Observation firstObs = ds.observations().query().select("@iot.id", "phenomenonTime").orderBy("phenomenonTime desc").first();
+		if (firstObs == null) {
+			latest = Instant.MIN;
+		} else {
+			latest = getInstant(firstObs.getPhenomenonTime());
+		}
+		datastreamTimes.put(key, latest);
 		return latest;
 	}
 
 	private Instant getTimeForMultiDatastream(MultiDatastream mds) throws ServiceFailureException {
-		Id dsId = mds.getId();
-		Instant latest = multiDatastreamCache.get(dsId);
-		if (latest == null) {
-			Observation firstObs = mds.observations().query().select("@iot.id", "phenomenonTime").orderBy("phenomenonTime desc").first();
-			if (firstObs == null) {
-				latest = Instant.MIN;
-			} else {
-				TimeObject phenomenonTime = firstObs.getPhenomenonTime();
-				if (phenomenonTime.isInterval()) {
-					latest = phenomenonTime.getAsInterval().getStart();
-				} else {
-					latest = phenomenonTime.getAsDateTime().toInstant();
-				}
-			}
-			multiDatastreamCache.put(dsId, latest);
+		String key = mds.getId().getUrl();
+		Instant latest = multiDatastreamTimes.get(key);
+		if (latest != null) {
+			return latest;
+		}
+		Observation firstObs = mds.observations().query().select("@iot.id", "phenomenonTime").orderBy("phenomenonTime desc").first();
+		if (firstObs == null) {
+			latest = Instant.MIN;
+		} else {
+			latest = getInstant(firstObs.getPhenomenonTime());
 		}
+		multiDatastreamTimes.put(key, latest);
 		return latest;
 	}
 
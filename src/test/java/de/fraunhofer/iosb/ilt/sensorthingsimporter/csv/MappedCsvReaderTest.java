@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author hylke
+ */
+public class MappedCsvReaderTest {
+
+	private static final String CONTENT = ""
+			+ "time,name,value\n"
+			+ "2021-01-01T00:00:00Z,plain,1\n"
+			+ "2021-01-01T01:00:00Z,\"with,comma\",2\r\n"
+			+ "\n"
+			+ "2021-01-01T02:00:00Z,\"with\nnewline\",3\r\n"
+			+ "2021-01-01T03:00:00Z,\"with \"\"quotes\"\"\",4\r"
+			+ "2021-01-01T04:00:00Z,\"with\r\ncrlf\",5\n"
+			+ "\r\n"
+			+ "2021-01-01T05:00:00Z,,6\n"
+			+ "2021-01-01T06:00:00Z,ümlaut,7\n"
+			+ "2021-01-01T07:00:00Z,\"\",8";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	public MappedCsvReaderTest() {
+	}
+
+	private File createFile(String content) throws IOException {
+		File file = folder.newFile();
+		FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+		return file;
+	}
+
+	private static List<List<String>> expected(String content, boolean hasHeader) throws IOException {
+		CSVFormat format = CSVFormat.DEFAULT;
+		if (hasHeader) {
+			format = format.withFirstRecordAsHeader();
+		}
+		List<List<String>> result = new ArrayList<>();
+		for (CSVRecord record : CSVParser.parse(content, format)) {
+			List<String> row = new ArrayList<>();
+			for (String value : record) {
+				row.add(value);
+			}
+			result.add(row);
+		}
+		return result;
+	}
+
+	private static List<List<String>> read(Iterable<CsvRow> rows, List<Long> numbers) {
+		List<List<String>> result = new ArrayList<>();
+		for (CsvRow record : rows) {
+			List<String> row = new ArrayList<>();
+			for (int i = 0; i < record.size(); i++) {
+				row.add(record.get(i));
+			}
+			result.add(row);
+			numbers.add(record.getRecordNumber());
+		}
+		return result;
+	}
+
+	@Test
+	public void testReadAll() throws IOException {
+		File file = createFile(CONTENT);
+		for (int window : new int[]{8, 13, 64, MappedCsvReader.DEFAULT_WINDOW_SIZE}) {
+			try (MappedCsvReader reader = new MappedCsvReader(file, StandardCharsets.UTF_8, ',', true, window)) {
+				Assert.assertEquals("time", reader.getHeaderNames().get(0));
+				List<Long> numbers = new ArrayList<>();
+				Assert.assertEquals("Window " + window, expected(CONTENT, true), read(reader, numbers));
+				Assert.assertEquals(Long.valueOf(1), numbers.get(0));
+			}
+		}
+	}
+
+	@Test
+	public void testSplit() throws IOException {
+		File file = createFile(CONTENT);
+		List<List<String>> expected = expected(CONTENT, true);
+		for (long chunkSize : new long[]{1, 10, 40, 100, 10000}) {
+			try (MappedCsvReader reader = new MappedCsvReader(file, StandardCharsets.UTF_8, ',', true, 16)) {
+				List<MappedCsvReader.Chunk> chunks = reader.split(chunkSize);
+				List<List<String>> actual = new ArrayList<>();
+				long rowsBefore = 0;
+				for (MappedCsvReader.Chunk chunk : chunks) {
+					Assert.assertEquals("Chunk size " + chunkSize, rowsBefore, chunk.getRowsBefore());
+					List<Long> numbers = new ArrayList<>();
+					List<List<String>> rows = read(chunk, numbers);
+					Assert.assertEquals("Chunk size " + chunkSize, chunk.getRowCount(), rows.size());
+					for (int i = 0; i < numbers.size(); i++) {
+						Assert.assertEquals(rowsBefore + i + 1, numbers.get(i).longValue());
+					}
+					actual.addAll(rows);
+					rowsBefore += rows.size();
+				}
+				Assert.assertEquals("Chunk size " + chunkSize, expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void testNoHeaderAndBom() throws IOException {
+		String content = "a;b\n\"c;d\";e\n";
+		File file = createFile("\uFEFF" + content);
+		try (MappedCsvReader reader = new MappedCsvReader(file, StandardCharsets.UTF_8, ';', false)) {
+			Assert.assertNull(reader.getHeaderNames());
+			List<List<String>> actual = read(reader, new ArrayList<>());
+			Assert.assertEquals(2, actual.size());
+			Assert.assertEquals("a", actual.get(0).get(0));
+			Assert.assertEquals("c;d", actual.get(1).get(0));
+			Assert.assertEquals("e", actual.get(1).get(1));
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import com.google.gson.JsonObject;
+import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Compares the throughput of a dynamically and a statically compiled
+ * RecordConverterGroovy script. Not a unit test, run it with:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.RecordConverterGroovyBenchmark
+ *
+ * @author hylke
+ */
+public class RecordConverterGroovyBenchmark {
+
+	private static final String SCRIPT = ""
+			+ "import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException\n"
+			+ "import de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.CsvRow\n"
+			+ "import de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.RecordConverter\n"
+			+ "import de.fraunhofer.iosb.ilt.sta.model.Datastream\n"
+			+ "import de.fraunhofer.iosb.ilt.sta.model.Observation\n"
+			+ "class BenchConverter implements RecordConverter {\n"
+			+ "  List<Observation> convert(CsvRow record) throws ImportException {\n"
+			+ "    double sum = 0\n"
+			+ "    for (int i = 1; i < record.size(); i++) {\n"
+			+ "      sum += Double.parseDouble(record.get(i))\n"
+			+ "    }\n"
+			+ "    return [new Observation(sum, (Datastream) null)]\n"
+			+ "  }\n"
+			+ "}\n";
+
+	private static final int ROWS = 1024;
+	private static final int WARMUP_ROUNDS = 500;
+	private static final int ROUNDS = 2000;
+
+	private RecordConverterGroovyBenchmark() {
+		// Utility class.
+	}
+
+	public static void main(String[] args) throws ImportException, IOException, ConfigurationException {
+		List<CsvRow> rows = createRows();
+		for (boolean compileStatic : new boolean[]{false, true}) {
+			JsonObject config = new JsonObject();
+			config.addProperty("script", SCRIPT);
+			config.addProperty("compileStatic", compileStatic);
+			RecordConverterGroovy converter = new RecordConverterGroovy();
+			converter.configure(config, null, null, null);
+
+			long start = System.nanoTime();
+			converter.init(null);
+			long initMs = (System.nanoTime() - start) / 1_000_000;
+
+			CountingSink sink = new CountingSink();
+			for (int i = 0; i < WARMUP_ROUNDS; i++) {
+				converter.convert(rows, sink);
+			}
+			start = System.nanoTime();
+			for (int i = 0; i < ROUNDS; i++) {
+				converter.convert(rows, sink);
+			}
+			long nanos = System.nanoTime() - start;
+			long rowsPerSecond = (long) ROWS * ROUNDS * 1_000_000_000L / nanos;
+			System.out.println((compileStatic ? "static:  " : "dynamic: ") + "init " + initMs + " ms, " + rowsPerSecond + " rows/s (" + sink.count + " observations)");
+		}
+	}
+
+	private static List<CsvRow> createRows() throws IOException {
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < ROWS; i++) {
+			csv.append("2021-01-01T00:00:00Z,").append(i).append('.').append(i % 10).append(",1.5,-3,42\n");
+		}
+		List<CsvRow> rows = new ArrayList<>();
+		for (CSVRecord record : CSVParser.parse(csv.toString(), CSVFormat.DEFAULT)) {
+			rows.add(CsvRow.wrap(record));
+		}
+		return rows;
+	}
+
+	private static class CountingSink implements ObservationSink {
+
+		private long count;
+
+		@Override
+		public void accept(Observation observation) {
+			count++;
+		}
+
+		@Override
+		public void failed(CsvRow record, ImportException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author hylke
+ */
+public class RecordConverterTest {
+
+	public RecordConverterTest() {
+	}
+
+	@Test
+	public void testCheckImplemented() throws ImportException {
+		RecordConverter.checkImplemented(new RecordConverter() {
+			@Override
+			public List<Observation> convert(CsvRow record) {
+				return Collections.emptyList();
+			}
+		});
+		RecordConverter.checkImplemented(new RecordConverter() {
+			@Override
+			public List<Observation> convert(CSVRecord record) {
+				return Collections.emptyList();
+			}
+		});
+	}
+
+	@Test
+	public void testCheckNotImplemented() {
+		try {
+			RecordConverter.checkImplemented(new RecordConverter() {
+			});
+			Assert.fail("Converter without convert method accepted.");
+		} catch (ImportException ex) {
+			// Expected.
+		}
+	}
+
+}
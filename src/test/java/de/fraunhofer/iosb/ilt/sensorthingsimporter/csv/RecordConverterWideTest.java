@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the column plans of RecordConverterWide, against a minimal local
+ * server that only knows how to find Datastreams.
+ *
+ * @author hylke
+ */
+public class RecordConverterWideTest {
+
+	private static final Pattern DS_BY_ID = Pattern.compile(".*/Datastreams\\(([0-9]+)\\)$");
+	private static final Pattern COLUMN_FILTER = Pattern.compile("properties/column eq '(.*)'");
+
+	/**
+	 * The Datastream ids the server returns for a column filter.
+	 */
+	private final Map<String, Integer> columnDatastreams = new HashMap<>();
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private HttpServer server;
+	private SensorThingsService service;
+
+	public RecordConverterWideTest() {
+	}
+
+	@Before
+	public void setUp() throws IOException, URISyntaxException {
+		columnDatastreams.put("temp", 1);
+		columnDatastreams.put("wind", 2);
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/v1.0/", this::handle);
+		server.start();
+		service = new SensorThingsService(new URI("http://localhost:" + server.getAddress().getPort() + "/v1.0/"));
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requestCount.incrementAndGet();
+		String path = exchange.getRequestURI().getPath();
+		String query = exchange.getRequestURI().getRawQuery();
+		String body;
+		Matcher idMatcher = DS_BY_ID.matcher(path);
+		if (idMatcher.matches()) {
+			body = datastreamJson(Integer.parseInt(idMatcher.group(1)));
+		} else {
+			List<String> found = new ArrayList<>();
+			for (String param : query == null ? new String[0] : query.split("&")) {
+				String decoded = URLDecoder.decode(param, "UTF-8");
+				if (!decoded.startsWith("$filter=")) {
+					continue;
+				}
+				Matcher filterMatcher = COLUMN_FILTER.matcher(decoded.substring(8));
+				if (filterMatcher.matches() && columnDatastreams.containsKey(filterMatcher.group(1))) {
+					found.add(datastreamJson(columnDatastreams.get(filterMatcher.group(1))));
+				}
+			}
+			body = "{\"value\":[" + String.join(",", found) + "]}";
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static String datastreamJson(int id) {
+		return "{\"@iot.id\":" + id + ",\"name\":\"Datastream " + id + "\"}";
+	}
+
+	private RecordConverterWide createConverter(String config) throws ImportException, ConfigurationException {
+		RecordConverterWide converter = new RecordConverterWide();
+		converter.configure(new JsonParser().parse(config), service, null, null);
+		converter.init(service);
+		return converter;
+	}
+
+	private static List<CsvRow> parse(String csv, CSVFormat format) throws IOException {
+		List<CsvRow> rows = new ArrayList<>();
+		for (CSVRecord record : CSVParser.parse(csv, format)) {
+			rows.add(CsvRow.wrap(record));
+		}
+		return rows;
+	}
+
+	private static Map<Object, Object> resultsByDatastream(List<Observation> observations) throws ServiceFailureException {
+		Map<Object, Object> results = new HashMap<>();
+		for (Observation obs : observations) {
+			results.put(obs.getDatastream().getId().getValue(), obs.getResult());
+		}
+		return results;
+	}
+
+	@Test
+	public void testPlanFromHeader() throws IOException, ImportException, ConfigurationException, ServiceFailureException {
+		RecordConverterWide converter = createConverter("{"
+				+ "\"colPhenTime\":[\"time\"],"
+				+ "\"columnMapping\":\"{\\\"hum\\\": 7}\","
+				+ "\"filterTemplate\":\"properties/column eq '{column}'\","
+				+ "\"columnRegex\":\"t.*|w.*|other\""
+				+ "}");
+		List<CsvRow> rows = parse(
+				"time,temp,hum,other,wind\n"
+				+ "2021-01-01T00:00:00Z,1.5,70,x,\n"
+				+ "2021-01-01T01:00:00Z,2.5,71,y,3\n",
+				CSVFormat.DEFAULT.withFirstRecordAsHeader());
+
+		List<Observation> first = converter.convert(rows.get(0));
+		int planRequests = requestCount.get();
+		Map<Object, Object> results = resultsByDatastream(first);
+		Assert.assertEquals(2, results.size());
+		Assert.assertEquals(70, ((Number) results.get(7L)).intValue());
+		Assert.assertEquals(1.5, ((Number) results.get(1L)).doubleValue(), 0);
+
+		List<Observation> second = converter.convert(rows.get(1));
+		Assert.assertEquals("Plan should be reused for the same header.", planRequests, requestCount.get());
+		results = resultsByDatastream(second);
+		Assert.assertEquals(3, results.size());
+		Assert.assertEquals(3, ((Number) results.get(2L)).intValue());
+		Assert.assertEquals("2021-01-01T01:00Z", second.get(0).getPhenomenonTime().getAsDateTime().toString());
+
+		List<CsvRow> otherFile = parse(
+				"wind,time\n"
+				+ "4,2021-01-02T00:00:00Z\n",
+				CSVFormat.DEFAULT.withFirstRecordAsHeader());
+		try {
+			converter.convert(otherFile.get(0));
+			Assert.fail("Mapped column missing from the new header should fail.");
+		} catch (ImportException ex) {
+			// Expected, hum is not in this header.
+		}
+		Assert.assertTrue("A new header should create a new plan.", requestCount.get() > planRequests);
+	}
+
+	@Test
+	public void testPlanWithoutHeader() throws IOException, ImportException, ConfigurationException, ServiceFailureException {
+		RecordConverterWide converter = createConverter("{"
+				+ "\"colPhenTime\":[\"0\", \"1\"],"
+				+ "\"columnMapping\":\"{\\\"3\\\": 5, \\\"2\\\": \\\"properties/column eq 'temp'\\\"}\","
+				+ "\"filterTemplate\":\"properties/column eq '{column}'\""
+				+ "}");
+		List<CsvRow> rows = parse(
+				"2021-01-01T00:00:00Z,2021-01-01T01:00:00Z,10,20\n"
+				+ "2021-01-01T01:00:00Z,2021-01-01T02:00:00Z,11\n",
+				CSVFormat.DEFAULT);
+		List<Observation> result = new ArrayList<>();
+		converter.convert(rows, new ObservationSink() {
+			@Override
+			public void accept(Observation observation) {
+				result.add(observation);
+			}
+
+			@Override
+			public void failed(CsvRow record, ImportException ex) {
+				Assert.fail("Row " + record.getRecordNumber() + " failed: " + ex.getMessage());
+			}
+		});
+		Assert.assertEquals(3, result.size());
+		Map<Object, Object> results = resultsByDatastream(result.subList(0, 2));
+		Assert.assertEquals(10, ((Number) results.get(1L)).intValue());
+		Assert.assertEquals(20, ((Number) results.get(5L)).intValue());
+		Assert.assertEquals(1L, result.get(2).getDatastream().getId().getValue());
+		Assert.assertTrue(result.get(2).getPhenomenonTime().isInterval());
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author hylke
+ */
+public class TailInputStreamTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+	private URL url;
+
+	public TailInputStreamTest() {
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		file = folder.newFile("data.csv");
+		url = file.toURI().toURL();
+	}
+
+	private void write(String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void append(String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+	}
+
+	private static String readAll(TailInputStream input) throws IOException {
+		try {
+			return IOUtils.toString(input, StandardCharsets.UTF_8);
+		} finally {
+			input.close();
+		}
+	}
+
+	@Test
+	public void testAppend() throws IOException {
+		write("h\n1\n2\npar");
+		TailInputStream input = TailInputStream.open(url, null, true);
+		Assert.assertEquals("The incomplete line should be held back.", "h\n1\n2\n", readAll(input));
+		TailOffsets.Position position = input.getPosition();
+		Assert.assertEquals(0, input.getStart());
+		Assert.assertEquals(6, position.getOffset());
+		Assert.assertEquals("h\n", new String(position.getHeader(), StandardCharsets.UTF_8));
+
+		append("t3\n4\n");
+		input = TailInputStream.open(url, position, true);
+		Assert.assertEquals("h\npart3\n4\n", readAll(input));
+		Assert.assertEquals(6, input.getStart());
+		Assert.assertEquals(8, input.getReleased());
+		position = input.getPosition();
+		Assert.assertEquals(14, position.getOffset());
+
+		input = TailInputStream.open(url, position, true);
+		Assert.assertEquals("Nothing appended, only the header.", "h\n", readAll(input));
+		Assert.assertEquals(14, input.getPosition().getOffset());
+	}
+
+	@Test
+	public void testAppendNoHeader() throws IOException {
+		write("1\n2\n");
+		TailInputStream input = TailInputStream.open(url, null, false);
+		Assert.assertEquals("1\n2\n", readAll(input));
+		TailOffsets.Position position = input.getPosition();
+		Assert.assertNull(position.getHeader());
+
+		append("3\n");
+		input = TailInputStream.open(url, position, false);
+		Assert.assertEquals("3\n", readAll(input));
+	}
+
+	@Test
+	public void testTruncated() throws IOException {
+		write("h\n1\n2\n3\n");
+		TailInputStream input = TailInputStream.open(url, null, true);
+		readAll(input);
+		TailOffsets.Position position = input.getPosition();
+
+		write("h\n4\n");
+		input = TailInputStream.open(url, position, true);
+		Assert.assertEquals("h\n4\n", readAll(input));
+		Assert.assertEquals(0, input.getStart());
+		Assert.assertEquals(4, input.getPosition().getOffset());
+	}
+
+	@Test
+	public void testRotated() throws IOException {
+		write("h\n1\n2\n");
+		TailInputStream input = TailInputStream.open(url, null, true);
+		readAll(input);
+		TailOffsets.Position position = input.getPosition();
+
+		write("h\n7\n8\n9\n");
+		input = TailInputStream.open(url, position, true);
+		Assert.assertEquals("A replaced file should be read from the start.", "h\n7\n8\n9\n", readAll(input));
+		Assert.assertEquals(0, input.getStart());
+	}
+
+	@Test
+	public void testLongLines() throws IOException {
+		StringBuilder longLine = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			longLine.append((char) ('a' + i % 26));
+		}
+		write("h\n" + longLine + "\n");
+		TailInputStream input = TailInputStream.open(url, null, true);
+		Assert.assertEquals("h\n" + longLine + "\n", readAll(input));
+		TailOffsets.Position position = input.getPosition();
+		Assert.assertEquals(100003, position.getOffset());
+
+		append(longLine + "\n");
+		input = TailInputStream.open(url, position, true);
+		Assert.assertEquals("h\n" + longLine + "\n", readAll(input));
+	}
+
+}
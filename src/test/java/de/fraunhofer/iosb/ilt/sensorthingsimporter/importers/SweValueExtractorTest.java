@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.importers;
+
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.importers.ImporterAtAqd.SweValueExtractor;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.importers.eea.SosObservationResponse;
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLStreamException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the tokenizer for swe:values of the AT AQD importer.
+ *
+ * @author hylke
+ */
+public class SweValueExtractorTest {
+
+	public SweValueExtractorTest() {
+	}
+
+	private static SosObservationResponse createResponse(String encoding, int count, String values) throws XMLStreamException {
+		String xml = "<om:OM_Observation xmlns:om=\"" + SosObservationResponse.NS_OM + "\""
+				+ " xmlns:swe=\"" + SosObservationResponse.NS_SWE + "\""
+				+ " xmlns:xlink=\"" + SosObservationResponse.NS_XLINK + "\">"
+				+ "<om:result><swe:DataArray>"
+				+ "<swe:elementCount><swe:Count><swe:value>" + count + "</swe:value></swe:Count></swe:elementCount>"
+				+ "<swe:elementType name=\"Components\"><swe:DataRecord>"
+				+ "<swe:field name=\"StartTime\"><swe:Time><swe:uom xlink:href=\"http://www.opengis.net/def/uom/ISO-8601/0/Gregorian\"/></swe:Time></swe:field>"
+				+ "<swe:field name=\"EndTime\"><swe:Time><swe:uom xlink:href=\"http://www.opengis.net/def/uom/ISO-8601/0/Gregorian\"/></swe:Time></swe:field>"
+				+ "<swe:field name=\"Validity\"><swe:Category/></swe:field>"
+				+ "<swe:field name=\"Value\"><swe:Quantity><swe:uom xlink:href=\"http://dd.eionet.europa.eu/vocabulary/uom/concentration/ug.m-3\"/></swe:Quantity></swe:field>"
+				+ "</swe:DataRecord></swe:elementType>"
+				+ "<swe:encoding>" + encoding + "</swe:encoding>"
+				+ "<swe:values>" + values + "</swe:values>"
+				+ "</swe:DataArray></om:result>"
+				+ "</om:OM_Observation>";
+		return SosObservationResponse.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static String textEncoding(String decimalSep, String tokenSep, String blockSep) {
+		return "<swe:TextEncoding decimalSeparator=\"" + decimalSep + "\" tokenSeparator=\"" + tokenSep + "\" blockSeparator=\"" + blockSep + "\"/>";
+	}
+
+	@Test
+	public void testTokens() throws XMLStreamException, ImportException {
+		SosObservationResponse response = createResponse(textEncoding(".", ",", "@@"), 2,
+				"2021-01-01T00:00:00+01:00,2021-01-01T01:00:00+01:00,1,1.5@@\n"
+				+ "  2021-01-01T01:00:00+01:00 , 2021-01-01T02:00:00+01:00,1,-20@@");
+		SweValueExtractor extractor = new SweValueExtractor(response);
+		SweValueExtractor.Field start = new SweValueExtractor.Field("StartTime", false);
+		SweValueExtractor.Field value = new SweValueExtractor.Field("Value", true);
+		extractor.addRequestedField(start);
+		extractor.addRequestedField(value);
+		extractor.parse();
+
+		Assert.assertEquals(2, extractor.getElementCount());
+		Assert.assertEquals(0, start.index);
+		Assert.assertEquals(3, value.index);
+		Assert.assertEquals("http://dd.eionet.europa.eu/vocabulary/uom/concentration/ug.m-3", value.uom);
+
+		List<String> starts = new ArrayList<>();
+		List<BigDecimal> values = new ArrayList<>();
+		while (extractor.hasNext()) {
+			extractor.next();
+			starts.add(start.getChars().toString());
+			values.add(value.getDecimal());
+		}
+		Assert.assertEquals("[2021-01-01T00:00:00+01:00, 2021-01-01T01:00:00+01:00]", starts.toString());
+		Assert.assertEquals("[1.5, -20]", values.toString());
+
+		extractor.reset();
+		Assert.assertTrue(extractor.hasNext());
+		extractor.next();
+		Assert.assertEquals("2021-01-01T00:00:00+01:00", start.getLastValue());
+	}
+
+	@Test
+	public void testDecimalSeparator() throws XMLStreamException, ImportException {
+		SosObservationResponse response = createResponse(textEncoding(",", ";", "|"), 2,
+				"a;b;1;1,25|c;d;2;3");
+		SweValueExtractor extractor = new SweValueExtractor(response);
+		SweValueExtractor.Field validity = new SweValueExtractor.Field("Validity", false);
+		SweValueExtractor.Field value = new SweValueExtractor.Field("Value", true);
+		extractor.addRequestedField(validity);
+		extractor.addRequestedField(value);
+		extractor.parse();
+
+		extractor.next();
+		Assert.assertEquals(new BigDecimal("1.25"), value.getDecimal());
+		Assert.assertEquals("1", validity.getChars().toString());
+		extractor.next();
+		Assert.assertEquals(new BigDecimal("3"), value.getDecimal());
+		Assert.assertFalse(extractor.hasNext());
+	}
+
+	@Test
+	public void testWrongFieldCount() throws XMLStreamException, ImportException {
+		SosObservationResponse response = createResponse(textEncoding(".", ",", "@@"), 1, "a,b,1");
+		SweValueExtractor extractor = new SweValueExtractor(response);
+		extractor.parse();
+		try {
+			extractor.next();
+			Assert.fail("Block with missing field accepted.");
+		} catch (IllegalArgumentException ex) {
+			// Expected.
+		}
+	}
+
+	@Test
+	public void testNoEncoding() throws XMLStreamException {
+		SosObservationResponse response = createResponse("", 1, "a,b,1,2");
+		try {
+			new SweValueExtractor(response).parse();
+			Assert.fail("DataArray without TextEncoding accepted.");
+		} catch (ImportException ex) {
+			// Expected.
+		}
+	}
+
+	@Test
+	public void testEmpty() throws XMLStreamException, ImportException {
+		SosObservationResponse response = createResponse(textEncoding(".", ",", "@@"), 0, " @@ \n");
+		SweValueExtractor extractor = new SweValueExtractor(response);
+		extractor.parse();
+		Assert.assertFalse(extractor.hasNext());
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils;
+
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.csv.CsvRow;
+import java.io.IOException;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author hylke
+ */
+public class CompiledTemplateTest {
+
+	public CompiledTemplateTest() {
+	}
+
+	private static CsvRow createRow() throws IOException {
+		String csv = "id,name,note\n42,O'Brien,\"back\\slash\nnewline\"\n";
+		CSVParser parser = CSVParser.parse(csv, CSVFormat.DEFAULT.withFirstRecordAsHeader());
+		return CsvRow.wrap(parser.iterator().next());
+	}
+
+	@Test
+	public void testFill() throws IOException {
+		CsvRow row = createRow();
+		Assert.assertEquals("42", CompiledTemplate.compile("{0}", false, false, false).fill(row));
+		Assert.assertEquals("id=42 name=O'Brien", CompiledTemplate.compile("id={id} name={1}", false, false, false).fill(row));
+		Assert.assertEquals("42O'Brien", CompiledTemplate.compile("{0}{name}", false, false, false).fill(row));
+		Assert.assertEquals("{not-a-placeholder} 42", CompiledTemplate.compile("{not-a-placeholder} {0}", false, false, false).fill(row));
+		Assert.assertEquals("", CompiledTemplate.compile(null, false, false, false).fill(row));
+	}
+
+	@Test
+	public void testEscapes() throws IOException {
+		CsvRow row = createRow();
+		Assert.assertEquals("name eq 'O''Brien'", CompiledTemplate.compile("name eq '{name}'", true, false, false).fill(row));
+		Assert.assertEquals("{\"note\":\"back\\\\slash\\nnewline\"}", CompiledTemplate.compile("{\"note\":\"{note}\"}", false, true, false).fill(row));
+		Assert.assertEquals("a42b", CompiledTemplate.compile("a\n{0}\nb", false, false, true).fill(row));
+	}
+
+	@Test
+	public void testAppendAndConstant() throws IOException {
+		CsvRow row = createRow();
+		CompiledTemplate template = CompiledTemplate.compile("[{0}]", false, false, false);
+		StringBuilder target = new StringBuilder("x");
+		template.fill(row, target);
+		template.fill(row, target);
+		Assert.assertEquals("x[42][42]", target.toString());
+		Assert.assertFalse(template.isConstant());
+
+		CompiledTemplate constant = CompiledTemplate.compile("no placeholders", false, false, false);
+		Assert.assertTrue(constant.isConstant());
+		Assert.assertEquals("no placeholders", constant.fill(row));
+	}
+
+	@Test
+	public void testKey() {
+		String source = "name eq '{name}'";
+		Assert.assertEquals(
+				CompiledTemplate.compile(source, true, false, false).getKey(),
+				CompiledTemplate.compile(source, true, false, false).getKey());
+		Assert.assertNotEquals(
+				CompiledTemplate.compile(source, true, false, false).getKey(),
+				CompiledTemplate.compile(source, false, false, false).getKey());
+		Assert.assertNotEquals(
+				CompiledTemplate.compile(source, false, true, false).getKey(),
+				CompiledTemplate.compile(source, false, false, false).getKey());
+	}
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author hylke
+ */
+public class CompressionUtilsTest {
+
+	private static final String CONTENT = "time,value\n2021-01-01T00:00:00Z,1\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	public CompressionUtilsTest() {
+	}
+
+	private interface Wrapper {
+
+		public OutputStream wrap(OutputStream out) throws IOException;
+	}
+
+	private static byte[] compress(Wrapper wrapper, String content) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = wrapper.wrap(bytes)) {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] zip(String... namesAndContents) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(bytes)) {
+			for (int i = 0; i < namesAndContents.length; i += 2) {
+				out.putArchiveEntry(new ZipArchiveEntry(namesAndContents[i]));
+				out.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+				out.closeArchiveEntry();
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] tar(String... namesAndContents) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (TarArchiveOutputStream out = new TarArchiveOutputStream(bytes)) {
+			for (int i = 0; i < namesAndContents.length; i += 2) {
+				byte[] data = namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8);
+				TarArchiveEntry entry = new TarArchiveEntry(namesAndContents[i]);
+				entry.setSize(data.length);
+				out.putArchiveEntry(entry);
+				out.write(data);
+				out.closeArchiveEntry();
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static String read(InputStream input) throws IOException {
+		return IOUtils.toString(input, StandardCharsets.UTF_8);
+	}
+
+	private static List<String> readEntries(ArchiveInputStream archive) throws IOException {
+		List<String> result = new ArrayList<>();
+		ArchiveEntry entry;
+		while ((entry = archive.getNextEntry()) != null) {
+			result.add(entry.getName() + "=" + read(archive));
+		}
+		return result;
+	}
+
+	@Test
+	public void testNames() {
+		Assert.assertTrue(CompressionUtils.isPackedName("data.csv.gz"));
+		Assert.assertTrue(CompressionUtils.isPackedName("DATA.ZIP"));
+		Assert.assertTrue(CompressionUtils.isPackedName("http://example.org/files/data.tgz"));
+		Assert.assertFalse(CompressionUtils.isPackedName("data.csv"));
+		Assert.assertFalse(CompressionUtils.isPackedName("http://example.org/files.gz/data"));
+		Assert.assertFalse(CompressionUtils.isPackedName(null));
+
+		Assert.assertEquals("data.csv", CompressionUtils.stripCompression("data.csv.gz"));
+		Assert.assertEquals("data.csv", CompressionUtils.stripCompression("data.csv.bz2"));
+		Assert.assertEquals("data.tar", CompressionUtils.stripCompression("data.tgz"));
+		Assert.assertEquals("data.tar", CompressionUtils.stripCompression("data.txz"));
+		Assert.assertEquals("data.zip", CompressionUtils.stripCompression("data.zip"));
+	}
+
+	@Test
+	public void testDecompressByContent() throws IOException {
+		Wrapper[] wrappers = {
+			GzipCompressorOutputStream::new,
+			BZip2CompressorOutputStream::new,
+			XZCompressorOutputStream::new
+		};
+		for (Wrapper wrapper : wrappers) {
+			byte[] data = compress(wrapper, CONTENT);
+			Assert.assertEquals(CONTENT, read(CompressionUtils.decompress(null, new ByteArrayInputStream(data))));
+			Assert.assertEquals(CONTENT, read(CompressionUtils.decompress("data.csv", new ByteArrayInputStream(data))));
+		}
+		byte[] plain = CONTENT.getBytes(StandardCharsets.UTF_8);
+		Assert.assertEquals(CONTENT, read(CompressionUtils.decompress("data.csv", new ByteArrayInputStream(plain))));
+	}
+
+	@Test
+	public void testDecompressConcatenated() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write(compress(GzipCompressorOutputStream::new, "part1\n"));
+		bytes.write(compress(GzipCompressorOutputStream::new, "part2\n"));
+		InputStream input = CompressionUtils.decompress("data.csv.gz", new ByteArrayInputStream(bytes.toByteArray()));
+		Assert.assertEquals("part1\npart2\n", read(input));
+	}
+
+	@Test
+	public void testDetectArchive() throws IOException {
+		byte[] zip = zip("a.csv", "1", "b.csv", "2");
+		byte[] tar = tar("a.csv", "1", "b.csv", "2");
+		byte[] plain = CONTENT.getBytes(StandardCharsets.UTF_8);
+
+		Assert.assertEquals(CompressionUtils.ARCHIVE_ZIP, CompressionUtils.detectArchive(null, new BufferedInputStream(new ByteArrayInputStream(zip))));
+		Assert.assertEquals(CompressionUtils.ARCHIVE_TAR, CompressionUtils.detectArchive(null, new BufferedInputStream(new ByteArrayInputStream(tar))));
+		Assert.assertEquals(CompressionUtils.ARCHIVE_TAR, CompressionUtils.detectArchive("data.tar", new BufferedInputStream(new ByteArrayInputStream(plain))));
+		Assert.assertNull(CompressionUtils.detectArchive("data.csv", new BufferedInputStream(new ByteArrayInputStream(plain))));
+
+		BufferedInputStream input = new BufferedInputStream(new ByteArrayInputStream(zip));
+		String type = CompressionUtils.detectArchive(null, input);
+		Assert.assertEquals("Detection must not consume the stream.", 2, readEntries(CompressionUtils.openArchive(type, input)).size());
+	}
+
+	@Test
+	public void testCompressedArchive() throws IOException {
+		byte[] tar = tar("a.csv", "1", "b.csv", "2");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new GzipCompressorOutputStream(bytes)) {
+			out.write(tar);
+		}
+		for (String name : new String[]{"data.tgz", null}) {
+			BufferedInputStream input = CompressionUtils.decompress(name, new ByteArrayInputStream(bytes.toByteArray()));
+			String type = CompressionUtils.detectArchive(name == null ? null : CompressionUtils.stripCompression(name), input);
+			Assert.assertEquals(CompressionUtils.ARCHIVE_TAR, type);
+			List<String> entries = readEntries(CompressionUtils.openArchive(type, input));
+			Assert.assertEquals("[a.csv=1, b.csv=2]", entries.toString());
+		}
+	}
+
+	@Test
+	public void testIsPacked() throws IOException {
+		File plain = folder.newFile("plain.dat");
+		Files.write(plain.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+		Assert.assertFalse(CompressionUtils.isPacked(plain));
+
+		File gzip = folder.newFile("gzip.dat");
+		Files.write(gzip.toPath(), compress(GzipCompressorOutputStream::new, CONTENT));
+		Assert.assertTrue(CompressionUtils.isPacked(gzip));
+
+		File zip = folder.newFile("zip.dat");
+		Files.write(zip.toPath(), zip("a.csv", "1"));
+		Assert.assertTrue(CompressionUtils.isPacked(zip));
+
+		File byName = folder.newFile("empty.csv.gz");
+		Assert.assertTrue(CompressionUtils.isPacked(byName));
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author hylke
+ */
+public class JsonFileStoreTest {
+
+	private static final TypeReference<Map<String, String>> TYPE_MAP_STRING_STRING = new TypeReference<Map<String, String>>() {
+		// Empty on purpose.
+	};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	public JsonFileStoreTest() {
+	}
+
+	@Test
+	public void testPutAndLoad() throws IOException {
+		File file = new File(folder.getRoot(), "sub/store.json");
+		JsonFileStore<String> store = new JsonFileStore<>(file, "test", TYPE_MAP_STRING_STRING);
+		store.put("a", "1");
+		store.put("b", "2");
+		store.put("a", "3");
+		Assert.assertTrue(file.isFile());
+		Assert.assertFalse("The temporary file should be moved.", new File(file.getPath() + ".tmp").exists());
+
+		JsonFileStore<String> loaded = new JsonFileStore<>(file, "test", TYPE_MAP_STRING_STRING);
+		Assert.assertEquals("3", loaded.get("a"));
+		Assert.assertEquals("2", loaded.get("b"));
+	}
+
+	@Test
+	public void testInterruptedWrite() throws IOException {
+		File file = folder.newFile("store.json");
+		JsonFileStore<String> store = new JsonFileStore<>(file, "test", TYPE_MAP_STRING_STRING);
+		store.put("a", "1");
+		// A crash during a write leaves a partial temporary file.
+		Files.write(new File(file.getPath() + ".tmp").toPath(), "{\"a\":\"2\",\"b".getBytes(StandardCharsets.UTF_8));
+
+		JsonFileStore<String> loaded = new JsonFileStore<>(file, "test", TYPE_MAP_STRING_STRING);
+		Assert.assertEquals("1", loaded.get("a"));
+		loaded.put("b", "2");
+		Assert.assertEquals("2", new JsonFileStore<>(file, "test", TYPE_MAP_STRING_STRING).get("b"));
+	}
+
+	@Test
+	public void testDisabled() {
+		JsonFileStore<String> store = new JsonFileStore<>(null, "test", TYPE_MAP_STRING_STRING);
+		Assert.assertFalse(store.isEnabled());
+		store.put("a", "1");
+		Assert.assertNull(store.get("a"));
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author hylke
+ */
+public class AutoTimeParserTest {
+
+	public AutoTimeParserTest() {
+	}
+
+	private static ParserTime createConfigured() {
+		ParserTime configured = new ParserTime();
+		configured.setFormat("yyyyMMddHHmm");
+		configured.setZone("UTC");
+		return configured;
+	}
+
+	/**
+	 * The configured parser goes first, also after a fallback has been used.
+	 */
+	@Test
+	public void testParse_ConfiguredFirst() {
+		AutoTimeParser instance = new AutoTimeParser(createConfigured());
+		Assert.assertEquals(Instant.EPOCH, instance.parse("0").toInstant());
+
+		ZonedDateTime expResult = ZonedDateTime.of(2020, 3, 29, 1, 0, 0, 0, ZoneOffset.UTC);
+		Assert.assertEquals(expResult.toInstant(), instance.parse("202003290100").toInstant());
+		Assert.assertEquals(Instant.ofEpochSecond(1), instance.parse("1").toInstant());
+	}
+
+	/**
+	 * The fallbacks are used in any order.
+	 */
+	@Test
+	public void testParse_Fallbacks() {
+		AutoTimeParser instance = new AutoTimeParser(createConfigured());
+		Assert.assertEquals(ZonedDateTime.parse("2020-03-29T01:00:00Z"), instance.parse("2020-03-29T01:00:00Z"));
+		Assert.assertEquals(Instant.ofEpochSecond(1585443600), instance.parse("1585443600").toInstant());
+		Assert.assertEquals(ZonedDateTime.parse("2020-03-29T02:00:00Z"), instance.parse("2020-03-29T02:00:00Z"));
+		Assert.assertNull(instance.parse("yesterday"));
+		Assert.assertNull(instance.parse(null));
+
+		AutoTimeParser noConfig = new AutoTimeParser(null);
+		Assert.assertEquals(Instant.ofEpochSecond(-60), noConfig.parse("-60").toInstant());
+		Assert.assertNull(noConfig.parse("202003290100000000"));
+	}
+
+	@Test
+	public void testParseIso_Offsets() {
+		String[] values = {
+			"2020-03-29T01:00Z",
+			"2020-03-29T01:00:00Z",
+			"2020-03-29T01:00:00+02:00",
+			"2020-03-29T01:00:00-05:30",
+			"2020-03-29T01:00:00+18:00",
+			"2020-03-29T01:00:00+01:00[Europe/Berlin]"
+		};
+		for (String value : values) {
+			Assert.assertEquals(value, ZonedDateTime.parse(value), AutoTimeParser.parseIso(value));
+		}
+		Assert.assertNull(AutoTimeParser.parseIso("2020-03-29T01:00:00+18:30"));
+		Assert.assertNull(AutoTimeParser.parseIso("2020-03-29T01:00:00+19:00"));
+		Assert.assertNull(AutoTimeParser.parseIso("2020-03-29T01:00:00"));
+		Assert.assertNull(AutoTimeParser.parseIso("2021-02-29T01:00:00Z"));
+		Assert.assertNull(AutoTimeParser.parseIso("2020-03-29 01:00:00Z"));
+	}
+
+	@Test
+	public void testParseIso_Fractions() {
+		String[] values = {
+			"2020-03-29T01:00:00.5Z",
+			"2020-03-29T01:00:00.123Z",
+			"2020-03-29T01:00:00.123456789+01:00",
+			"2020-03-29T01:00:00,25Z",
+			"2020-03-29T01:00:00.Z"
+		};
+		for (String value : values) {
+			Assert.assertEquals(value, ZonedDateTime.parse(value.replace(',', '.')), AutoTimeParser.parseIso(value));
+		}
+		Assert.assertNull(AutoTimeParser.parseIso("2020-03-29T01:00:00.xZ"));
+	}
+
+	@Test
+	public void testParseEpochSeconds() {
+		Assert.assertEquals(Instant.ofEpochSecond(1585443600), AutoTimeParser.parseEpochSeconds("1585443600").toInstant());
+		Assert.assertEquals(Instant.ofEpochSecond(-1), AutoTimeParser.parseEpochSeconds("-1").toInstant());
+		Assert.assertEquals(Instant.ofEpochSecond(1), AutoTimeParser.parseEpochSeconds("+1").toInstant());
+		Assert.assertNull(AutoTimeParser.parseEpochSeconds(""));
+		Assert.assertNull(AutoTimeParser.parseEpochSeconds("-"));
+		Assert.assertNull(AutoTimeParser.parseEpochSeconds("1.5"));
+		Assert.assertNull(AutoTimeParser.parseEpochSeconds("1234567890123456"));
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers;
+
+import java.math.BigDecimal;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author hylke
+ */
+public class NumberClassifierTest {
+
+	private static final String[] VALUES = {
+		"0", "-0", "+5", "42", "-42", "2147483647", "2147483648", "-2147483648",
+		"9223372036854775807", "-9223372036854775808", "9223372036854775808",
+		"123456789012345678901234567890", "1.5", "-1.50", "0.00", ".5", "5.",
+		"1e5", "1.5E-3", "-2.5e+10", "1e99999", "007", "0.000000000000000000001",
+		"", "-", "+", ".", "e5", "1e", "1.2.3", "1,5", " 5", "5 ", "NaN", "0x10", "١٢"
+	};
+
+	public NumberClassifierTest() {
+	}
+
+	/**
+	 * Parse as Integer.parseInt, Long.parseLong and new BigDecimal do.
+	 */
+	private static Object reference(String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			// Not an Integer.
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			// Not a Long.
+		}
+		try {
+			return new BigDecimal(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	@Test
+	public void testParseNumber() {
+		for (String value : VALUES) {
+			Assert.assertEquals(value, reference(value), NumberClassifier.parseNumber(value));
+		}
+	}
+
+	@Test
+	public void testParse_LearnedIntegers() {
+		NumberClassifier instance = new NumberClassifier(3);
+		Assert.assertEquals(1, instance.parse("1"));
+		Assert.assertEquals(2, instance.parse("2"));
+		Assert.assertEquals(3L + Integer.MAX_VALUE, instance.parse(Long.toString(3L + Integer.MAX_VALUE)));
+		for (String value : VALUES) {
+			Assert.assertEquals(value, reference(value), instance.parse(value));
+		}
+	}
+
+	@Test
+	public void testParse_LearnedMixed() {
+		NumberClassifier instance = new NumberClassifier(3);
+		Assert.assertEquals(new BigDecimal("1.5"), instance.parse("1.5"));
+		for (String value : VALUES) {
+			Assert.assertEquals(value, reference(value), instance.parse(value));
+		}
+	}
+
+}
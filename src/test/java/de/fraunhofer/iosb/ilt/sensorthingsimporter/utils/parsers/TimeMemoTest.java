@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers;
+
+import java.time.ZonedDateTime;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author hylke
+ */
+public class TimeMemoTest {
+
+	public TimeMemoTest() {
+	}
+
+	@Test
+	public void testLeastRecentlyUsed() {
+		TimeMemo instance = new TimeMemo(2);
+		ZonedDateTime one = ZonedDateTime.parse("2020-01-01T00:00:00Z");
+		ZonedDateTime two = ZonedDateTime.parse("2020-01-02T00:00:00Z");
+		ZonedDateTime three = ZonedDateTime.parse("2020-01-03T00:00:00Z");
+		instance.put("one", one);
+		instance.put("two", two);
+		Assert.assertEquals(one, instance.get("one"));
+		instance.put("three", three);
+		Assert.assertEquals(one, instance.get("one"));
+		Assert.assertNull(instance.get("two"));
+		Assert.assertEquals(three, instance.get("three"));
+	}
+
+	@Test
+	public void testPerThread() throws InterruptedException {
+		TimeMemo instance = new TimeMemo();
+		ZonedDateTime one = ZonedDateTime.parse("2020-01-01T00:00:00Z");
+		instance.put("one", one);
+		AtomicReference<ZonedDateTime> other = new AtomicReference<>(one);
+		Thread thread = new Thread(() -> other.set(instance.get("one")));
+		thread.start();
+		thread.join();
+		Assert.assertNull(other.get());
+		Assert.assertEquals(one, instance.get("one"));
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2021 Fraunhofer IOSB
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.document;
+
+import com.google.gson.JsonParser;
+import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
+import de.fraunhofer.iosb.ilt.sensorthingsimporter.ImportException;
+import de.fraunhofer.iosb.ilt.sta.model.MultiDatastream;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author hylke
+ */
+public class JsonConverterTest {
+
+	private static final String T1 = "2021-01-01 00:00:00Z";
+	private static final String T2 = "2021-01-01 01:00:00Z";
+	private static final String T3 = "2021-01-01 02:00:00Z";
+
+	public JsonConverterTest() {
+	}
+
+	private static JsonConverter createConverter(boolean inputsSorted, boolean fillMissing) throws ConfigurationException {
+		JsonConverter converter = new JsonConverter();
+		String config = "{"
+				+ "\"timeParser\":{\"format\":\"yyyy-MM-dd HH:mm:ssXXX\",\"zone\":\"\"},"
+				+ "\"resultParser\":{\"className\":\"de.fraunhofer.iosb.ilt.sensorthingsimporter.utils.parsers.ParserLong\",\"classConfig\":{}},"
+				+ "\"pathList\":\"rows\","
+				+ "\"pathPhenTime\":\"time\","
+				+ "\"pathResult\":\"value\","
+				+ "\"inputsSorted\":" + inputsSorted + ","
+				+ "\"fillMissing\":" + fillMissing
+				+ "}";
+		converter.configure(new JsonParser().parse(config), null, null, null);
+		return converter;
+	}
+
+	private static String document(Object... timesAndValues) {
+		StringBuilder json = new StringBuilder("{\"rows\":[");
+		for (int i = 0; i < timesAndValues.length; i += 2) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append("{\"time\":\"").append(timesAndValues[i]).append("\",\"value\":").append(timesAndValues[i + 1]).append('}');
+		}
+		return json.append("]}").toString();
+	}
+
+	private static List<String> summarise(List<Observation> observations) {
+		List<String> result = new ArrayList<>();
+		for (Observation obs : observations) {
+			result.add(obs.getPhenomenonTime().getAsDateTime().toInstant() + "=" + Arrays.toString((Object[]) obs.getResult()));
+		}
+		return result;
+	}
+
+	private static List<String> process(boolean inputsSorted, boolean fillMissing, String... inputs) throws ImportException, ConfigurationException {
+		return summarise(createConverter(inputsSorted, fillMissing).process(new MultiDatastream(), inputs));
+	}
+
+	@Test
+	public void testSortedInputs() throws ImportException, ConfigurationException {
+		String[] inputs = {
+			document(T1, 1, T2, 2, T3, 3),
+			document(T1, 10, T3, 30),
+			document(T1, 100, T2, 200, T3, 300)
+		};
+		List<String> expected = Arrays.asList(
+				"2021-01-01T00:00:00Z=[1, 10, 100]",
+				"2021-01-01T02:00:00Z=[3, 30, 300]");
+		Assert.assertEquals(expected, process(true, false, inputs));
+		Assert.assertEquals(expected, process(false, false, inputs));
+	}
+
+	@Test
+	public void testFillMissing() throws ImportException, ConfigurationException {
+		String[] inputs = {
+			document(T1, 1, T2, 2),
+			document(T1, 10, T3, 30)
+		};
+		List<String> expected = Arrays.asList(
+				"2021-01-01T00:00:00Z=[1, 10]",
+				"2021-01-01T01:00:00Z=[2, null]",
+				"2021-01-01T02:00:00Z=[null, 30]");
+		Assert.assertEquals(expected, process(true, true, inputs));
+		Assert.assertEquals(expected, process(false, true, inputs));
+	}
+
+	@Test
+	public void testUnsortedInputs() throws ImportException, ConfigurationException {
+		String[] inputs = {
+			document(T3, 3, T1, 1, T2, 2),
+			document(T2, 20, T1, 10, T3, 30)
+		};
+		List<String> expected = Arrays.asList(
+				"2021-01-01T00:00:00Z=[1, 10]",
+				"2021-01-01T01:00:00Z=[2, 20]",
+				"2021-01-01T02:00:00Z=[3, 30]");
+		Assert.assertEquals("Unsorted input should fall back to sorting.", expected, process(true, false, inputs));
+		Assert.assertEquals(expected, process(false, false, inputs));
+	}
+
+	@Test
+	public void testSameInstantAndDuplicates() throws ImportException, ConfigurationException {
+		String[] inputs = {
+			document(T1, 1, T1, 5, T2, 2),
+			document("2021-01-01 01:00:00+01:00", 10, "2021-01-01 02:00:00+01:00", 20)
+		};
+		List<String> expected = Arrays.asList(
+				"2021-01-01T00:00:00Z=[5, 10]",
+				"2021-01-01T01:00:00Z=[2, 20]");
+		Assert.assertEquals(expected, process(true, false, inputs));
+		Assert.assertEquals(expected, process(false, false, inputs));
+	}
+
+	@Test
+	public void testEmptyInput() throws ImportException, ConfigurationException {
+		String[] inputs = {
+			document(T1, 1),
+			document()
+		};
+		Assert.assertTrue(process(false, false, inputs).isEmpty());
+		Assert.assertEquals(Arrays.asList("2021-01-01T00:00:00Z=[1, null]"), process(false, true, inputs));
+	}
+
+}